@@ -79,6 +79,8 @@ import be.fedict.eid.applet.shared.SignCertificatesRequestMessage;
 import be.fedict.eid.applet.shared.SignRequestMessage;
 import be.fedict.eid.applet.shared.SignatureDataMessage;
 import be.fedict.eid.applet.shared.annotation.ResponsesAllowed;
+import be.fedict.eid.applet.shared.protocol.BinaryFraming;
+import be.fedict.eid.applet.shared.protocol.BodyEncoding;
 import be.fedict.eid.applet.shared.protocol.ProtocolContext;
 import be.fedict.eid.applet.shared.protocol.ProtocolStateMachine;
 import be.fedict.eid.applet.shared.protocol.Transport;
@@ -103,6 +105,12 @@ public class Controller {
 
 	private final ProtocolStateMachine protocolStateMachine;
 
+	private boolean binaryFraming;
+
+	private boolean compression;
+
+	private String protocolContextToken;
+
 	public Controller(View view, Runtime runtime, Messages messages) {
 		this.runtime = runtime;
 		this.messages = messages;
@@ -190,9 +198,24 @@ public class Controller {
 					+ noChunkedTransferEncoding);
 		}
 		HttpURLConnection connection = getServerConnection();
+		if (message instanceof HelloMessage) {
+			/*
+			 * A new protocol run never continues a previous protocol context.
+			 */
+			this.protocolContextToken = null;
+		}
+		if (null != this.protocolContextToken) {
+			connection.setRequestProperty(ProtocolContext.HTTP_HEADER,
+					this.protocolContextToken);
+		}
 		HttpURLConnectionHttpTransmitter httpTransmitter = new HttpURLConnectionHttpTransmitter(
 				connection, userAgent, noChunkedTransferEncoding);
-		Transport.transfer(message, httpTransmitter);
+		if (this.binaryFraming) {
+			Transport.transferFrame(message, httpTransmitter,
+					this.compression);
+		} else {
+			Transport.transfer(message, httpTransmitter, this.compression);
+		}
 		int responseCode = connection.getResponseCode();
 		if (HttpURLConnection.HTTP_OK != responseCode) {
 			String msg;
@@ -207,11 +230,32 @@ public class Controller {
 					"error sending message to service. HTTP status code: "
 							+ msg);
 		}
+		/*
+		 * A token can be used only once. Without a new token, the protocol
+		 * context is empty.
+		 */
+		this.protocolContextToken = connection
+				.getHeaderField(ProtocolContext.HTTP_HEADER);
 		Unmarshaller unmarshaller = new Unmarshaller(
 				new AppletProtocolMessageCatalog());
 		HttpURLConnectionHttpReceiver httpReceiver = new HttpURLConnectionHttpReceiver(
 				connection);
-		Object responseObject = unmarshaller.receive(httpReceiver);
+		Object responseObject;
+		if (BinaryFraming.isFrame(connection.getContentType())) {
+			responseObject = unmarshaller.receiveFrame(httpReceiver);
+		} else {
+			responseObject = unmarshaller.receive(httpReceiver);
+		}
+		if (message instanceof HelloMessage) {
+			String framing = connection
+					.getHeaderField(HelloMessage.FRAMING_HTTP_HEADER);
+			this.binaryFraming = Integer.toString(BinaryFraming.VERSION)
+					.equals(framing);
+			addDetailMessage("binary framing: " + this.binaryFraming);
+			this.compression = BodyEncoding.DEFLATE.equals(connection
+					.getHeaderField(HelloMessage.COMPRESSION_HTTP_HEADER));
+			addDetailMessage("compression: " + this.compression);
+		}
 
 		Class<?>[] responsesAllowed = responsesAllowedAnnotation.value();
 		if (false == isOfClass(responseObject, responsesAllowed)) {
@@ -259,6 +303,8 @@ public class Controller {
 			Applet applet = this.runtime.getApplet();
 			String language = applet.getParameter(Applet.LANGUAGE_PARAM);
 			HelloMessage helloMessage = new HelloMessage(language);
+			helloMessage.framing = BinaryFraming.VERSION;
+			helloMessage.compression = BodyEncoding.DEFLATE;
 			Object resultMessage = sendMessage(helloMessage);
 			if (resultMessage instanceof CheckClientMessage) {
 				addDetailMessage("Need to check the client secure environment...");
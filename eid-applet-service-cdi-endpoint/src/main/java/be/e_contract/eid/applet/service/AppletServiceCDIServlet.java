@@ -41,6 +41,15 @@ public class AppletServiceCDIServlet extends AbstractAppletServiceServlet {
 	@Any
 	private Instance<MessageHandler<?>> messageHandlers;
 
+	/**
+	 * The CDI message handlers may depend on the CDI request context, which is
+	 * not active on the asynchronous processing threads.
+	 */
+	@Override
+	protected boolean isAsyncProcessingSupported() {
+		return false;
+	}
+
 	@Override
 	protected <T> MessageHandler<T> getMessageHandler(Class<T> messageClass) {
 		LOG.debug("get message handler: " + messageClass.getName());
@@ -18,7 +18,6 @@
 
 package be.e_contract.eid.applet.service.impl.handler;
 
-import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
@@ -75,19 +74,12 @@ public class AuthenticationDataMessageHandler implements
 		AuthenticationContract authenticationContract = new AuthenticationContract(
 				message.saltValue, null, null, message.sessionId, null,
 				challenge);
-		byte[] toBeSigned;
-		try {
-			toBeSigned = authenticationContract.calculateToBeSigned();
-		} catch (IOException e) {
-			throw new ServletException("IO error: " + e.getMessage(), e);
-		}
-
 		PublicKey signingKey = message.authnCert.getPublicKey();
 		byte[] signatureValue = message.signatureValue;
 		try {
 			Signature signature = Signature.getInstance("SHA1withRSA");
 			signature.initVerify(signingKey);
-			signature.update(toBeSigned);
+			authenticationContract.update(signature);
 			boolean result = signature.verify(signatureValue);
 			if (false == result) {
 				throw new SecurityException("authn signature incorrect");
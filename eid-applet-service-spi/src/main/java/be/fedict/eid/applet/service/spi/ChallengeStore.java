@@ -0,0 +1,60 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.spi;
+
+/**
+ * SPI for an authentication challenge store. Allows the eID Applet Service to
+ * keep the authentication challenges outside of the HTTP session. The
+ * challenges are keyed by HTTP session identifier, as the eID Applet does not
+ * return the challenge itself. When the protocol context is kept within a
+ * protocol context token, the challenges are keyed by the protocol run
+ * identifier carried by that token instead.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public interface ChallengeStore {
+
+	/**
+	 * Stores a freshly generated authentication challenge. Replaces a previous
+	 * challenge of the same HTTP session.
+	 * 
+	 * @param sessionId
+	 *            the HTTP session identifier, or the protocol run identifier.
+	 * @param challenge
+	 *            the challenge. The eID Applet Service does not modify this
+	 *            array afterwards.
+	 */
+	void storeChallenge(String sessionId, byte[] challenge);
+
+	/**
+	 * Consumes the authentication challenge of the given HTTP session. A
+	 * challenge can be consumed only once.
+	 * 
+	 * @param sessionId
+	 *            the HTTP session identifier, or the protocol run identifier.
+	 * @param maxMaturity
+	 *            the maximum allowed maturity of the challenge in
+	 *            milliseconds.
+	 * @return the challenge, or <code>null</code> if there is none, if it is
+	 *         older than the given maximum maturity, or if it has already been
+	 *         consumed.
+	 */
+	byte[] consumeChallenge(String sessionId, long maxMaturity);
+}
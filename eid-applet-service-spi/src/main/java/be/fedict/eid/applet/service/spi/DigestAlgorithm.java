@@ -0,0 +1,193 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.spi;
+
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of the digest algorithms supported for eID signatures. Maps the
+ * digest algorithm names as used within {@link DigestInfo} to their DER
+ * encoded PKCS#1 DigestInfo prefix, digest length, JCA name and RSA/PSS
+ * parameters.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public enum DigestAlgorithm {
+
+	SHA1("SHA-1", "SHA-1", 20, new byte[] { 0x30, 0x21, 0x30, 0x09, 0x06,
+			0x05, 0x2b, 0x0e, 0x03, 0x02, 0x1a, 0x05, 0x00, 0x04, 0x14 }, null),
+
+	SHA224("SHA-224", "SHA-224", 28, new byte[] { 0x30, 0x2d, 0x30, 0x0d,
+			0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65, 0x03, 0x04, 0x02,
+			0x04, 0x05, 0x00, 0x04, 0x1c }, null),
+
+	SHA256("SHA-256", "SHA-256", 32, new byte[] { 0x30, 0x31, 0x30, 0x0d,
+			0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65, 0x03, 0x04, 0x02,
+			0x01, 0x05, 0x00, 0x04, 0x20 }, null),
+
+	SHA384("SHA-384", "SHA-384", 48, new byte[] { 0x30, 0x41, 0x30, 0x0d,
+			0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65, 0x03, 0x04, 0x02,
+			0x02, 0x05, 0x00, 0x04, 0x30 }, null),
+
+	SHA512("SHA-512", "SHA-512", 64, new byte[] { 0x30, 0x51, 0x30, 0x0d,
+			0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65, 0x03, 0x04, 0x02,
+			0x03, 0x05, 0x00, 0x04, 0x40 }, null),
+
+	RIPEMD160("RIPEMD160", "RIPEMD160", 20, new byte[] { 0x30, 0x21, 0x30,
+			0x09, 0x06, 0x05, 0x2b, 0x24, 0x03, 0x02, 0x01, 0x05, 0x00, 0x04,
+			0x14 }, null),
+
+	RIPEMD128("RIPEMD128", "RIPEMD128", 16, new byte[] { 0x30, 0x1d, 0x30,
+			0x09, 0x06, 0x05, 0x2b, 0x24, 0x03, 0x02, 0x02, 0x05, 0x00, 0x04,
+			0x10 }, null),
+
+	RIPEMD256("RIPEMD256", "RIPEMD256", 32, new byte[] { 0x30, 0x2d, 0x30,
+			0x09, 0x06, 0x05, 0x2b, 0x24, 0x03, 0x02, 0x03, 0x05, 0x00, 0x04,
+			0x20 }, null),
+
+	SHA1_PSS("SHA-1-PSS", "SHA-1", 20, null, PSSParameterSpec.DEFAULT),
+
+	SHA256_PSS("SHA-256-PSS", "SHA-256", 32, null, new PSSParameterSpec(
+			"SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 32, 1));
+
+	private static final Map<String, DigestAlgorithm> algorithms;
+
+	static {
+		algorithms = new HashMap<String, DigestAlgorithm>();
+		for (DigestAlgorithm digestAlgorithm : values()) {
+			algorithms.put(digestAlgorithm.name, digestAlgorithm);
+		}
+		/*
+		 * Alias as used by older signature service implementations.
+		 */
+		algorithms.put("SHA1", SHA1);
+	}
+
+	private final String name;
+
+	private final String jcaName;
+
+	private final int digestLength;
+
+	private final byte[] digestInfoPrefix;
+
+	private final PSSParameterSpec pssParameterSpec;
+
+	private DigestAlgorithm(String name, String jcaName, int digestLength,
+			byte[] digestInfoPrefix, PSSParameterSpec pssParameterSpec) {
+		this.name = name;
+		this.jcaName = jcaName;
+		this.digestLength = digestLength;
+		this.digestInfoPrefix = digestInfoPrefix;
+		this.pssParameterSpec = pssParameterSpec;
+	}
+
+	/**
+	 * Gives back the digest algorithm for the given name.
+	 * 
+	 * @param name
+	 *            the digest algorithm name, like <code>SHA-256</code> or
+	 *            <code>SHA-256-PSS</code>.
+	 * @return the digest algorithm, or <code>null</code> if not supported.
+	 */
+	public static DigestAlgorithm forName(String name) {
+		return algorithms.get(name);
+	}
+
+	/**
+	 * Gives back the digest algorithm name as used within {@link DigestInfo}.
+	 * 
+	 * @return
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Gives back the JCA message digest algorithm name.
+	 * 
+	 * @return
+	 */
+	public String getJcaName() {
+		return this.jcaName;
+	}
+
+	/**
+	 * Gives back the length of a digest value in bytes.
+	 * 
+	 * @return
+	 */
+	public int getDigestLength() {
+		return this.digestLength;
+	}
+
+	/**
+	 * Checks whether signatures use RSA/PSS instead of PKCS#1 v1.5 padding.
+	 * 
+	 * @return
+	 */
+	public boolean isPss() {
+		return null != this.pssParameterSpec;
+	}
+
+	/**
+	 * Gives back the RSA/PSS parameters.
+	 * 
+	 * @return the parameters, or <code>null</code> for PKCS#1 v1.5 signatures.
+	 */
+	public PSSParameterSpec getPssParameterSpec() {
+		return this.pssParameterSpec;
+	}
+
+	/**
+	 * Gives back the DER encoded DigestInfo prefix.
+	 * 
+	 * @return the prefix, or <code>null</code> for RSA/PSS signatures.
+	 */
+	public byte[] getDigestInfoPrefix() {
+		if (null == this.digestInfoPrefix) {
+			return null;
+		}
+		return this.digestInfoPrefix.clone();
+	}
+
+	/**
+	 * Constructs the DER encoded DigestInfo of the given digest value, as
+	 * signed using PKCS#1 v1.5 padding.
+	 * 
+	 * @param digestValue
+	 * @return
+	 */
+	public byte[] getDigestInfo(byte[] digestValue) {
+		if (null == this.digestInfoPrefix) {
+			throw new IllegalStateException("no DigestInfo for " + this.name);
+		}
+		byte[] digestInfo = new byte[this.digestInfoPrefix.length
+				+ digestValue.length];
+		System.arraycopy(this.digestInfoPrefix, 0, digestInfo, 0,
+				this.digestInfoPrefix.length);
+		System.arraycopy(digestValue, 0, digestInfo,
+				this.digestInfoPrefix.length, digestValue.length);
+		return digestInfo;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.spi;
+
+import java.util.Map;
+
+/**
+ * SPI for a protocol context store. Allows the eID Applet Service to keep its
+ * protocol state, authentication challenge, request context and digest to
+ * verify outside of the HTTP session. The eID Applet Service loads the protocol
+ * context once at the start of every request, and stores it once before
+ * responding.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public interface ProtocolContextStore {
+
+	/**
+	 * Gives back the protocol context of the given HTTP session.
+	 * 
+	 * @param sessionId
+	 *            the HTTP session identifier.
+	 * @return the protocol context, or <code>null</code> if there is none, or
+	 *         if it has expired.
+	 */
+	Map<String, Object> getProtocolContext(String sessionId);
+
+	/**
+	 * Stores the protocol context of the given HTTP session. The values are
+	 * serializable.
+	 * 
+	 * @param sessionId
+	 *            the HTTP session identifier.
+	 * @param protocolContext
+	 *            the protocol context. The eID Applet Service does not modify
+	 *            this map afterwards.
+	 */
+	void setProtocolContext(String sessionId,
+			Map<String, Object> protocolContext);
+
+	/**
+	 * Removes the protocol context of the given HTTP session.
+	 * 
+	 * @param sessionId
+	 *            the HTTP session identifier.
+	 */
+	void removeProtocolContext(String sessionId);
+}
@@ -21,9 +21,16 @@ package be.fedict.eid.applet.service;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.Enumeration;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -35,14 +42,25 @@ import javax.servlet.http.HttpSession;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import be.fedict.eid.applet.service.impl.AsyncMessageTask;
 import be.fedict.eid.applet.service.impl.CleanSessionProtocolStateListener;
+import be.fedict.eid.applet.service.impl.DetachedProtocolContext;
+import be.fedict.eid.applet.service.impl.DetachedProtocolContextHttpSession;
 import be.fedict.eid.applet.service.impl.HttpServletProtocolContext;
+import be.fedict.eid.applet.service.impl.HttpServletRequestHeaderMap;
 import be.fedict.eid.applet.service.impl.HttpServletRequestHttpReceiver;
 import be.fedict.eid.applet.service.impl.HttpServletResponseHttpTransmitter;
-import be.fedict.eid.applet.service.impl.RequestContext;
+import be.fedict.eid.applet.service.impl.HttpSessionProtocolContext;
+import be.fedict.eid.applet.service.impl.ProtocolContextTokenCodec;
+import be.fedict.eid.applet.service.impl.ServiceLocator;
+import be.fedict.eid.applet.service.impl.ServletAsyncContext;
 import be.fedict.eid.applet.service.impl.handler.MessageHandler;
+import be.fedict.eid.applet.service.spi.ProtocolContextStore;
 import be.fedict.eid.applet.shared.AppletProtocolMessageCatalog;
-import be.fedict.eid.applet.shared.annotation.ResponsesAllowed;
+import be.fedict.eid.applet.shared.HelloMessage;
+import be.fedict.eid.applet.shared.protocol.BinaryFraming;
+import be.fedict.eid.applet.shared.protocol.BodyEncoding;
+import be.fedict.eid.applet.shared.protocol.ProtocolContext;
 import be.fedict.eid.applet.shared.protocol.ProtocolStateMachine;
 import be.fedict.eid.applet.shared.protocol.Transport;
 import be.fedict.eid.applet.shared.protocol.Unmarshaller;
@@ -63,10 +81,62 @@ public abstract class AbstractAppletServiceServlet extends HttpServlet {
 
 	private Unmarshaller unmarshaller;
 
+	/**
+	 * Shared across all requests. The protocol context is passed per check.
+	 */
+	private ProtocolStateMachine protocolStateMachine;
+
 	private static final String SKIP_SECURE_CONNECTION_CHECK_INIT_PARAM = "SkipSecureConnectionCheck";
 
 	private boolean skipSecureConnectionCheck;
 
+	private static final String MAX_BODY_SIZE_INIT_PARAM = "MaxBodySize";
+
+	private int maxBodySize;
+
+	private static final String BINARY_FRAMING_INIT_PARAM = "BinaryFraming";
+
+	private boolean binaryFraming;
+
+	private static final String COMPRESSION_INIT_PARAM = "Compression";
+
+	public static final String COMPRESSION_SESSION_ATTRIBUTE = AbstractAppletServiceServlet.class
+			.getName() + ".Compression";
+
+	private boolean compression;
+
+	private static final String PROTOCOL_CONTEXT_SECRET_INIT_PARAM = "ProtocolContextSecret";
+
+	private static final String PROTOCOL_CONTEXT_MAX_AGE_INIT_PARAM = "ProtocolContextMaxAge";
+
+	private ProtocolContextTokenCodec protocolContextTokenCodec;
+
+	private static final String PROTOCOL_CONTEXT_STORE_INIT_PARAM = "ProtocolContextStore";
+
+	private ProtocolContextStore protocolContextStore;
+
+	private static final String ASYNC_PROCESSING_INIT_PARAM = "AsyncProcessing";
+
+	private static final String ASYNC_THREADS_INIT_PARAM = "AsyncThreads";
+
+	private static final String ASYNC_QUEUE_SIZE_INIT_PARAM = "AsyncQueueSize";
+
+	private static final String ASYNC_TIMEOUT_INIT_PARAM = "AsyncTimeout";
+
+	private static final String ASYNC_EXECUTOR_INIT_PARAM = "AsyncExecutor";
+
+	public static final int DEFAULT_ASYNC_THREADS = 10;
+
+	public static final int DEFAULT_ASYNC_QUEUE_SIZE = 100;
+
+	public static final long DEFAULT_ASYNC_TIMEOUT = 1000 * 60;
+
+	private Executor asyncExecutor;
+
+	private ExecutorService asyncThreadPool;
+
+	private long asyncTimeout;
+
 	public AbstractAppletServiceServlet() {
 		super();
 		LOG.debug("constructor");
@@ -80,6 +150,10 @@ public abstract class AbstractAppletServiceServlet extends HttpServlet {
 
 		this.unmarshaller = new Unmarshaller(new AppletProtocolMessageCatalog());
 
+		this.protocolStateMachine = new ProtocolStateMachine();
+		this.protocolStateMachine
+				.addProtocolStateListener(new CleanSessionProtocolStateListener());
+
 		String skipSecureConnectionCheck = config
 				.getInitParameter(SKIP_SECURE_CONNECTION_CHECK_INIT_PARAM);
 		if (null != skipSecureConnectionCheck) {
@@ -88,6 +162,133 @@ public abstract class AbstractAppletServiceServlet extends HttpServlet {
 			LOG.debug("skipping secure connection check: "
 					+ this.skipSecureConnectionCheck);
 		}
+
+		String maxBodySize = config
+				.getInitParameter(MAX_BODY_SIZE_INIT_PARAM);
+		if (null != maxBodySize) {
+			this.maxBodySize = Integer.parseInt(maxBodySize);
+			LOG.debug("maximum HTTP body size: " + this.maxBodySize);
+			this.unmarshaller.setMaxBodySize(this.maxBodySize);
+		}
+
+		String binaryFraming = config
+				.getInitParameter(BINARY_FRAMING_INIT_PARAM);
+		if (null != binaryFraming) {
+			this.binaryFraming = Boolean.parseBoolean(binaryFraming);
+			LOG.debug("binary framing: " + this.binaryFraming);
+		}
+
+		String compression = config.getInitParameter(COMPRESSION_INIT_PARAM);
+		if (null != compression) {
+			this.compression = Boolean.parseBoolean(compression);
+			LOG.debug("compression: " + this.compression);
+		}
+
+		/*
+		 * With a protocol context secret, the protocol context travels with
+		 * the eID Applet instead of living in the HTTP session.
+		 */
+		String protocolContextSecret = config
+				.getInitParameter(PROTOCOL_CONTEXT_SECRET_INIT_PARAM);
+		if (null != protocolContextSecret) {
+			long protocolContextMaxAge = ProtocolContextTokenCodec.DEFAULT_MAX_AGE;
+			String protocolContextMaxAgeParam = config
+					.getInitParameter(PROTOCOL_CONTEXT_MAX_AGE_INIT_PARAM);
+			if (null != protocolContextMaxAgeParam) {
+				protocolContextMaxAge = Long
+						.parseLong(protocolContextMaxAgeParam);
+			}
+			LOG.debug("protocol context token max age: "
+					+ protocolContextMaxAge);
+			try {
+				this.protocolContextTokenCodec = new ProtocolContextTokenCodec(
+						protocolContextSecret, protocolContextMaxAge);
+			} catch (IllegalArgumentException e) {
+				throw new ServletException("invalid "
+						+ PROTOCOL_CONTEXT_SECRET_INIT_PARAM + ": "
+						+ e.getMessage());
+			}
+		}
+
+		/*
+		 * Alternatively the protocol context goes to a dedicated store, keyed
+		 * by HTTP session identifier.
+		 */
+		this.protocolContextStore = new ServiceLocator<ProtocolContextStore>(
+				PROTOCOL_CONTEXT_STORE_INIT_PARAM, config).locateService();
+		if (null != this.protocolContextStore) {
+			if (null != this.protocolContextTokenCodec) {
+				throw new ServletException(PROTOCOL_CONTEXT_SECRET_INIT_PARAM
+						+ " and " + PROTOCOL_CONTEXT_STORE_INIT_PARAM
+						+ " cannot be combined");
+			}
+			LOG.debug("protocol context store: "
+					+ this.protocolContextStore.getClass().getName());
+		}
+
+		/*
+		 * Asynchronous processing keeps the container HTTP threads free while
+		 * the message handlers are blocked on the SPI components.
+		 */
+		String asyncProcessing = config
+				.getInitParameter(ASYNC_PROCESSING_INIT_PARAM);
+		if (null != asyncProcessing && Boolean.parseBoolean(asyncProcessing)) {
+			if (false == isAsyncProcessingSupported()) {
+				throw new ServletException(ASYNC_PROCESSING_INIT_PARAM
+						+ " not supported by " + getClass().getName());
+			}
+			if (false == ServletAsyncContext.isAvailable()) {
+				throw new ServletException(ASYNC_PROCESSING_INIT_PARAM
+						+ " requires a Servlet 3.0 container");
+			}
+			this.asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
+			String asyncTimeoutParam = config
+					.getInitParameter(ASYNC_TIMEOUT_INIT_PARAM);
+			if (null != asyncTimeoutParam) {
+				this.asyncTimeout = Long.parseLong(asyncTimeoutParam);
+			}
+			LOG.debug("asynchronous timeout: " + this.asyncTimeout);
+			/*
+			 * Either an executor provided by the deployment, like the
+			 * VirtualThreadExecutor or a container managed executor, or our
+			 * own bounded thread pool.
+			 */
+			this.asyncExecutor = new ServiceLocator<Executor>(
+					ASYNC_EXECUTOR_INIT_PARAM, config).locateService();
+			if (null != this.asyncExecutor) {
+				LOG.debug("asynchronous executor: "
+						+ this.asyncExecutor.getClass().getName());
+			} else {
+				int asyncThreads = DEFAULT_ASYNC_THREADS;
+				String asyncThreadsParam = config
+						.getInitParameter(ASYNC_THREADS_INIT_PARAM);
+				if (null != asyncThreadsParam) {
+					asyncThreads = Integer.parseInt(asyncThreadsParam);
+				}
+				int asyncQueueSize = DEFAULT_ASYNC_QUEUE_SIZE;
+				String asyncQueueSizeParam = config
+						.getInitParameter(ASYNC_QUEUE_SIZE_INIT_PARAM);
+				if (null != asyncQueueSizeParam) {
+					asyncQueueSize = Integer.parseInt(asyncQueueSizeParam);
+				}
+				LOG.debug("asynchronous thread pool: " + asyncThreads
+						+ " threads, queue size " + asyncQueueSize);
+				this.asyncThreadPool = new ThreadPoolExecutor(asyncThreads,
+						asyncThreads, 0, TimeUnit.MILLISECONDS,
+						new ArrayBlockingQueue<Runnable>(asyncQueueSize),
+						new AsyncThreadFactory());
+				this.asyncExecutor = this.asyncThreadPool;
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {
+		LOG.debug("destroy");
+		if (null != this.asyncThreadPool) {
+			this.asyncThreadPool.shutdown();
+		}
+		super.destroy();
 	}
 
 	@Override
@@ -105,6 +306,19 @@ public abstract class AbstractAppletServiceServlet extends HttpServlet {
 		out.close();
 	}
 
+	/**
+	 * Servlets whose message handlers depend on thread bound contexts of the
+	 * servlet container thread, like a CDI request context, should refuse
+	 * asynchronous processing, as the message handlers then run on other
+	 * threads.
+	 * 
+	 * @return <code>true</code> if the message handlers can run outside of the
+	 *         servlet container thread.
+	 */
+	protected boolean isAsyncProcessingSupported() {
+		return true;
+	}
+
 	/**
 	 * This method needs to be implemented by servlets that extend this abstract
 	 * base servlet.
@@ -115,103 +329,262 @@ public abstract class AbstractAppletServiceServlet extends HttpServlet {
 	protected abstract <T> MessageHandler<T> getMessageHandler(
 			Class<T> messageClass);
 
-	@SuppressWarnings("unchecked")
 	@Override
 	protected void doPost(HttpServletRequest request,
 			HttpServletResponse response) throws ServletException, IOException {
 		LOG.debug("doPost");
 
 		/*
-		 * First retrieve the HTTP headers. The unmarshaller may digest the
-		 * body, which makes it impossible to retrieve the headers afterwards.
+		 * The message handlers only read a few HTTP headers, so we do not copy
+		 * them all.
 		 */
-		Map<String, String> httpHeaders = new HashMap<String, String>();
-		Enumeration<String> headerNamesEnum = request.getHeaderNames();
-		while (headerNamesEnum.hasMoreElements()) {
-			String headerName = headerNamesEnum.nextElement();
-			httpHeaders.put(headerName, request.getHeader(headerName));
-		}
-		/*
-		 * Incoming message unmarshaller.
-		 */
-		HttpServletRequestHttpReceiver httpReceiver = new HttpServletRequestHttpReceiver(
-				request, this.skipSecureConnectionCheck);
-		Object transferObject;
-		try {
-			transferObject = this.unmarshaller.receive(httpReceiver);
-		} catch (Exception e) {
-			LOG.debug("unmarshaller error: " + e.getMessage(), e);
-			throw new RuntimeException("unmarshaller error: " + e.getMessage(),
-					e);
+		Map<String, String> httpHeaders = new HttpServletRequestHeaderMap(
+				request);
+
+		if (null != this.asyncExecutor) {
+			ServletAsyncContext asyncContext = ServletAsyncContext.startAsync(
+					request, this.asyncTimeout);
+			if (null != asyncContext) {
+				AsyncMessageTask asyncMessageTask = newAsyncMessageTask(
+						request, response, httpHeaders, asyncContext);
+				try {
+					this.asyncExecutor.execute(asyncMessageTask);
+				} catch (RejectedExecutionException e) {
+					LOG.warn("asynchronous executor saturated, processing on container thread");
+					asyncMessageTask.run();
+				}
+				return;
+			}
 		}
+		processMessage(request, response, httpHeaders, null);
+	}
 
-		/*
-		 * Protocol state checker for incoming message.
-		 */
-		HttpServletProtocolContext protocolContext = new HttpServletProtocolContext(
-				request);
-		ProtocolStateMachine protocolStateMachine = new ProtocolStateMachine(
-				protocolContext);
-		CleanSessionProtocolStateListener cleanSessionProtocolStateListener = new CleanSessionProtocolStateListener(
-				request);
-		protocolStateMachine
-				.addProtocolStateListener(cleanSessionProtocolStateListener);
-		RequestContext requestContext = new RequestContext(request);
-		protocolStateMachine.addProtocolStateListener(requestContext);
-		protocolStateMachine.checkRequestMessage(transferObject);
+	private AsyncMessageTask newAsyncMessageTask(
+			final HttpServletRequest request,
+			final HttpServletResponse response,
+			final Map<String, String> httpHeaders,
+			final ServletAsyncContext asyncContext) {
+		return new AsyncMessageTask(response, asyncContext) {
 
-		/*
-		 * Message dispatcher
-		 */
-		Class<?> messageClass = transferObject.getClass();
-		MessageHandler messageHandler = getMessageHandler(messageClass);
-		if (null == messageHandler) {
-			throw new ServletException("unsupported message");
+			@Override
+			protected void processMessage() throws Exception {
+				AbstractAppletServiceServlet.this.processMessage(request,
+						response, httpHeaders, asyncContext);
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private void processMessage(HttpServletRequest request,
+			HttpServletResponse response, Map<String, String> httpHeaders,
+			ServletAsyncContext asyncContext) throws ServletException,
+			IOException {
+		boolean frame = BinaryFraming.isFrame(request.getContentType());
+		if (frame && false == this.binaryFraming) {
+			throw new ServletException("binary framing not enabled");
 		}
-		HttpSession session = request.getSession();
-		Object responseMessage = messageHandler.handleMessage(transferObject,
-				httpHeaders, request, session);
 
 		/*
-		 * Check outgoing messages for protocol constraints.
+		 * Protocol context. Either the HTTP session, a token that the eID
+		 * Applet sends back to us with every request, or a protocol context
+		 * store.
 		 */
-		ResponsesAllowed responsesAllowedAnnotation = messageClass
-				.getAnnotation(ResponsesAllowed.class);
-		if (null != responsesAllowedAnnotation) {
+		HttpSessionProtocolContext protocolContext;
+		DetachedProtocolContext detachedProtocolContext = null;
+		if (null != this.protocolContextTokenCodec) {
+			String token = request.getHeader(ProtocolContext.HTTP_HEADER);
+			detachedProtocolContext = this.protocolContextTokenCodec
+					.decode(token);
+			protocolContext = new DetachedProtocolContextHttpSession(
+					detachedProtocolContext, request);
+		} else if (null != this.protocolContextStore) {
+			String sessionId = request.getSession().getId();
+			detachedProtocolContext = DetachedProtocolContext
+					.fromMap(this.protocolContextStore
+							.getProtocolContext(sessionId));
+			protocolContext = new DetachedProtocolContextHttpSession(
+					detachedProtocolContext, request);
+		} else {
+			protocolContext = new HttpServletProtocolContext(request
+					.getSession());
+		}
+		HttpSession session = protocolContext.getHttpSession();
+		boolean protocolContextStored = false;
+		try {
 			/*
-			 * Make sure the message handlers respect the protocol.
+			 * Incoming message unmarshaller. Compressed bodies are only
+			 * accepted once compression has been negotiated during the hello
+			 * message.
 			 */
-			if (null == responseMessage) {
-				throw new ServletException(
-						"null response message while @ResponsesAllowed constraint was set");
+			boolean acceptCompressedBody = this.compression
+					&& Boolean.TRUE.equals(session
+							.getAttribute(COMPRESSION_SESSION_ATTRIBUTE));
+			HttpServletRequestHttpReceiver httpReceiver = new HttpServletRequestHttpReceiver(
+					request, this.skipSecureConnectionCheck, this.maxBodySize);
+			Object transferObject;
+			try {
+				if (frame) {
+					transferObject = this.unmarshaller.receiveFrame(
+							httpReceiver, acceptCompressedBody);
+				} else {
+					transferObject = this.unmarshaller.receive(httpReceiver,
+							acceptCompressedBody);
+				}
+			} catch (Exception e) {
+				LOG.debug("unmarshaller error: " + e.getMessage(), e);
+				throw new RuntimeException("unmarshaller error: "
+						+ e.getMessage(), e);
 			}
-			Class<?>[] responsesAllowed = responsesAllowedAnnotation.value();
-			if (false == isOfClass(responseMessage, responsesAllowed)) {
-				throw new ServletException("response message type incorrect");
+
+			/*
+			 * Protocol state checker for incoming message.
+			 */
+			this.protocolStateMachine.checkRequestMessage(transferObject,
+					protocolContext);
+
+			/*
+			 * Message dispatcher
+			 */
+			Class<?> messageClass = transferObject.getClass();
+			MessageHandler messageHandler = getMessageHandler(messageClass);
+			if (null == messageHandler) {
+				throw new ServletException("unsupported message");
 			}
-		}
+			Object responseMessage = messageHandler.handleMessage(
+					transferObject, httpHeaders, request, session);
 
-		/*
-		 * Protocol state checker for outgoing message.
-		 */
-		protocolStateMachine.checkResponseMessage(responseMessage);
+			/*
+			 * After an asynchronous timeout or error the servlet container
+			 * owns the response again, so we no longer touch it.
+			 */
+			if (null != asyncContext && asyncContext.isAborted()) {
+				LOG.warn("asynchronous processing aborted, dropping response");
+				return;
+			}
 
-		/*
-		 * Marshall outgoing message.
-		 */
-		if (null != responseMessage) {
-			HttpServletResponseHttpTransmitter httpTransmitter = new HttpServletResponseHttpTransmitter(
-					response);
-			Transport.transfer(responseMessage, httpTransmitter);
+			/*
+			 * Check outgoing messages for protocol constraints.
+			 */
+			List<Class<?>> responsesAllowed = ProtocolStateMachine
+					.getResponsesAllowed(messageClass);
+			if (null != responsesAllowed) {
+				/*
+				 * Make sure the message handlers respect the protocol.
+				 */
+				if (null == responseMessage) {
+					throw new ServletException(
+							"null response message while @ResponsesAllowed constraint was set");
+				}
+				if (false == responsesAllowed.contains(responseMessage
+						.getClass())) {
+					throw new ServletException(
+							"response message type incorrect");
+				}
+			}
+
+			/*
+			 * Protocol state checker for outgoing message.
+			 */
+			this.protocolStateMachine.checkResponseMessage(responseMessage,
+					protocolContext);
+
+			/*
+			 * Binary framing negotiation. The applet switches to binary framing
+			 * for all messages following the hello message.
+			 */
+			if (this.binaryFraming && transferObject instanceof HelloMessage) {
+				HelloMessage helloMessage = (HelloMessage) transferObject;
+				if (null != helloMessage.framing
+						&& helloMessage.framing >= BinaryFraming.VERSION) {
+					response.setHeader(HelloMessage.FRAMING_HTTP_HEADER,
+							Integer.toString(BinaryFraming.VERSION));
+				}
+			}
+
+			/*
+			 * Compression negotiation. Compressed bodies are only accepted, and
+			 * only sent, once the applet told us it can handle them.
+			 */
+			if (this.compression && transferObject instanceof HelloMessage) {
+				HelloMessage helloMessage = (HelloMessage) transferObject;
+				boolean acceptsCompression = BodyEncoding.DEFLATE
+						.equals(helloMessage.compression);
+				if (acceptsCompression) {
+					response.setHeader(HelloMessage.COMPRESSION_HTTP_HEADER,
+							BodyEncoding.DEFLATE);
+				}
+				session.setAttribute(COMPRESSION_SESSION_ATTRIBUTE,
+						acceptsCompression);
+			}
+			boolean compressResponse = Boolean.TRUE.equals(session
+					.getAttribute(COMPRESSION_SESSION_ATTRIBUTE));
+
+			/*
+			 * Hand over the updated protocol context to the eID Applet, or to
+			 * the protocol context store. This has to happen before the HTTP
+			 * body gets written, as the eID Applet might send its next request
+			 * right away. On errors the eID Applet does not receive any token,
+			 * so it starts over with an empty protocol context.
+			 */
+			if (null != this.protocolContextTokenCodec
+					&& false == detachedProtocolContext.isEmpty()) {
+				String token = this.protocolContextTokenCodec
+						.encode(detachedProtocolContext);
+				response.setHeader(ProtocolContext.HTTP_HEADER, token);
+			}
+			if (null != this.protocolContextStore) {
+				storeProtocolContext(request, detachedProtocolContext);
+				protocolContextStored = true;
+			}
+
+			/*
+			 * Marshall outgoing message. We answer using the same encoding as
+			 * used by the incoming message.
+			 */
+			if (null != responseMessage) {
+				HttpServletResponseHttpTransmitter httpTransmitter = new HttpServletResponseHttpTransmitter(
+						response);
+				if (frame) {
+					Transport.transferFrame(responseMessage, httpTransmitter,
+							compressResponse);
+				} else {
+					Transport.transfer(responseMessage, httpTransmitter,
+							compressResponse);
+				}
+			}
+		} finally {
+			if (null != this.protocolContextStore
+					&& false == protocolContextStored) {
+				/*
+				 * Also on errors, like with the HTTP session, the protocol
+				 * context store keeps whatever the message handler changed,
+				 * e.g. a consumed authentication challenge.
+				 */
+				storeProtocolContext(request, detachedProtocolContext);
+			}
 		}
 	}
 
-	private boolean isOfClass(Object object, Class<?>[] classes) {
-		for (Class<?> clazz : classes) {
-			if (clazz.equals(object.getClass())) {
-				return true;
-			}
+	private void storeProtocolContext(HttpServletRequest request,
+			DetachedProtocolContext detachedProtocolContext) {
+		String sessionId = request.getSession().getId();
+		if (detachedProtocolContext.isEmpty()) {
+			this.protocolContextStore.removeProtocolContext(sessionId);
+		} else {
+			this.protocolContextStore.setProtocolContext(sessionId,
+					detachedProtocolContext.toMap());
+		}
+	}
+
+	private static class AsyncThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "eid-applet-service-async-"
+					+ this.threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
 		}
-		return false;
 	}
 }
@@ -22,8 +22,8 @@ package be.fedict.eid.applet.service;
 import java.lang.reflect.Field;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.servlet.ServletConfig;
@@ -46,6 +46,7 @@ import be.fedict.eid.applet.service.impl.handler.MessageHandler;
 import be.fedict.eid.applet.service.impl.handler.SignCertificatesDataMessageHandler;
 import be.fedict.eid.applet.service.impl.handler.SignatureDataMessageHandler;
 import be.fedict.eid.applet.shared.AbstractProtocolMessage;
+import be.fedict.eid.applet.shared.AppletProtocolMessageCatalog;
 
 /**
  * The eID applet service Servlet. This servlet should be used by web
@@ -95,6 +96,9 @@ public class AppletServiceServlet extends AbstractAppletServiceServlet {
 			SignCertificatesDataMessageHandler.class,
 			AuthSignResponseMessageHandler.class };
 
+	/**
+	 * The message handlers, keyed by message class. Frozen after init.
+	 */
 	private Map<Class<?>, MessageHandler<?>> messageHandlers;
 
 	public AppletServiceServlet() {
@@ -108,7 +112,10 @@ public class AppletServiceServlet extends AbstractAppletServiceServlet {
 
 		LOG.debug("init");
 
-		this.messageHandlers = new HashMap<Class<?>, MessageHandler<?>>();
+		List<Class<?>> catalogClasses = new AppletProtocolMessageCatalog()
+				.getCatalogClasses();
+		Map<Class<?>, MessageHandler<?>> messageHandlers = new HashMap<Class<?>, MessageHandler<?>>();
+		Map<String, ServiceLocator<Object>> serviceLocators = new HashMap<String, ServiceLocator<Object>>();
 		for (Class<? extends MessageHandler<?>> messageHandlerClass : MESSAGE_HANDLER_CLASSES) {
 			HandlesMessage handlesMessageAnnotation = messageHandlerClass
 					.getAnnotation(HandlesMessage.class);
@@ -119,33 +126,64 @@ public class AppletServiceServlet extends AbstractAppletServiceServlet {
 			}
 			Class<? extends AbstractProtocolMessage> protocolMessageClass = handlesMessageAnnotation
 					.value();
+			if (false == catalogClasses.contains(protocolMessageClass)) {
+				throw new ServletException("message not in catalog: "
+						+ protocolMessageClass.getName());
+			}
+			if (messageHandlers.containsKey(protocolMessageClass)) {
+				throw new ServletException("duplicate message handler for: "
+						+ protocolMessageClass.getName());
+			}
 			MessageHandler<?> messageHandler;
 			try {
 				messageHandler = messageHandlerClass.newInstance();
 			} catch (Exception e) {
 				throw new ServletException(
-						"cannot create message handler instance");
+						"cannot create message handler instance", e);
 			}
-			this.messageHandlers.put(protocolMessageClass, messageHandler);
-		}
-
-		Collection<MessageHandler<?>> messageHandlers = this.messageHandlers
-				.values();
-		for (MessageHandler<?> messageHandler : messageHandlers) {
 			try {
-				injectInitParams(config, messageHandler);
+				injectInitParams(config, messageHandler, serviceLocators);
+			} catch (ServletException e) {
+				throw e;
 			} catch (Exception e) {
 				throw new ServletException(
 						"error injecting init-param into message handler field: "
 								+ e.getMessage(), e);
 			}
 			messageHandler.init(config);
+			LOG.debug("message handler " + messageHandlerClass.getSimpleName()
+					+ " for " + protocolMessageClass.getSimpleName());
+			messageHandlers.put(protocolMessageClass, messageHandler);
 		}
+
+		this.messageHandlers = messageHandlers;
 	}
 
 	public static void injectInitParams(ServletConfig config,
 			MessageHandler<?> messageHandler) throws ServletException,
 			IllegalArgumentException, IllegalAccessException {
+		injectInitParams(config, messageHandler,
+				new HashMap<String, ServiceLocator<Object>>());
+	}
+
+	/**
+	 * Injects the init-params into the given message handler. Message handlers
+	 * that refer to the same service init-param share a single service
+	 * locator, and thus a single cached service instance.
+	 * 
+	 * @param config
+	 * @param messageHandler
+	 * @param serviceLocators
+	 *            the service locators created so far, keyed by init-param name.
+	 * @throws ServletException
+	 * @throws IllegalArgumentException
+	 * @throws IllegalAccessException
+	 */
+	public static void injectInitParams(ServletConfig config,
+			MessageHandler<?> messageHandler,
+			Map<String, ServiceLocator<Object>> serviceLocators)
+			throws ServletException, IllegalArgumentException,
+			IllegalAccessException {
 		Class<?> messageHandlerClass = messageHandler.getClass();
 		Field[] fields = messageHandlerClass.getDeclaredFields();
 		for (Field field : fields) {
@@ -161,11 +199,24 @@ public class AppletServiceServlet extends AbstractAppletServiceServlet {
 				/*
 				 * We always inject a service locator.
 				 */
-				ServiceLocator<Object> fieldValue = new ServiceLocator<Object>(
-						initParamName, config);
+				ServiceLocator<Object> fieldValue = serviceLocators
+						.get(initParamName);
+				if (null == fieldValue) {
+					fieldValue = new ServiceLocator<Object>(initParamName,
+							config);
+					serviceLocators.put(initParamName, fieldValue);
+				}
 				field.set(messageHandler, fieldValue);
 				continue;
 			}
+			if (false == isSupportedInitParamType(fieldType)) {
+				/*
+				 * Fail at startup, even when the init-param is not set.
+				 */
+				throw new ServletException(
+						"unsupported init-param field type: "
+								+ fieldType.getName());
+			}
 			String initParamValue = config.getInitParameter(initParamName);
 			if (initParamAnnotation.required() && null == initParamValue) {
 				throw new ServletException("missing required init-param: "
@@ -175,8 +226,9 @@ public class AppletServiceServlet extends AbstractAppletServiceServlet {
 			if (null == initParamValue) {
 				continue;
 			}
+			LOG.debug("injecting init-param " + initParamName + " into "
+					+ messageHandlerClass.getSimpleName());
 			if (Boolean.TYPE.equals(fieldType)) {
-				LOG.debug("injecting boolean: " + initParamValue);
 				Boolean fieldValue = Boolean.parseBoolean(initParamValue);
 				field.set(messageHandler, fieldValue);
 				continue;
@@ -206,6 +258,14 @@ public class AppletServiceServlet extends AbstractAppletServiceServlet {
 		}
 	}
 
+	private static boolean isSupportedInitParamType(Class<?> fieldType) {
+		return Boolean.TYPE.equals(fieldType)
+				|| String.class.equals(fieldType)
+				|| InetAddress.class.equals(fieldType)
+				|| Long.class.equals(fieldType);
+	}
+
+	@SuppressWarnings("unchecked")
 	@Override
 	protected <T> MessageHandler<T> getMessageHandler(Class<T> messageClass) {
 		return (MessageHandler<T>) this.messageHandlers.get(messageClass);
@@ -38,6 +38,15 @@ import be.fedict.eid.applet.service.spi.TransportService;
 /**
  * HTTP Strict-Transport-Security servlet filter.
  * 
+ * <p>
+ * The <code>Strict-Transport-Security</code> header value is computed from the
+ * transport service configuration once per refresh interval, and reused for
+ * all requests in between. The refresh interval can be set in milliseconds via
+ * the <code>RefreshInterval</code> <code>init-param</code>. A negative value
+ * means that the configuration is only read once, zero means that it is read
+ * on every request.
+ * </p>
+ * 
  * @author Frank Cornelis
  * 
  */
@@ -47,37 +56,90 @@ public class HSTSFilter implements Filter {
 
 	public static final String TRANSPORT_SERVICE_INIT_PARAM = "TransportService";
 
+	public static final String REFRESH_INTERVAL_INIT_PARAM = "RefreshInterval";
+
+	/**
+	 * The default refresh interval of the HSTS header value in milliseconds.
+	 */
+	public static final long DEFAULT_REFRESH_INTERVAL = 1000 * 60;
+
 	private ServiceLocator<TransportService> transportServiceLocator;
 
+	private long refreshInterval;
+
+	private volatile HeaderValue cachedHeaderValue;
+
 	public void destroy() {
 	}
 
 	public void doFilter(ServletRequest request, ServletResponse response,
 			FilterChain chain) throws IOException, ServletException {
+		String headerValue = getHeaderValue();
+		if (null != headerValue) {
+			HttpServletResponse httpServletResponse = (HttpServletResponse) response;
+			httpServletResponse.addHeader("Strict-Transport-Security",
+					headerValue);
+		}
+		chain.doFilter(request, response);
+	}
+
+	private String getHeaderValue() throws ServletException {
+		HeaderValue cachedHeaderValue = this.cachedHeaderValue;
+		if (null != cachedHeaderValue
+				&& (this.refreshInterval < 0 || cachedHeaderValue.expiry > System
+						.currentTimeMillis())) {
+			return cachedHeaderValue.value;
+		}
+		/*
+		 * Concurrent refreshes compute the same value.
+		 */
+		String headerValue = computeHeaderValue();
+		this.cachedHeaderValue = new HeaderValue(headerValue, System
+				.currentTimeMillis()
+				+ this.refreshInterval);
+		return headerValue;
+	}
+
+	private String computeHeaderValue() throws ServletException {
 		TransportService transportService = this.transportServiceLocator
 				.locateService();
 		if (null == transportService) {
-			chain.doFilter(request, response);
-			return;
+			return null;
 		}
 		StrictTransportSecurityConfig hstsConfig = transportService
 				.getStrictTransportSecurityConfig();
 		if (null == hstsConfig) {
-			chain.doFilter(request, response);
-			return;
+			return null;
 		}
-		LOG.debug("adding HSTS header");
-		HttpServletResponse httpServletResponse = (HttpServletResponse) response;
 		String headerValue = "max-age=" + hstsConfig.getMaxAge();
 		if (hstsConfig.isIncludeSubdomains()) {
 			headerValue += "; includeSubdomains";
 		}
-		httpServletResponse.addHeader("Strict-Transport-Security", headerValue);
-		chain.doFilter(request, response);
+		LOG.debug("HSTS header value: " + headerValue);
+		return headerValue;
 	}
 
 	public void init(FilterConfig config) throws ServletException {
 		this.transportServiceLocator = new ServiceLocator<TransportService>(
 				TRANSPORT_SERVICE_INIT_PARAM, config);
+		String refreshInterval = config
+				.getInitParameter(REFRESH_INTERVAL_INIT_PARAM);
+		if (null != refreshInterval) {
+			this.refreshInterval = Long.parseLong(refreshInterval);
+		} else {
+			this.refreshInterval = DEFAULT_REFRESH_INTERVAL;
+		}
+	}
+
+	private static class HeaderValue {
+
+		private final String value;
+
+		private final long expiry;
+
+		public HeaderValue(String value, long expiry) {
+			this.value = value;
+			this.expiry = expiry;
+		}
 	}
 }
@@ -0,0 +1,98 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.impl;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Task that processes an eID Applet protocol message outside of the servlet
+ * container thread. Once the servlet container aborted the asynchronous
+ * processing, because of a timeout or an error, the response belongs to the
+ * servlet container again. The task then neither writes an error nor
+ * completes the asynchronous context.
+ * 
+ * <p>
+ * The task does not run within a CDI request context, nor does it inherit any
+ * other thread bound context of the servlet container thread.
+ * </p>
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public abstract class AsyncMessageTask implements Runnable {
+
+	private static final Log LOG = LogFactory.getLog(AsyncMessageTask.class);
+
+	private final HttpServletResponse response;
+
+	private final ServletAsyncContext asyncContext;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param response
+	 * @param asyncContext
+	 */
+	public AsyncMessageTask(HttpServletResponse response,
+			ServletAsyncContext asyncContext) {
+		this.response = response;
+		this.asyncContext = asyncContext;
+	}
+
+	/**
+	 * Processes the message. Implementations should check
+	 * {@link ServletAsyncContext#isAborted()} before writing the response.
+	 * 
+	 * @throws Exception
+	 */
+	protected abstract void processMessage() throws Exception;
+
+	public void run() {
+		if (this.asyncContext.isAborted()) {
+			LOG.warn("asynchronous processing aborted before message processing");
+			return;
+		}
+		try {
+			processMessage();
+		} catch (Exception e) {
+			LOG.error("error processing message: " + e.getMessage(), e);
+			if (false == this.asyncContext.isAborted()
+					&& false == this.response.isCommitted()) {
+				try {
+					this.response
+							.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+				} catch (IOException ioException) {
+					LOG.error("could not send error: "
+							+ ioException.getMessage());
+				}
+			}
+		} finally {
+			if (this.asyncContext.isAborted()) {
+				LOG.warn("asynchronous processing aborted, not completing");
+			} else {
+				this.asyncContext.complete();
+			}
+		}
+	}
+}
@@ -19,7 +19,11 @@
 
 package be.fedict.eid.applet.service.impl;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Date;
 
@@ -28,6 +32,8 @@ import javax.servlet.http.HttpSession;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import be.fedict.eid.applet.service.spi.ChallengeStore;
+
 /**
  * Authentication Challenge. Manages challenge freshness and randomness.
  * 
@@ -53,14 +59,45 @@ public class AuthenticationChallenge implements Serializable {
 
 	private final Date timestamp;
 
-	private static final SecureRandom secureRandom;
+	/**
+	 * Striped random generators, so concurrent challenge generation does not
+	 * serialize on a single generator. Every stripe is an explicit SHA1PRNG
+	 * instance. On some platforms the default <code>SecureRandom</code> reads
+	 * from a shared blocking entropy source on every call, which would defeat
+	 * the striping. The SHA1PRNG instances are seeded once with output of the
+	 * default source, at class loading, before their first use. We do not use
+	 * <code>generateSeed</code> here, as it can block on a low entropy
+	 * system.
+	 */
+	private static final SecureRandom[] secureRandoms;
+
+	private static final int SEED_SIZE = 32;
 
 	static {
-		secureRandom = new SecureRandom();
-		/*
-		 * We put some initial seed.
-		 */
-		secureRandom.setSeed(System.currentTimeMillis());
+		int availableProcessors = Runtime.getRuntime().availableProcessors();
+		int stripeCount = 1;
+		while (stripeCount < availableProcessors) {
+			stripeCount <<= 1;
+		}
+		secureRandoms = new SecureRandom[stripeCount];
+		SecureRandom seedSource = new SecureRandom();
+		for (int idx = 0; idx < stripeCount; idx++) {
+			secureRandoms[idx] = newSecureRandom(seedSource);
+		}
+	}
+
+	private static SecureRandom newSecureRandom(SecureRandom seedSource) {
+		SecureRandom secureRandom;
+		try {
+			secureRandom = SecureRandom.getInstance("SHA1PRNG");
+		} catch (NoSuchAlgorithmException e) {
+			LOG.warn("SHA1PRNG not available, using default SecureRandom");
+			return new SecureRandom();
+		}
+		byte[] seed = new byte[SEED_SIZE];
+		seedSource.nextBytes(seed);
+		secureRandom.setSeed(seed);
+		return secureRandom;
 	}
 
 	private AuthenticationChallenge() {
@@ -69,14 +106,48 @@ public class AuthenticationChallenge implements Serializable {
 		 * bring us anything.
 		 */
 		this.challenge = new byte[20];
-		secureRandom.nextBytes(this.challenge);
-		/*
-		 * Next should make it pretty non-deterministic.
-		 */
-		secureRandom.setSeed(System.currentTimeMillis());
+		getSecureRandom().nextBytes(this.challenge);
 		this.timestamp = new Date();
 	}
 
+	private static SecureRandom getSecureRandom() {
+		int stripe = (int) Thread.currentThread().getId()
+				& (secureRandoms.length - 1);
+		return secureRandoms[stripe];
+	}
+
+	private AuthenticationChallenge(byte[] challenge, Date timestamp) {
+		this.challenge = challenge;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Writes this challenge to a protocol context token.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	void writeTo(DataOutputStream out) throws IOException {
+		out.writeByte(this.challenge.length);
+		out.write(this.challenge);
+		out.writeLong(this.timestamp.getTime());
+	}
+
+	/**
+	 * Reads back a challenge written via {@link #writeTo(DataOutputStream)}.
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static AuthenticationChallenge readFrom(DataInputStream in)
+			throws IOException {
+		byte[] challenge = new byte[in.readUnsignedByte()];
+		in.readFully(challenge);
+		Date timestamp = new Date(in.readLong());
+		return new AuthenticationChallenge(challenge, timestamp);
+	}
+
 	/**
 	 * Generates a challenge and stores it in the given HTTP session for later
 	 * consumption.
@@ -85,7 +156,27 @@ public class AuthenticationChallenge implements Serializable {
 	 * @return the challenge.
 	 */
 	public static byte[] generateChallenge(HttpSession session) {
+		return generateChallenge(session, null);
+	}
+
+	/**
+	 * Generates a challenge and stores it for later consumption.
+	 * 
+	 * @param session
+	 * @param challengeStore
+	 *            the optional challenge store. If <code>null</code>, the
+	 *            challenge is kept within the HTTP session.
+	 * @return the challenge.
+	 */
+	public static byte[] generateChallenge(HttpSession session,
+			ChallengeStore challengeStore) {
 		AuthenticationChallenge authenticationChallenge = new AuthenticationChallenge();
+		if (null != challengeStore) {
+			byte[] challenge = authenticationChallenge.getChallenge();
+			challengeStore.storeChallenge(getChallengeStoreKey(session),
+					challenge);
+			return challenge.clone();
+		}
 		if (null != session.getAttribute(AUTHN_CHALLENGE_SESSION_ATTRIBUTE)) {
 			LOG.warn("overwriting a previous authentication challenge");
 		}
@@ -95,6 +186,27 @@ public class AuthenticationChallenge implements Serializable {
 		return challenge;
 	}
 
+	/**
+	 * Gives back the key under which the challenge goes to the challenge
+	 * store. When the protocol context travels within a token, we key on the
+	 * protocol run identifier carried by that token. Asking the HTTP session
+	 * view for its identifier would create a real HTTP session, which is what
+	 * the token mode avoids.
+	 * 
+	 * @param session
+	 * @return
+	 */
+	private static String getChallengeStoreKey(HttpSession session) {
+		if (session instanceof DetachedProtocolContextHttpSession) {
+			String protocolRunId = ((DetachedProtocolContextHttpSession) session)
+					.getProtocolRunId();
+			if (null != protocolRunId) {
+				return protocolRunId;
+			}
+		}
+		return session.getId();
+	}
+
 	private byte[] getChallenge() {
 		/*
 		 * This method indeed is private. We want controlled consumption of the
@@ -116,6 +228,33 @@ public class AuthenticationChallenge implements Serializable {
 	 * @return
 	 */
 	public static byte[] getAuthnChallenge(HttpSession session, Long maxMaturity) {
+		return getAuthnChallenge(session, maxMaturity, null);
+	}
+
+	/**
+	 * Gives back the authentication challenge. This challenge is checked for
+	 * freshness and can be consumed only once.
+	 * 
+	 * @param session
+	 * @param maxMaturity
+	 * @param challengeStore
+	 *            the optional challenge store. If <code>null</code>, the
+	 *            challenge is taken from the HTTP session.
+	 * @return
+	 */
+	public static byte[] getAuthnChallenge(HttpSession session,
+			Long maxMaturity, ChallengeStore challengeStore) {
+		if (null == maxMaturity) {
+			maxMaturity = DEFAULT_MAX_MATURITY;
+		}
+		if (null != challengeStore) {
+			byte[] challenge = challengeStore.consumeChallenge(
+					getChallengeStoreKey(session), maxMaturity);
+			if (null == challenge) {
+				throw new SecurityException("no fresh challenge in store");
+			}
+			return challenge;
+		}
 		AuthenticationChallenge authenticationChallenge = (AuthenticationChallenge) session
 				.getAttribute(AUTHN_CHALLENGE_SESSION_ATTRIBUTE);
 		if (null == authenticationChallenge) {
@@ -123,9 +262,6 @@ public class AuthenticationChallenge implements Serializable {
 		}
 		session.removeAttribute(AUTHN_CHALLENGE_SESSION_ATTRIBUTE);
 		Date now = new Date();
-		if (null == maxMaturity) {
-			maxMaturity = DEFAULT_MAX_MATURITY;
-		}
 		long dt = now.getTime()
 				- authenticationChallenge.getTimestamp().getTime();
 		if (dt > maxMaturity) {
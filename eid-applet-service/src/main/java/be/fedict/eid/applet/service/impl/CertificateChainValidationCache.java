@@ -0,0 +1,174 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.impl;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Bounded cache of successful certificate chain validations, keyed by the
+ * SHA-256 fingerprint of the chain. Allows the message handlers to skip the
+ * validation SPI call for a chain that has recently been validated.
+ * 
+ * <p>
+ * A validation result expires after the time-to-live, or when one of the
+ * certificates of the chain expires, whichever comes first. The time-to-live
+ * should not exceed the freshness of the revocation data used during the
+ * validation, as a revocation will go unnoticed until the cached result
+ * expires. Failed validations are never cached. A time-to-live of zero or less
+ * disables the cache.
+ * </p>
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class CertificateChainValidationCache {
+
+	private static final Log LOG = LogFactory
+			.getLog(CertificateChainValidationCache.class);
+
+	/**
+	 * The default maximum number of cached validation results.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 1000;
+
+	private final long ttl;
+
+	private final Map<ByteBuffer, Long> validChains;
+
+	/**
+	 * Default constructor. Uses the {@link #DEFAULT_MAX_SIZE}.
+	 * 
+	 * @param ttl
+	 *            the time-to-live of a validation result in milliseconds.
+	 *            <code>null</code>, zero or less disables the cache.
+	 */
+	public CertificateChainValidationCache(Long ttl) {
+		this(null == ttl ? 0 : ttl, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param ttl
+	 *            the time-to-live of a validation result in milliseconds. Zero
+	 *            or less disables the cache.
+	 * @param maxSize
+	 *            the maximum number of cached validation results.
+	 */
+	public CertificateChainValidationCache(long ttl, final int maxSize) {
+		this.ttl = ttl;
+		this.validChains = new LinkedHashMap<ByteBuffer, Long>(16, 0.75f,
+				true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<ByteBuffer, Long> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Checks whether the given certificate chain has recently been validated
+	 * successfully.
+	 * 
+	 * @param certificateChain
+	 * @return
+	 */
+	public boolean isValid(List<X509Certificate> certificateChain) {
+		if (this.ttl <= 0) {
+			return false;
+		}
+		ByteBuffer fingerprint = getFingerprint(certificateChain);
+		if (null == fingerprint) {
+			return false;
+		}
+		Long expiry;
+		synchronized (this.validChains) {
+			expiry = this.validChains.get(fingerprint);
+			if (null == expiry) {
+				return false;
+			}
+			if (expiry <= System.currentTimeMillis()) {
+				this.validChains.remove(fingerprint);
+				return false;
+			}
+		}
+		LOG.debug("certificate chain validation cache hit");
+		return true;
+	}
+
+	/**
+	 * Records a successful validation of the given certificate chain.
+	 * 
+	 * @param certificateChain
+	 */
+	public void setValid(List<X509Certificate> certificateChain) {
+		if (this.ttl <= 0) {
+			return;
+		}
+		ByteBuffer fingerprint = getFingerprint(certificateChain);
+		if (null == fingerprint) {
+			return;
+		}
+		long expiry = System.currentTimeMillis() + this.ttl;
+		for (X509Certificate certificate : certificateChain) {
+			expiry = Math.min(expiry, certificate.getNotAfter().getTime());
+		}
+		synchronized (this.validChains) {
+			this.validChains.put(fingerprint, expiry);
+		}
+	}
+
+	private ByteBuffer getFingerprint(List<X509Certificate> certificateChain) {
+		MessageDigest messageDigest;
+		try {
+			messageDigest = CryptoEnginePool.getMessageDigest("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-256 not supported: "
+					+ e.getMessage(), e);
+		}
+		for (X509Certificate certificate : certificateChain) {
+			if (null == certificate) {
+				return null;
+			}
+			try {
+				messageDigest.update(certificate.getEncoded());
+			} catch (CertificateEncodingException e) {
+				LOG.warn("certificate encoding error: " + e.getMessage());
+				return null;
+			}
+		}
+		ByteBuffer fingerprint = ByteBuffer.wrap(messageDigest.digest());
+		CryptoEnginePool.releaseMessageDigest(messageDigest, "SHA-256");
+		return fingerprint;
+	}
+}
@@ -18,7 +18,6 @@
 
 package be.fedict.eid.applet.service.impl;
 
-import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
 import org.apache.commons.logging.Log;
@@ -27,8 +26,9 @@ import org.apache.commons.logging.LogFactory;
 import be.fedict.eid.applet.service.EIdData;
 import be.fedict.eid.applet.service.impl.handler.AuthenticationDataMessageHandler;
 import be.fedict.eid.applet.service.impl.handler.IdentityDataMessageHandler;
+import be.fedict.eid.applet.shared.protocol.ProtocolContext;
+import be.fedict.eid.applet.shared.protocol.ProtocolContextStateListener;
 import be.fedict.eid.applet.shared.protocol.ProtocolState;
-import be.fedict.eid.applet.shared.protocol.ProtocolStateListener;
 
 /**
  * Protocol state listener that manages the cleanup of session attributes.
@@ -39,42 +39,40 @@ import be.fedict.eid.applet.shared.protocol.ProtocolStateListener;
  * that thinks that the citizen performed a successful identification.
  * </p>
  * 
+ * <p>
+ * Also clears the {@link RequestContext} at the start and at the end of every
+ * protocol run. This listener is stateless, and is shared across all protocol
+ * runs. It expects a {@link HttpSessionProtocolContext}.
+ * </p>
+ * 
  * @author Frank Cornelis
  * 
  */
-public class CleanSessionProtocolStateListener implements ProtocolStateListener {
+public class CleanSessionProtocolStateListener implements
+		ProtocolContextStateListener {
 
 	private static final Log LOG = LogFactory
 			.getLog(CleanSessionProtocolStateListener.class);
 
-	private final HttpSession httpSession;
-
-	/**
-	 * Main constructor.
-	 * 
-	 * @param request
-	 */
-	public CleanSessionProtocolStateListener(HttpServletRequest request) {
-		this.httpSession = request.getSession();
-	}
-
-	public void protocolStateTransition(ProtocolState newProtocolState) {
+	public void protocolStateTransition(ProtocolContext protocolContext,
+			ProtocolState newProtocolState) {
+		HttpSession httpSession = getHttpSession(protocolContext);
 		switch (newProtocolState) {
 		case IDENTIFY: {
 			LOG.debug("cleaning up the identity session attributes...");
-			this.httpSession
+			httpSession
 					.removeAttribute(IdentityDataMessageHandler.IDENTITY_SESSION_ATTRIBUTE);
-			this.httpSession
+			httpSession
 					.removeAttribute(IdentityDataMessageHandler.ADDRESS_SESSION_ATTRIBUTE);
-			this.httpSession
+			httpSession
 					.removeAttribute(IdentityDataMessageHandler.PHOTO_SESSION_ATTRIBUTE);
-			this.httpSession
+			httpSession
 					.removeAttribute(IdentityDataMessageHandler.EID_CERTS_SESSION_ATTRIBUTE);
-			this.httpSession
+			httpSession
 					.removeAttribute(IdentityDataMessageHandler.EID_DATA_IDENTITY_SESSION_ATTRIBUTE);
-			this.httpSession
+			httpSession
 					.removeAttribute(IdentityDataMessageHandler.EID_DATA_ADDRESS_SESSION_ATTRIBUTE);
-			EIdData eidData = (EIdData) this.httpSession
+			EIdData eidData = (EIdData) httpSession
 					.getAttribute(IdentityDataMessageHandler.EID_SESSION_ATTRIBUTE);
 			if (null != eidData) {
 				/*
@@ -89,19 +87,19 @@ public class CleanSessionProtocolStateListener implements ProtocolStateListener
 		}
 		case AUTHENTICATE: {
 			LOG.debug("cleaning up the authn session attributes...");
-			this.httpSession
+			httpSession
 					.removeAttribute(AuthenticationDataMessageHandler.AUTHENTICATED_USER_IDENTIFIER_SESSION_ATTRIBUTE);
-			this.httpSession
+			httpSession
 					.removeAttribute(IdentityDataMessageHandler.IDENTITY_SESSION_ATTRIBUTE);
-			this.httpSession
+			httpSession
 					.removeAttribute(IdentityDataMessageHandler.ADDRESS_SESSION_ATTRIBUTE);
-			this.httpSession
+			httpSession
 					.removeAttribute(IdentityDataMessageHandler.PHOTO_SESSION_ATTRIBUTE);
-			this.httpSession
+			httpSession
 					.removeAttribute(IdentityDataMessageHandler.EID_DATA_IDENTITY_SESSION_ATTRIBUTE);
-			this.httpSession
+			httpSession
 					.removeAttribute(IdentityDataMessageHandler.EID_DATA_ADDRESS_SESSION_ATTRIBUTE);
-			EIdData eidData = (EIdData) this.httpSession
+			EIdData eidData = (EIdData) httpSession
 					.getAttribute(IdentityDataMessageHandler.EID_SESSION_ATTRIBUTE);
 			if (null != eidData) {
 				eidData.identifier = null;
@@ -115,9 +113,15 @@ public class CleanSessionProtocolStateListener implements ProtocolStateListener
 		}
 	}
 
-	public void startProtocolRun() {
+	public void startProtocolRun(ProtocolContext protocolContext) {
+		RequestContext.clearRequestContext(getHttpSession(protocolContext));
+	}
+
+	public void stopProtocolRun(ProtocolContext protocolContext) {
+		RequestContext.clearRequestContext(getHttpSession(protocolContext));
 	}
 
-	public void stopProtocolRun() {
+	private HttpSession getHttpSession(ProtocolContext protocolContext) {
+		return ((HttpSessionProtocolContext) protocolContext).getHttpSession();
 	}
 }
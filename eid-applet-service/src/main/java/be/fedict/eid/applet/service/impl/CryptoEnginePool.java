@@ -0,0 +1,206 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.impl;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Signature;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Pool of cryptographic engines, keyed by algorithm and provider. Avoids the
+ * provider service lookup of the <code>getInstance</code> factory methods,
+ * which contends on the provider under load.
+ * 
+ * <p>
+ * An engine is taken from the pool for the duration of a single operation,
+ * and released afterwards. The caller must fully initialize a
+ * {@link Signature} or {@link Cipher} engine taken from the pool. Releasing an
+ * engine is optional: an engine that is not released, for example after an
+ * error, is simply garbage collected. The number of idle engines per key is
+ * bounded.
+ * </p>
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class CryptoEnginePool {
+
+	private static final int MAX_IDLE_ENGINES = 16;
+
+	private static final ConcurrentMap<String, BlockingQueue<Object>> pools = new ConcurrentHashMap<String, BlockingQueue<Object>>();
+
+	private CryptoEnginePool() {
+		super();
+	}
+
+	/**
+	 * Gives back a signature engine.
+	 * 
+	 * @param algorithm
+	 * @return
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static Signature getSignature(String algorithm)
+			throws NoSuchAlgorithmException {
+		Signature signature = (Signature) poll(getKey("Signature", algorithm,
+				null));
+		if (null != signature) {
+			return signature;
+		}
+		return Signature.getInstance(algorithm);
+	}
+
+	/**
+	 * Gives back a signature engine of the given provider.
+	 * 
+	 * @param algorithm
+	 * @param provider
+	 * @return
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 */
+	public static Signature getSignature(String algorithm, String provider)
+			throws NoSuchAlgorithmException, NoSuchProviderException {
+		Signature signature = (Signature) poll(getKey("Signature", algorithm,
+				provider));
+		if (null != signature) {
+			return signature;
+		}
+		return Signature.getInstance(algorithm, provider);
+	}
+
+	/**
+	 * Releases a signature engine obtained via {@link #getSignature(String)}.
+	 * 
+	 * @param signature
+	 * @param algorithm
+	 */
+	public static void releaseSignature(Signature signature, String algorithm) {
+		releaseSignature(signature, algorithm, null);
+	}
+
+	/**
+	 * Releases a signature engine obtained via
+	 * {@link #getSignature(String, String)}.
+	 * 
+	 * @param signature
+	 * @param algorithm
+	 * @param provider
+	 */
+	public static void releaseSignature(Signature signature, String algorithm,
+			String provider) {
+		offer(getKey("Signature", algorithm, provider), signature);
+	}
+
+	/**
+	 * Gives back a cipher engine.
+	 * 
+	 * @param transformation
+	 * @return
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchPaddingException
+	 */
+	public static Cipher getCipher(String transformation)
+			throws NoSuchAlgorithmException, NoSuchPaddingException {
+		Cipher cipher = (Cipher) poll(getKey("Cipher", transformation, null));
+		if (null != cipher) {
+			return cipher;
+		}
+		return Cipher.getInstance(transformation);
+	}
+
+	/**
+	 * Releases a cipher engine obtained via {@link #getCipher(String)}.
+	 * 
+	 * @param cipher
+	 * @param transformation
+	 */
+	public static void releaseCipher(Cipher cipher, String transformation) {
+		offer(getKey("Cipher", transformation, null), cipher);
+	}
+
+	/**
+	 * Gives back a message digest engine.
+	 * 
+	 * @param algorithm
+	 * @return
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static MessageDigest getMessageDigest(String algorithm)
+			throws NoSuchAlgorithmException {
+		MessageDigest messageDigest = (MessageDigest) poll(getKey(
+				"MessageDigest", algorithm, null));
+		if (null != messageDigest) {
+			return messageDigest;
+		}
+		return MessageDigest.getInstance(algorithm);
+	}
+
+	/**
+	 * Releases a message digest engine obtained via
+	 * {@link #getMessageDigest(String)}. The engine gets reset.
+	 * 
+	 * @param messageDigest
+	 * @param algorithm
+	 */
+	public static void releaseMessageDigest(MessageDigest messageDigest,
+			String algorithm) {
+		messageDigest.reset();
+		offer(getKey("MessageDigest", algorithm, null), messageDigest);
+	}
+
+	private static String getKey(String type, String algorithm,
+			String provider) {
+		if (null == provider) {
+			return type + ":" + algorithm;
+		}
+		return type + ":" + algorithm + ":" + provider;
+	}
+
+	private static Object poll(String key) {
+		BlockingQueue<Object> pool = pools.get(key);
+		if (null == pool) {
+			return null;
+		}
+		return pool.poll();
+	}
+
+	private static void offer(String key, Object engine) {
+		BlockingQueue<Object> pool = pools.get(key);
+		if (null == pool) {
+			pool = new ArrayBlockingQueue<Object>(MAX_IDLE_ENGINES);
+			BlockingQueue<Object> existingPool = pools.putIfAbsent(key, pool);
+			if (null != existingPool) {
+				pool = existingPool;
+			}
+		}
+		/*
+		 * Drops the engine when the pool is full.
+		 */
+		pool.offer(engine);
+	}
+}
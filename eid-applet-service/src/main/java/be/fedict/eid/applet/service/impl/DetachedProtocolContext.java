@@ -0,0 +1,210 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.eid.applet.service.AbstractAppletServiceServlet;
+import be.fedict.eid.applet.service.impl.handler.HelloMessageHandler;
+import be.fedict.eid.applet.service.impl.handler.SignatureDataMessageHandler;
+import be.fedict.eid.applet.service.spi.ProtocolContextStore;
+import be.fedict.eid.applet.shared.protocol.ProtocolContext;
+import be.fedict.eid.applet.shared.protocol.ProtocolState;
+
+/**
+ * Implementation of a protocol context that lives outside of the HTTP session,
+ * either within a MAC protected token or within a protocol context store. Next
+ * to the protocol state, it holds the session attributes that only matter
+ * during a protocol run: the authentication challenge, the request context
+ * flags and the digest to verify.
+ * 
+ * @author Frank Cornelis
+ * @see ProtocolContextTokenCodec
+ * @see DetachedProtocolContextHttpSession
+ */
+public class DetachedProtocolContext implements ProtocolContext {
+
+	private static final Log LOG = LogFactory
+			.getLog(DetachedProtocolContext.class);
+
+	/**
+	 * The session attributes kept within the detached protocol context. The
+	 * position within this list identifies the attribute within a token, so
+	 * only append here, or increase the token version.
+	 */
+	static final List<String> PROTOCOL_ATTRIBUTES = Collections
+			.unmodifiableList(Arrays.asList(
+					AuthenticationChallenge.AUTHN_CHALLENGE_SESSION_ATTRIBUTE,
+					RequestContext.INCLUDE_IDENTITY_SESSION_ATTRIBUTE,
+					RequestContext.INCLUDE_ADDRESS_SESSION_ATTRIBUTE,
+					RequestContext.INCLUDE_PHOTO_SESSION_ATTRIBUTE,
+					RequestContext.INCLUDE_CERTIFICATES_SESSION_ATTRIBUTE,
+					RequestContext.TRANSACTION_MESSAGE_SESSION_ATTRIBUTE,
+					SignatureDataMessageHandler.DIGEST_VALUE_SESSION_ATTRIBUTE,
+					SignatureDataMessageHandler.DIGEST_ALGO_SESSION_ATTRIBUTE,
+					HelloMessageHandler.CLIENT_LANGUAGE_SESSION_ATTRIBUTE,
+					AbstractAppletServiceServlet.COMPRESSION_SESSION_ATTRIBUTE));
+
+	private ProtocolState protocolState;
+
+	private String protocolRunId;
+
+	private final Map<String, Object> attributes;
+
+	/**
+	 * Main constructor. Creates an empty protocol context.
+	 */
+	public DetachedProtocolContext() {
+		this.attributes = new HashMap<String, Object>();
+	}
+
+	/**
+	 * Checks whether the given session attribute is kept within the detached
+	 * protocol context.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public static boolean isProtocolAttribute(String name) {
+		return PROTOCOL_ATTRIBUTES.contains(name);
+	}
+
+	public ProtocolState getProtocolState() {
+		LOG.debug("current protocol state: " + this.protocolState);
+		return this.protocolState;
+	}
+
+	public void setProtocolState(ProtocolState protocolState) {
+		LOG.debug("protocol state transition: " + protocolState);
+		this.protocolState = protocolState;
+	}
+
+	public void removeProtocolState() {
+		LOG.debug("removing protocol state");
+		this.protocolState = null;
+	}
+
+	/**
+	 * Gives back the identifier of the protocol run. All protocol context
+	 * tokens of a protocol run carry the same identifier. Is <code>null</code>
+	 * when the protocol context does not come from a token.
+	 * 
+	 * @return
+	 * @see ProtocolContextTokenCodec
+	 */
+	public String getProtocolRunId() {
+		return this.protocolRunId;
+	}
+
+	public void setProtocolRunId(String protocolRunId) {
+		this.protocolRunId = protocolRunId;
+	}
+
+	public Object getAttribute(String name) {
+		return this.attributes.get(name);
+	}
+
+	/**
+	 * Sets a protocol attribute. Only values of type {@link Boolean},
+	 * {@link String}, <code>byte[]</code> and {@link AuthenticationChallenge}
+	 * can be kept within a detached protocol context.
+	 * 
+	 * @param name
+	 * @param value
+	 */
+	public void setAttribute(String name, Object value) {
+		if (false == isProtocolAttribute(name)) {
+			throw new IllegalArgumentException("not a protocol attribute: "
+					+ name);
+		}
+		if (null == value) {
+			this.attributes.remove(name);
+			return;
+		}
+		if (false == (value instanceof Boolean || value instanceof String
+				|| value instanceof byte[] || value instanceof AuthenticationChallenge)) {
+			throw new IllegalArgumentException(
+					"unsupported protocol attribute type: "
+							+ value.getClass().getName());
+		}
+		this.attributes.put(name, value);
+	}
+
+	public void removeAttribute(String name) {
+		this.attributes.remove(name);
+	}
+
+	/**
+	 * Checks whether this protocol context holds anything worth keeping.
+	 * 
+	 * @return
+	 */
+	public boolean isEmpty() {
+		return null == this.protocolState && this.attributes.isEmpty();
+	}
+
+	/**
+	 * Gives back the content of this protocol context as map, as used by a
+	 * {@link ProtocolContextStore}. The protocol state is keyed via
+	 * {@link HttpServletProtocolContext#PROTOCOL_STATE_SESSION_ATTRIBUTE}.
+	 * 
+	 * @return
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new HashMap<String, Object>(this.attributes);
+		if (null != this.protocolState) {
+			map.put(HttpServletProtocolContext.PROTOCOL_STATE_SESSION_ATTRIBUTE,
+					this.protocolState);
+		}
+		return map;
+	}
+
+	/**
+	 * Restores a protocol context from the given map.
+	 * 
+	 * @param map
+	 *            the map as created via {@link #toMap()}, or <code>null</code>.
+	 * @return
+	 * @see #toMap()
+	 */
+	public static DetachedProtocolContext fromMap(Map<String, Object> map) {
+		DetachedProtocolContext protocolContext = new DetachedProtocolContext();
+		if (null == map) {
+			return protocolContext;
+		}
+		for (Map.Entry<String, Object> entry : map.entrySet()) {
+			String name = entry.getKey();
+			if (HttpServletProtocolContext.PROTOCOL_STATE_SESSION_ATTRIBUTE
+					.equals(name)) {
+				protocolContext.protocolState = (ProtocolState) entry
+						.getValue();
+			} else {
+				protocolContext.setAttribute(name, entry.getValue());
+			}
+		}
+		return protocolContext;
+	}
+}
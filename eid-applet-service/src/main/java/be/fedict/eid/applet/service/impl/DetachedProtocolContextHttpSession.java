@@ -0,0 +1,208 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.impl;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionContext;
+
+import be.fedict.eid.applet.shared.protocol.ProtocolState;
+
+/**
+ * HTTP session view handed to the message handlers when the protocol context
+ * is kept outside of the HTTP session. Protocol attributes go to the
+ * {@link DetachedProtocolContext}. All other attributes, like the identity and
+ * authentication results, go to the real HTTP session, which is only created
+ * once such an attribute gets set. Removing an attribute that is not there
+ * does not touch the real HTTP session, which spares a replication write on
+ * clustered containers.
+ * 
+ * <p>
+ * This view also acts as the protocol context of the protocol run, so a
+ * request needs no other per-request protocol objects.
+ * </p>
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class DetachedProtocolContextHttpSession implements HttpSession,
+		HttpSessionProtocolContext {
+
+	private final DetachedProtocolContext protocolContext;
+
+	private final HttpServletRequest request;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param protocolContext
+	 * @param request
+	 */
+	public DetachedProtocolContextHttpSession(
+			DetachedProtocolContext protocolContext, HttpServletRequest request) {
+		this.protocolContext = protocolContext;
+		this.request = request;
+	}
+
+	public HttpSession getHttpSession() {
+		return this;
+	}
+
+	public ProtocolState getProtocolState() {
+		return this.protocolContext.getProtocolState();
+	}
+
+	public void setProtocolState(ProtocolState protocolState) {
+		this.protocolContext.setProtocolState(protocolState);
+	}
+
+	public void removeProtocolState() {
+		this.protocolContext.removeProtocolState();
+	}
+
+	/**
+	 * Gives back the identifier of the protocol run, as carried by the
+	 * protocol context token.
+	 * 
+	 * @return the protocol run identifier, or <code>null</code> when the
+	 *         protocol context does not come from a token.
+	 * @see DetachedProtocolContext#getProtocolRunId()
+	 */
+	public String getProtocolRunId() {
+		return this.protocolContext.getProtocolRunId();
+	}
+
+	private HttpSession getSession() {
+		return this.request.getSession();
+	}
+
+	private HttpSession getExistingSession() {
+		return this.request.getSession(false);
+	}
+
+	public Object getAttribute(String name) {
+		if (DetachedProtocolContext.isProtocolAttribute(name)) {
+			return this.protocolContext.getAttribute(name);
+		}
+		HttpSession session = getExistingSession();
+		if (null == session) {
+			return null;
+		}
+		return session.getAttribute(name);
+	}
+
+	public void setAttribute(String name, Object value) {
+		if (DetachedProtocolContext.isProtocolAttribute(name)) {
+			this.protocolContext.setAttribute(name, value);
+			return;
+		}
+		getSession().setAttribute(name, value);
+	}
+
+	public void removeAttribute(String name) {
+		if (DetachedProtocolContext.isProtocolAttribute(name)) {
+			this.protocolContext.removeAttribute(name);
+			return;
+		}
+		HttpSession session = getExistingSession();
+		if (null == session) {
+			return;
+		}
+		if (null == session.getAttribute(name)) {
+			return;
+		}
+		session.removeAttribute(name);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public Enumeration getAttributeNames() {
+		HttpSession session = getExistingSession();
+		if (null == session) {
+			return Collections.enumeration(Collections.emptyList());
+		}
+		return session.getAttributeNames();
+	}
+
+	public Object getValue(String name) {
+		return getAttribute(name);
+	}
+
+	public String[] getValueNames() {
+		List<String> names = new LinkedList<String>();
+		Enumeration<?> namesEnum = getAttributeNames();
+		while (namesEnum.hasMoreElements()) {
+			names.add((String) namesEnum.nextElement());
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	public void putValue(String name, Object value) {
+		setAttribute(name, value);
+	}
+
+	public void removeValue(String name) {
+		removeAttribute(name);
+	}
+
+	public long getCreationTime() {
+		return getSession().getCreationTime();
+	}
+
+	public String getId() {
+		return getSession().getId();
+	}
+
+	public long getLastAccessedTime() {
+		return getSession().getLastAccessedTime();
+	}
+
+	public int getMaxInactiveInterval() {
+		return getSession().getMaxInactiveInterval();
+	}
+
+	public void setMaxInactiveInterval(int interval) {
+		getSession().setMaxInactiveInterval(interval);
+	}
+
+	public ServletContext getServletContext() {
+		return getSession().getServletContext();
+	}
+
+	@SuppressWarnings("deprecation")
+	public HttpSessionContext getSessionContext() {
+		return getSession().getSessionContext();
+	}
+
+	public void invalidate() {
+		HttpSession session = getExistingSession();
+		if (null != session) {
+			session.invalidate();
+		}
+	}
+
+	public boolean isNew() {
+		return getSession().isNew();
+	}
+}
@@ -24,7 +24,6 @@ import javax.servlet.http.HttpSession;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import be.fedict.eid.applet.shared.protocol.ProtocolContext;
 import be.fedict.eid.applet.shared.protocol.ProtocolState;
 
 /**
@@ -33,7 +32,7 @@ import be.fedict.eid.applet.shared.protocol.ProtocolState;
  * @author Frank Cornelis
  * 
  */
-public class HttpServletProtocolContext implements ProtocolContext {
+public class HttpServletProtocolContext implements HttpSessionProtocolContext {
 
 	public static final String PROTOCOL_STATE_SESSION_ATTRIBUTE = HttpServletProtocolContext.class
 			.getName()
@@ -50,7 +49,15 @@ public class HttpServletProtocolContext implements ProtocolContext {
 	 * @param request
 	 */
 	public HttpServletProtocolContext(HttpServletRequest request) {
-		this.session = request.getSession();
+		this(request.getSession());
+	}
+
+	public HttpServletProtocolContext(HttpSession session) {
+		this.session = session;
+	}
+
+	public HttpSession getHttpSession() {
+		return this.session;
 	}
 
 	public ProtocolState getProtocolState() {
@@ -0,0 +1,114 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.impl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Read-only map view on the HTTP headers of a servlet request. Lookups go
+ * straight to {@link HttpServletRequest#getHeader(String)}, so header names
+ * are case insensitive. Nothing is copied unless the map gets iterated.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class HttpServletRequestHeaderMap extends AbstractMap<String, String> {
+
+	private final HttpServletRequest request;
+
+	private Set<Map.Entry<String, String>> entrySet;
+
+	public HttpServletRequestHeaderMap(HttpServletRequest request) {
+		this.request = request;
+	}
+
+	@Override
+	public String get(Object key) {
+		if (false == key instanceof String) {
+			return null;
+		}
+		return this.request.getHeader((String) key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return null != get(key);
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		if (null == this.entrySet) {
+			this.entrySet = new EntrySet();
+		}
+		return this.entrySet;
+	}
+
+	private class EntrySet extends AbstractSet<Map.Entry<String, String>> {
+
+		@Override
+		public Iterator<Map.Entry<String, String>> iterator() {
+			return new EntryIterator(request.getHeaderNames());
+		}
+
+		@Override
+		public int size() {
+			int size = 0;
+			Enumeration<?> headerNames = request.getHeaderNames();
+			while (headerNames.hasMoreElements()) {
+				headerNames.nextElement();
+				size++;
+			}
+			return size;
+		}
+	}
+
+	private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+
+		private final Enumeration<?> headerNames;
+
+		public EntryIterator(Enumeration<?> headerNames) {
+			this.headerNames = headerNames;
+		}
+
+		public boolean hasNext() {
+			return this.headerNames.hasMoreElements();
+		}
+
+		public Map.Entry<String, String> next() {
+			if (false == this.headerNames.hasMoreElements()) {
+				throw new NoSuchElementException();
+			}
+			String headerName = (String) this.headerNames.nextElement();
+			return new AbstractMap.SimpleImmutableEntry<String, String>(
+					headerName, request.getHeader(headerName));
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
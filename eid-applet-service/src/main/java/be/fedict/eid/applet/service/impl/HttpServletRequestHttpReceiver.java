@@ -18,19 +18,22 @@
 
 package be.fedict.eid.applet.service.impl;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.LinkedList;
 import java.util.List;
 
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import be.fedict.eid.applet.shared.protocol.HttpReceiver;
+import be.fedict.eid.applet.shared.AbstractProtocolMessage;
+import be.fedict.eid.applet.shared.protocol.StreamingHttpReceiver;
 
 /**
  * HttpServletRequest based HTTP receiver.
@@ -38,15 +41,26 @@ import be.fedict.eid.applet.shared.protocol.HttpReceiver;
  * @author Frank Cornelis
  * 
  */
-public class HttpServletRequestHttpReceiver implements HttpReceiver {
+public class HttpServletRequestHttpReceiver implements StreamingHttpReceiver {
 
 	private static final Log LOG = LogFactory
 			.getLog(HttpServletRequestHttpReceiver.class);
 
+	private static final String SIZE_HEADER_SUFFIX = "Size";
+
+	private static final int BUFFER_SIZE = 4096;
+
+	/**
+	 * Without a maximum body size we do not blindly trust the Content-Length.
+	 */
+	private static final int MAX_INITIAL_SIZE = 64 * 1024;
+
 	private final HttpServletRequest httpServletRequest;
 
 	private final boolean skipSecureConnectionCheck;
 
+	private final int maxBodySize;
+
 	/**
 	 * Main constructor.
 	 * 
@@ -58,31 +72,183 @@ public class HttpServletRequestHttpReceiver implements HttpReceiver {
 	public HttpServletRequestHttpReceiver(
 			HttpServletRequest httpServletRequest,
 			boolean skipSecureConnectionCheck) {
+		this(httpServletRequest, skipSecureConnectionCheck, 0);
+	}
+
+	/**
+	 * Constructor with a maximum HTTP body size.
+	 * 
+	 * @param httpServletRequest
+	 * @param skipSecureConnectionCheck
+	 *            set to <code>true</code> to skip the check on a secure SSL
+	 *            connection.
+	 * @param maxBodySize
+	 *            the maximum accepted HTTP body size in bytes. Use
+	 *            <code>0</code> for no limit.
+	 */
+	public HttpServletRequestHttpReceiver(
+			HttpServletRequest httpServletRequest,
+			boolean skipSecureConnectionCheck, int maxBodySize) {
 		this.httpServletRequest = httpServletRequest;
 		this.skipSecureConnectionCheck = skipSecureConnectionCheck;
+		this.maxBodySize = maxBodySize;
 	}
 
 	public byte[] getBody() {
+		int contentLength = checkBodySize();
 		try {
-			ServletInputStream inputStream = this.httpServletRequest
-					.getInputStream();
-			byte[] body = IOUtils.toByteArray(inputStream);
-			return body;
+			InputStream inputStream = openBodyInputStream();
+			if (-1 != contentLength && 0 != this.maxBodySize) {
+				/*
+				 * Known and bounded body size, so we can read into an exactly
+				 * sized buffer instead of a growing one.
+				 */
+				byte[] body = new byte[contentLength];
+				int offset = 0;
+				while (offset < contentLength) {
+					int n = inputStream.read(body, offset, contentLength
+							- offset);
+					if (-1 == n) {
+						throw new RuntimeException("HTTP body truncated");
+					}
+					offset += n;
+				}
+				return body;
+			}
+			int initialSize = BUFFER_SIZE;
+			if (contentLength > 0 && contentLength < MAX_INITIAL_SIZE) {
+				initialSize = contentLength;
+			}
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(initialSize);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int n;
+			while (-1 != (n = inputStream.read(buffer))) {
+				baos.write(buffer, 0, n);
+			}
+			return baos.toByteArray();
 		} catch (IOException e) {
 			throw new RuntimeException("IO error: " + e.getMessage(), e);
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	public List<String> getHeaderNames() {
-		Enumeration headerNamesEnumeration = this.httpServletRequest
+	public InputStream getBodyInputStream() {
+		checkBodySize();
+		return openBodyInputStream();
+	}
+
+	private InputStream openBodyInputStream() {
+		ServletInputStream inputStream;
+		try {
+			inputStream = this.httpServletRequest.getInputStream();
+		} catch (IOException e) {
+			throw new RuntimeException("IO error: " + e.getMessage(), e);
+		}
+		if (0 == this.maxBodySize) {
+			return inputStream;
+		}
+		/*
+		 * Also covers chunked bodies for which we do not know the size up
+		 * front.
+		 */
+		return new MaxSizeInputStream(inputStream, this.maxBodySize);
+	}
+
+	/**
+	 * Checks the announced HTTP body size against the maximum body size, before
+	 * reading any byte of the body. Both the Content-Length and the sum of all
+	 * eID Applet protocol size headers are taken into account.
+	 * 
+	 * @return the content length, or <code>-1</code> if unknown.
+	 */
+	private int checkBodySize() {
+		int contentLength = this.httpServletRequest.getContentLength();
+		if (0 == this.maxBodySize) {
+			return contentLength;
+		}
+		if (contentLength > this.maxBodySize) {
+			throw new SecurityException("HTTP body too large: "
+					+ contentLength);
+		}
+		long announcedSize = 0;
+		Enumeration<?> headerNamesEnumeration = this.httpServletRequest
 				.getHeaderNames();
-		List<String> headerNames = new LinkedList<String>();
 		while (headerNamesEnumeration.hasMoreElements()) {
 			String headerName = (String) headerNamesEnumeration.nextElement();
-			headerNames.add(headerName);
+			if (false == headerName.regionMatches(true, 0,
+					AbstractProtocolMessage.HTTP_HEADER_PREFIX, 0,
+					AbstractProtocolMessage.HTTP_HEADER_PREFIX.length())) {
+				continue;
+			}
+			if (false == headerName.regionMatches(true, headerName.length()
+					- SIZE_HEADER_SUFFIX.length(), SIZE_HEADER_SUFFIX, 0,
+					SIZE_HEADER_SUFFIX.length())) {
+				continue;
+			}
+			String headerValue = this.httpServletRequest.getHeader(headerName);
+			int size;
+			try {
+				size = Integer.parseInt(headerValue);
+			} catch (NumberFormatException e) {
+				throw new RuntimeException("invalid size header: "
+						+ headerName);
+			}
+			if (size < 0) {
+				/*
+				 * Would cancel out the other size headers.
+				 */
+				throw new SecurityException("negative size header: "
+						+ headerName);
+			}
+			announcedSize += size;
 		}
-		return headerNames;
+		if (announcedSize > this.maxBodySize) {
+			throw new SecurityException("HTTP body too large: "
+					+ announcedSize);
+		}
+		return contentLength;
+	}
+
+	/**
+	 * Input stream that refuses to deliver more than a given number of bytes.
+	 */
+	private static class MaxSizeInputStream extends FilterInputStream {
+
+		private long remaining;
+
+		MaxSizeInputStream(InputStream inputStream, long maxSize) {
+			super(inputStream);
+			this.remaining = maxSize;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (-1 != b) {
+				count(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (-1 != n) {
+				count(n);
+			}
+			return n;
+		}
+
+		private void count(int n) {
+			this.remaining -= n;
+			if (this.remaining < 0) {
+				throw new SecurityException("HTTP body too large");
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<String> getHeaderNames() {
+		return Collections.list(this.httpServletRequest.getHeaderNames());
 	}
 
 	public String getHeaderValue(String headerName) {
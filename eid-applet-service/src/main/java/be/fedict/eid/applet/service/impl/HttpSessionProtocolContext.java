@@ -0,0 +1,40 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.impl;
+
+import javax.servlet.http.HttpSession;
+
+import be.fedict.eid.applet.shared.protocol.ProtocolContext;
+
+/**
+ * Protocol context of the eID Applet Service. Gives the stateless protocol
+ * state listeners access to the HTTP session of the protocol run.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public interface HttpSessionProtocolContext extends ProtocolContext {
+
+	/**
+	 * Gives back the HTTP session as seen by the message handlers.
+	 * 
+	 * @return
+	 */
+	HttpSession getHttpSession();
+}
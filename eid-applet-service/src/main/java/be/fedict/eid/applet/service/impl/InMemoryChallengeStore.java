@@ -0,0 +1,167 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.eid.applet.service.spi.ChallengeStore;
+
+/**
+ * In-memory implementation of an authentication challenge store. The
+ * challenges are kept within a ring of time buckets. A bucket that falls out
+ * of the retention period is dropped as a whole when its slot gets reused, so
+ * expiry never requires a scan over all challenges.
+ * 
+ * <p>
+ * Consuming a challenge removes it from all buckets, so every challenge can be
+ * consumed only once.
+ * </p>
+ * 
+ * <p>
+ * When configured via the <code>ChallengeStoreClass</code>
+ * <code>init-param</code>, also set the <code>ChallengeStoreCache</code>
+ * <code>init-param</code> to <code>true</code>, so that all message handlers
+ * share the same instance.
+ * </p>
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class InMemoryChallengeStore implements ChallengeStore {
+
+	private static final Log LOG = LogFactory
+			.getLog(InMemoryChallengeStore.class);
+
+	/**
+	 * The default retention period of a challenge in milliseconds.
+	 */
+	public static final long DEFAULT_RETENTION = AuthenticationChallenge.DEFAULT_MAX_MATURITY;
+
+	private static final int BUCKET_COUNT = 4;
+
+	private final AtomicReferenceArray<Bucket> buckets;
+
+	private final long bucketWidth;
+
+	/**
+	 * Default constructor. Uses the {@link #DEFAULT_RETENTION}.
+	 */
+	public InMemoryChallengeStore() {
+		this(DEFAULT_RETENTION);
+	}
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param retention
+	 *            the minimum period in milliseconds that a challenge is kept.
+	 *            Challenges are dropped at the latest after 1.25 times this
+	 *            period.
+	 */
+	public InMemoryChallengeStore(long retention) {
+		this.bucketWidth = Math.max(1, retention / BUCKET_COUNT);
+		/*
+		 * One extra bucket, as the current bucket is only partially filled.
+		 */
+		this.buckets = new AtomicReferenceArray<Bucket>(BUCKET_COUNT + 1);
+	}
+
+	public void storeChallenge(String sessionId, byte[] challenge) {
+		long now = System.currentTimeMillis();
+		long epoch = now / this.bucketWidth;
+		Bucket currentBucket = getBucket(epoch);
+		for (int idx = 0; idx < this.buckets.length(); idx++) {
+			Bucket bucket = this.buckets.get(idx);
+			if (null != bucket && bucket != currentBucket) {
+				bucket.entries.remove(sessionId);
+			}
+		}
+		currentBucket.entries.put(sessionId, new Entry(challenge, now));
+	}
+
+	public byte[] consumeChallenge(String sessionId, long maxMaturity) {
+		long now = System.currentTimeMillis();
+		long oldestEpoch = now / this.bucketWidth - BUCKET_COUNT;
+		Entry entry = null;
+		for (int idx = 0; idx < this.buckets.length(); idx++) {
+			Bucket bucket = this.buckets.get(idx);
+			if (null == bucket) {
+				continue;
+			}
+			Entry bucketEntry = bucket.entries.remove(sessionId);
+			if (null != bucketEntry && bucket.epoch >= oldestEpoch) {
+				entry = bucketEntry;
+			}
+		}
+		if (null == entry) {
+			LOG.debug("no challenge for session");
+			return null;
+		}
+		if (now - entry.timestamp > maxMaturity) {
+			LOG.debug("maximum challenge maturity reached");
+			return null;
+		}
+		return entry.challenge;
+	}
+
+	private Bucket getBucket(long epoch) {
+		int idx = (int) (epoch % this.buckets.length());
+		while (true) {
+			Bucket bucket = this.buckets.get(idx);
+			if (null != bucket && bucket.epoch >= epoch) {
+				return bucket;
+			}
+			/*
+			 * Drops the expired bucket that occupies the slot.
+			 */
+			Bucket newBucket = new Bucket(epoch);
+			if (this.buckets.compareAndSet(idx, bucket, newBucket)) {
+				return newBucket;
+			}
+		}
+	}
+
+	private static class Bucket {
+
+		private final long epoch;
+
+		private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+		public Bucket(long epoch) {
+			this.epoch = epoch;
+		}
+	}
+
+	private static class Entry {
+
+		private final byte[] challenge;
+
+		private final long timestamp;
+
+		public Entry(byte[] challenge, long timestamp) {
+			this.challenge = challenge;
+			this.timestamp = timestamp;
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.eid.applet.service.spi.ProtocolContextStore;
+
+/**
+ * In-memory implementation of a protocol context store. The protocol contexts
+ * are spread over a fixed number of lock stripes, so concurrent requests of
+ * different HTTP sessions hardly ever contend.
+ * 
+ * <p>
+ * Protocol contexts expire after a time-to-live that is independent of the
+ * HTTP session timeout of the servlet container. Expired protocol contexts
+ * are evicted upon access, and per stripe once every time-to-live period
+ * while storing.
+ * </p>
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class InMemoryProtocolContextStore implements ProtocolContextStore {
+
+	private static final Log LOG = LogFactory
+			.getLog(InMemoryProtocolContextStore.class);
+
+	/**
+	 * The default time-to-live of a protocol context in milliseconds.
+	 */
+	public static final long DEFAULT_TTL = 1000 * 60 * 10;
+
+	private static final int STRIPE_COUNT = 16;
+
+	private final Stripe[] stripes;
+
+	private final long ttl;
+
+	/**
+	 * Default constructor. Uses the {@link #DEFAULT_TTL}.
+	 */
+	public InMemoryProtocolContextStore() {
+		this(DEFAULT_TTL);
+	}
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param ttl
+	 *            the time-to-live of a protocol context in milliseconds.
+	 */
+	public InMemoryProtocolContextStore(long ttl) {
+		this.ttl = ttl;
+		this.stripes = new Stripe[STRIPE_COUNT];
+		for (int idx = 0; idx < STRIPE_COUNT; idx++) {
+			this.stripes[idx] = new Stripe();
+		}
+	}
+
+	public Map<String, Object> getProtocolContext(String sessionId) {
+		Stripe stripe = getStripe(sessionId);
+		long now = System.currentTimeMillis();
+		synchronized (stripe) {
+			Entry entry = stripe.entries.get(sessionId);
+			if (null == entry) {
+				return null;
+			}
+			if (entry.expiry < now) {
+				LOG.debug("protocol context expired");
+				stripe.entries.remove(sessionId);
+				return null;
+			}
+			return entry.protocolContext;
+		}
+	}
+
+	public void setProtocolContext(String sessionId,
+			Map<String, Object> protocolContext) {
+		Stripe stripe = getStripe(sessionId);
+		long now = System.currentTimeMillis();
+		synchronized (stripe) {
+			if (now >= stripe.nextEviction) {
+				evictExpired(stripe, now);
+				stripe.nextEviction = now + this.ttl;
+			}
+			stripe.entries.put(sessionId, new Entry(protocolContext, now
+					+ this.ttl));
+		}
+	}
+
+	public void removeProtocolContext(String sessionId) {
+		Stripe stripe = getStripe(sessionId);
+		synchronized (stripe) {
+			stripe.entries.remove(sessionId);
+		}
+	}
+
+	private void evictExpired(Stripe stripe, long now) {
+		Iterator<Entry> entryIterator = stripe.entries.values().iterator();
+		while (entryIterator.hasNext()) {
+			if (entryIterator.next().expiry < now) {
+				entryIterator.remove();
+			}
+		}
+	}
+
+	private Stripe getStripe(String sessionId) {
+		int hash = sessionId.hashCode();
+		hash ^= (hash >>> 16);
+		return this.stripes[hash & (STRIPE_COUNT - 1)];
+	}
+
+	private static class Stripe {
+
+		private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+		private long nextEviction;
+	}
+
+	private static class Entry {
+
+		private final Map<String, Object> protocolContext;
+
+		private final long expiry;
+
+		public Entry(Map<String, Object> protocolContext, long expiry) {
+			this.protocolContext = protocolContext;
+			this.expiry = expiry;
+		}
+	}
+}
@@ -0,0 +1,393 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.eid.applet.shared.protocol.ProtocolState;
+
+/**
+ * Encoder and decoder of protocol context tokens.
+ * 
+ * <p>
+ * A token is the base64 encoding of: a version byte, a random 16 byte token
+ * identifier, the protocol run identifier, the issue time as 8 byte integer,
+ * the protocol state name, the number of protocol attributes as byte, per
+ * attribute its index within
+ * {@link DetachedProtocolContext#PROTOCOL_ATTRIBUTES}, a type tag and the value,
+ * and finally the HMAC-SHA256 over all previous bytes.
+ * </p>
+ * 
+ * <p>
+ * A token can be decoded only once. The identifiers of consumed tokens are
+ * remembered for the maximum token age, after which the token has expired
+ * anyway. All tokens of a protocol run carry the same protocol run identifier.
+ * </p>
+ * 
+ * <p>
+ * All eID Applet Service nodes sharing the same secret accept each other's
+ * tokens. The consumed tokens however are only known to the node that decoded
+ * them, so a token can be replayed against another node until it expires.
+ * Hence the token mode requires sticky sessions within a cluster. The default
+ * maximum age covers a single protocol step, including the PIN entry.
+ * </p>
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class ProtocolContextTokenCodec {
+
+	private static final Log LOG = LogFactory
+			.getLog(ProtocolContextTokenCodec.class);
+
+	public static final String HMAC_ALGO = "HmacSHA256";
+
+	/**
+	 * The default maximum token age in milliseconds. About one protocol run.
+	 */
+	public static final long DEFAULT_MAX_AGE = 1000 * 60 * 2;
+
+	private static final int VERSION = 2;
+
+	private static final int ID_SIZE = 16;
+
+	private static final int MAC_SIZE = 32;
+
+	private static final int BOOLEAN_TYPE = 0;
+
+	private static final int STRING_TYPE = 1;
+
+	private static final int BYTES_TYPE = 2;
+
+	private static final int CHALLENGE_TYPE = 3;
+
+	private final SecretKey macKey;
+
+	private final long maxAge;
+
+	/*
+	 * Pre-keyed HMAC engine. Never used directly, only cloned.
+	 */
+	private final Mac macPrototype;
+
+	private final SecureRandom secureRandom;
+
+	private final ReplayCache replayCache;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param secret
+	 *            the hexadecimal encoded MAC secret, shared by all eID Applet
+	 *            Service nodes. Should be at least 128 bit.
+	 * @param maxAge
+	 *            the maximum token age in milliseconds.
+	 */
+	public ProtocolContextTokenCodec(String secret, long maxAge) {
+		if (null == secret) {
+			throw new IllegalArgumentException("secret key is null");
+		}
+		byte[] secretKey;
+		try {
+			secretKey = Hex.decodeHex(secret.trim().toCharArray());
+		} catch (DecoderException e) {
+			LOG.error("secret is not hexadecimal encoded: " + e.getMessage());
+			throw new IllegalArgumentException(
+					"secret is not hexadecimal encoded");
+		}
+		if ((128 / 8) > secretKey.length) {
+			throw new IllegalArgumentException("secret key is too short");
+		}
+		this.macKey = new SecretKeySpec(secretKey, HMAC_ALGO);
+		this.maxAge = maxAge;
+		this.macPrototype = createMac();
+		this.secureRandom = new SecureRandom();
+		this.replayCache = new ReplayCache(maxAge);
+	}
+
+	/**
+	 * Encodes the given protocol context as token.
+	 * 
+	 * @param protocolContext
+	 * @return
+	 */
+	public String encode(DetachedProtocolContext protocolContext) {
+		ByteArrayOutputStream token = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(token);
+		try {
+			out.writeByte(VERSION);
+			out.write(generateId());
+			String protocolRunId = protocolContext.getProtocolRunId();
+			if (null == protocolRunId) {
+				protocolRunId = generateProtocolRunId();
+				protocolContext.setProtocolRunId(protocolRunId);
+			}
+			out.writeUTF(protocolRunId);
+			out.writeLong(System.currentTimeMillis());
+			ProtocolState protocolState = protocolContext.getProtocolState();
+			out.writeUTF(null == protocolState ? "" : protocolState.name());
+			int attributeCount = 0;
+			for (String name : DetachedProtocolContext.PROTOCOL_ATTRIBUTES) {
+				if (null != protocolContext.getAttribute(name)) {
+					attributeCount++;
+				}
+			}
+			out.writeByte(attributeCount);
+			for (int idx = 0; idx < DetachedProtocolContext.PROTOCOL_ATTRIBUTES
+					.size(); idx++) {
+				Object value = protocolContext
+						.getAttribute(DetachedProtocolContext.PROTOCOL_ATTRIBUTES
+								.get(idx));
+				if (null == value) {
+					continue;
+				}
+				out.writeByte(idx);
+				writeValue(value, out);
+			}
+			out.write(mac(token.toByteArray(), token.size()));
+		} catch (IOException e) {
+			throw new RuntimeException("IO error: " + e.getMessage(), e);
+		}
+		return new String(Base64.encodeBase64(token.toByteArray()));
+	}
+
+	/**
+	 * Decodes the given token.
+	 * 
+	 * @param token
+	 *            the token, or <code>null</code> if the eID Applet did not
+	 *            send any.
+	 * @return the protocol context. Without token, an empty protocol context
+	 *         for a new protocol run.
+	 * @throws SecurityException
+	 *             in case the token has been tampered with, has expired, or
+	 *             has already been decoded before.
+	 */
+	public DetachedProtocolContext decode(String token) {
+		DetachedProtocolContext protocolContext = new DetachedProtocolContext();
+		if (null == token) {
+			protocolContext.setProtocolRunId(generateProtocolRunId());
+			return protocolContext;
+		}
+		byte[] data = Base64.decodeBase64(token.getBytes());
+		if (data.length <= MAC_SIZE) {
+			throw new SecurityException("protocol context token too short");
+		}
+		int dataSize = data.length - MAC_SIZE;
+		byte[] expectedMac = mac(data, dataSize);
+		byte[] actualMac = new byte[MAC_SIZE];
+		System.arraycopy(data, dataSize, actualMac, 0, MAC_SIZE);
+		if (false == MessageDigest.isEqual(expectedMac, actualMac)) {
+			throw new SecurityException("protocol context token MAC mismatch");
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				data, 0, dataSize));
+		String tokenId;
+		try {
+			int version = in.readUnsignedByte();
+			if (VERSION != version) {
+				throw new SecurityException(
+						"unsupported protocol context token version: "
+								+ version);
+			}
+			byte[] id = new byte[ID_SIZE];
+			in.readFully(id);
+			tokenId = new String(Hex.encodeHex(id));
+			protocolContext.setProtocolRunId(in.readUTF());
+			long age = System.currentTimeMillis() - in.readLong();
+			if (age > this.maxAge) {
+				throw new SecurityException("protocol context token expired");
+			}
+			String protocolState = in.readUTF();
+			if (false == protocolState.isEmpty()) {
+				protocolContext.setProtocolState(ProtocolState
+						.valueOf(protocolState));
+			}
+			int attributeCount = in.readUnsignedByte();
+			for (int count = 0; count < attributeCount; count++) {
+				String name = DetachedProtocolContext.PROTOCOL_ATTRIBUTES.get(in
+						.readUnsignedByte());
+				protocolContext.setAttribute(name, readValue(in));
+			}
+		} catch (IOException e) {
+			throw new SecurityException("malformed protocol context token");
+		} catch (IndexOutOfBoundsException e) {
+			throw new SecurityException("malformed protocol context token");
+		} catch (IllegalArgumentException e) {
+			throw new SecurityException("malformed protocol context token");
+		}
+		/*
+		 * Only now that the token is known to be valid, so garbage cannot
+		 * fill up the replay cache.
+		 */
+		if (false == this.replayCache.consume(tokenId)) {
+			throw new SecurityException("protocol context token replay");
+		}
+		return protocolContext;
+	}
+
+	private byte[] generateId() {
+		byte[] id = new byte[ID_SIZE];
+		this.secureRandom.nextBytes(id);
+		return id;
+	}
+
+	private String generateProtocolRunId() {
+		return new String(Hex.encodeHex(generateId()));
+	}
+
+	private void writeValue(Object value, DataOutputStream out)
+			throws IOException {
+		if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN_TYPE);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof String) {
+			out.writeByte(STRING_TYPE);
+			out.writeUTF((String) value);
+		} else if (value instanceof byte[]) {
+			byte[] bytes = (byte[]) value;
+			out.writeByte(BYTES_TYPE);
+			out.writeShort(bytes.length);
+			out.write(bytes);
+		} else {
+			out.writeByte(CHALLENGE_TYPE);
+			((AuthenticationChallenge) value).writeTo(out);
+		}
+	}
+
+	private Object readValue(DataInputStream in) throws IOException {
+		int type = in.readUnsignedByte();
+		switch (type) {
+		case BOOLEAN_TYPE:
+			return in.readBoolean();
+		case STRING_TYPE:
+			return in.readUTF();
+		case BYTES_TYPE:
+			byte[] bytes = new byte[in.readUnsignedShort()];
+			in.readFully(bytes);
+			return bytes;
+		case CHALLENGE_TYPE:
+			return AuthenticationChallenge.readFrom(in);
+		default:
+			throw new IOException("unsupported attribute type: " + type);
+		}
+	}
+
+	private byte[] mac(byte[] data, int size) {
+		Mac mac;
+		try {
+			mac = (Mac) this.macPrototype.clone();
+		} catch (CloneNotSupportedException e) {
+			LOG.debug("HMAC engine cannot be cloned");
+			mac = createMac();
+		}
+		mac.update(data, 0, size);
+		return mac.doFinal();
+	}
+
+	private Mac createMac() {
+		Mac mac;
+		try {
+			mac = Mac.getInstance(HMAC_ALGO);
+			mac.init(this.macKey);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("HMAC algo not available: "
+					+ e.getMessage(), e);
+		} catch (InvalidKeyException e) {
+			throw new RuntimeException("invalid secret: " + e.getMessage(), e);
+		}
+		return mac;
+	}
+
+	/**
+	 * Remembers consumed token identifiers within two generations. The
+	 * generations rotate every maximum token age, so an identifier is kept at
+	 * least as long as its token can be valid.
+	 */
+	private static final class ReplayCache {
+
+		private final long period;
+
+		private volatile ConcurrentMap<String, Boolean> currentGeneration;
+
+		private volatile ConcurrentMap<String, Boolean> previousGeneration;
+
+		private volatile long rotationTime;
+
+		ReplayCache(long maxAge) {
+			this.period = Math.max(1, maxAge);
+			this.currentGeneration = new ConcurrentHashMap<String, Boolean>();
+			this.previousGeneration = new ConcurrentHashMap<String, Boolean>();
+			this.rotationTime = System.currentTimeMillis();
+		}
+
+		/**
+		 * Marks the given token identifier as consumed.
+		 * 
+		 * @param tokenId
+		 * @return <code>false</code> if the token identifier was consumed
+		 *         before.
+		 */
+		boolean consume(String tokenId) {
+			long now = System.currentTimeMillis();
+			if (now - this.rotationTime >= this.period) {
+				rotate(now);
+			}
+			/*
+			 * Current generation first, so a concurrent rotation cannot hide
+			 * an identifier from us.
+			 */
+			ConcurrentMap<String, Boolean> currentGeneration = this.currentGeneration;
+			ConcurrentMap<String, Boolean> previousGeneration = this.previousGeneration;
+			if (previousGeneration.containsKey(tokenId)) {
+				return false;
+			}
+			return null == currentGeneration.putIfAbsent(tokenId, Boolean.TRUE);
+		}
+
+		private synchronized void rotate(long now) {
+			if (now - this.rotationTime < this.period) {
+				return;
+			}
+			this.previousGeneration = this.currentGeneration;
+			this.currentGeneration = new ConcurrentHashMap<String, Boolean>();
+			this.rotationTime = now;
+		}
+	}
+}
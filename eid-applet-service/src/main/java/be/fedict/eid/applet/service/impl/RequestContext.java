@@ -24,17 +24,15 @@ import javax.servlet.http.HttpSession;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import be.fedict.eid.applet.shared.protocol.ProtocolState;
-import be.fedict.eid.applet.shared.protocol.ProtocolStateListener;
-
 /**
- * Keeps track of what was requested from the client. Manages its own life-cycle
- * within the scope of a protocol run.
+ * Keeps track of what was requested from the client. The
+ * {@link CleanSessionProtocolStateListener} clears the request context at the
+ * start and at the end of every protocol run.
  * 
  * @author Frank Cornelis
  * 
  */
-public class RequestContext implements ProtocolStateListener {
+public class RequestContext {
 
 	private static final Log LOG = LogFactory.getLog(RequestContext.class);
 
@@ -63,25 +61,18 @@ public class RequestContext implements ProtocolStateListener {
 		this.httpSession = httpSession;
 	}
 
-	public void protocolStateTransition(ProtocolState newProtocolState) {
-	}
-
-	public void startProtocolRun() {
-		clearRequestContext();
-	}
-
-	public void stopProtocolRun() {
-		clearRequestContext();
-	}
-
-	private void clearRequestContext() {
+	/**
+	 * Clears the request context of the given HTTP session.
+	 * 
+	 * @param httpSession
+	 */
+	public static void clearRequestContext(HttpSession httpSession) {
 		LOG.debug("clearing request context");
-		this.httpSession.removeAttribute(INCLUDE_IDENTITY_SESSION_ATTRIBUTE);
-		this.httpSession.removeAttribute(INCLUDE_ADDRESS_SESSION_ATTRIBUTE);
-		this.httpSession.removeAttribute(INCLUDE_PHOTO_SESSION_ATTRIBUTE);
-		this.httpSession
-				.removeAttribute(INCLUDE_CERTIFICATES_SESSION_ATTRIBUTE);
-		this.httpSession.removeAttribute(TRANSACTION_MESSAGE_SESSION_ATTRIBUTE);
+		httpSession.removeAttribute(INCLUDE_IDENTITY_SESSION_ATTRIBUTE);
+		httpSession.removeAttribute(INCLUDE_ADDRESS_SESSION_ATTRIBUTE);
+		httpSession.removeAttribute(INCLUDE_PHOTO_SESSION_ATTRIBUTE);
+		httpSession.removeAttribute(INCLUDE_CERTIFICATES_SESSION_ATTRIBUTE);
+		httpSession.removeAttribute(TRANSACTION_MESSAGE_SESSION_ATTRIBUTE);
 	}
 
 	public void setIncludeIdentity(boolean includeIdentity) {
@@ -29,6 +29,16 @@ import javax.servlet.ServletException;
  * Classname referencing can be useful in environments where you don't have a
  * full-blown Java EE application container available.
  * 
+ * <p>
+ * Per default a service is located on every call, as a JNDI located stateful
+ * session bean or a class that keeps state within its fields cannot be shared
+ * across requests. Stateless services can be cached by setting the
+ * <code>init-param</code> <code>[initParam]Cache</code> to <code>true</code>.
+ * Via the <code>ServiceLocatorCacheTTL</code> <code>init-param</code> the
+ * cached services are located again after the given number of milliseconds.
+ * Optional services that are not configured are never looked up.
+ * </p>
+ * 
  * @author Frank Cornelis
  * 
  * @param <T>
@@ -40,15 +50,63 @@ public class ServiceLocator<T> {
 
 	private final String className;
 
+	private final boolean cache;
+
+	private final long cacheTtl;
+
+	private volatile CachedService<T> cachedService;
+
+	public static final String CACHE_TTL_INIT_PARAM = "ServiceLocatorCacheTTL";
+
 	public ServiceLocator(String initParam, ServletConfig config)
 			throws ServletException {
 		this.jndiLocation = config.getInitParameter(initParam);
 		this.className = config.getInitParameter(initParam + "Class");
+		if (isConfigured()) {
+			this.cache = getCache(config.getInitParameter(initParam + "Cache"));
+			this.cacheTtl = getCacheTtl(config
+					.getInitParameter(CACHE_TTL_INIT_PARAM));
+		} else {
+			this.cache = false;
+			this.cacheTtl = -1;
+		}
 	}
 
 	public ServiceLocator(String initParam, FilterConfig config) {
 		this.jndiLocation = config.getInitParameter(initParam);
 		this.className = config.getInitParameter(initParam + "Class");
+		if (isConfigured()) {
+			this.cache = getCache(config.getInitParameter(initParam + "Cache"));
+			this.cacheTtl = getCacheTtl(config
+					.getInitParameter(CACHE_TTL_INIT_PARAM));
+		} else {
+			this.cache = false;
+			this.cacheTtl = -1;
+		}
+	}
+
+	/**
+	 * Checks whether the corresponding <code>init-param</code> was set. Does
+	 * not locate the service itself.
+	 * 
+	 * @return
+	 */
+	public boolean isConfigured() {
+		return null != this.jndiLocation || null != this.className;
+	}
+
+	private static boolean getCache(String cache) {
+		if (null == cache) {
+			return false;
+		}
+		return Boolean.parseBoolean(cache);
+	}
+
+	private static long getCacheTtl(String cacheTtl) {
+		if (null == cacheTtl) {
+			return -1;
+		}
+		return Long.parseLong(cacheTtl);
 	}
 
 	/**
@@ -58,8 +116,31 @@ public class ServiceLocator<T> {
 	 * @return
 	 * @throws ServletException
 	 */
-	@SuppressWarnings("unchecked")
 	public T locateService() throws ServletException {
+		if (false == isConfigured()) {
+			return null;
+		}
+		if (false == this.cache) {
+			return lookupService();
+		}
+		CachedService<T> cachedService = this.cachedService;
+		if (null != cachedService
+				&& (this.cacheTtl < 0 || cachedService.expiry > System
+						.currentTimeMillis())) {
+			return cachedService.service;
+		}
+		/*
+		 * Concurrent lookups are harmless for stateless services.
+		 */
+		T service = lookupService();
+		this.cachedService = new CachedService<T>(service, System
+				.currentTimeMillis()
+				+ this.cacheTtl);
+		return service;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T lookupService() throws ServletException {
 		try {
 			T service;
 			if (null != this.jndiLocation) {
@@ -83,4 +164,16 @@ public class ServiceLocator<T> {
 			throw new ServletException("error: " + e.getMessage(), e);
 		}
 	}
+
+	private static class CachedService<T> {
+
+		private final T service;
+
+		private final long expiry;
+
+		public CachedService(T service, long expiry) {
+			this.service = service;
+			this.expiry = expiry;
+		}
+	}
 }
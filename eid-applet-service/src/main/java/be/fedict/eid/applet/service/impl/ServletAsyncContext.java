@@ -0,0 +1,236 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.ServletRequest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Wrapper around the Servlet 3.0 asynchronous context. The eID Applet Service
+ * is compiled against the Servlet 2.4 API, so the asynchronous processing
+ * methods are invoked reflectively. On a servlet container that does not
+ * support asynchronous processing, {@link #startAsync(ServletRequest, long)}
+ * simply returns <code>null</code>.
+ * 
+ * <p>
+ * An asynchronous listener, also registered reflectively, marks the context as
+ * aborted when the servlet container signals a timeout or an error. From then
+ * on the container owns the response again, and may even recycle it, so the
+ * asynchronous processing should no longer touch it.
+ * </p>
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class ServletAsyncContext {
+
+	private static final Log LOG = LogFactory
+			.getLog(ServletAsyncContext.class);
+
+	private static final Method IS_ASYNC_SUPPORTED_METHOD;
+
+	private static final Method START_ASYNC_METHOD;
+
+	private static final Method SET_TIMEOUT_METHOD;
+
+	private static final Method COMPLETE_METHOD;
+
+	private static final Method ADD_LISTENER_METHOD;
+
+	private static final Class<?> ASYNC_LISTENER_CLASS;
+
+	static {
+		Method isAsyncSupportedMethod = null;
+		Method startAsyncMethod = null;
+		Method setTimeoutMethod = null;
+		Method completeMethod = null;
+		Method addListenerMethod = null;
+		Class<?> asyncListenerClass = null;
+		try {
+			isAsyncSupportedMethod = ServletRequest.class
+					.getMethod("isAsyncSupported");
+			startAsyncMethod = ServletRequest.class.getMethod("startAsync");
+			Class<?> asyncContextClass = startAsyncMethod.getReturnType();
+			setTimeoutMethod = asyncContextClass.getMethod("setTimeout",
+					Long.TYPE);
+			completeMethod = asyncContextClass.getMethod("complete");
+			asyncListenerClass = Class.forName("javax.servlet.AsyncListener",
+					false, asyncContextClass.getClassLoader());
+			addListenerMethod = asyncContextClass.getMethod("addListener",
+					asyncListenerClass);
+		} catch (NoSuchMethodException e) {
+			LOG.debug("no Servlet 3.0 asynchronous processing available");
+			isAsyncSupportedMethod = null;
+		} catch (ClassNotFoundException e) {
+			LOG.debug("no Servlet 3.0 asynchronous listener available");
+			isAsyncSupportedMethod = null;
+		}
+		IS_ASYNC_SUPPORTED_METHOD = isAsyncSupportedMethod;
+		START_ASYNC_METHOD = startAsyncMethod;
+		SET_TIMEOUT_METHOD = setTimeoutMethod;
+		COMPLETE_METHOD = completeMethod;
+		ADD_LISTENER_METHOD = addListenerMethod;
+		ASYNC_LISTENER_CLASS = asyncListenerClass;
+	}
+
+	private final Object asyncContext;
+
+	private volatile boolean aborted;
+
+	protected ServletAsyncContext(Object asyncContext) {
+		this.asyncContext = asyncContext;
+	}
+
+	/**
+	 * Checks whether the servlet container offers Servlet 3.0 asynchronous
+	 * processing.
+	 * 
+	 * @return
+	 */
+	public static boolean isAvailable() {
+		return null != IS_ASYNC_SUPPORTED_METHOD;
+	}
+
+	/**
+	 * Puts the given request into asynchronous mode.
+	 * 
+	 * @param request
+	 * @param timeout
+	 *            the timeout in milliseconds. A value of zero or less means
+	 *            no timeout.
+	 * @return the asynchronous context, or <code>null</code> if the request
+	 *         does not support asynchronous processing.
+	 */
+	public static ServletAsyncContext startAsync(ServletRequest request,
+			long timeout) {
+		if (false == isAvailable()) {
+			return null;
+		}
+		Boolean asyncSupported = (Boolean) invoke(IS_ASYNC_SUPPORTED_METHOD,
+				request);
+		if (false == asyncSupported) {
+			/*
+			 * Every filter in the chain needs to be marked as async supported
+			 * as well.
+			 */
+			LOG.debug("asynchronous processing not supported for request");
+			return null;
+		}
+		Object asyncContext = invoke(START_ASYNC_METHOD, request);
+		invoke(SET_TIMEOUT_METHOD, asyncContext, timeout);
+		ServletAsyncContext servletAsyncContext = new ServletAsyncContext(
+				asyncContext);
+		Object asyncListener = Proxy.newProxyInstance(ASYNC_LISTENER_CLASS
+				.getClassLoader(), new Class<?>[] { ASYNC_LISTENER_CLASS },
+				new AsyncListenerInvocationHandler(servletAsyncContext));
+		invoke(ADD_LISTENER_METHOD, asyncContext, asyncListener);
+		return servletAsyncContext;
+	}
+
+	/**
+	 * Checks whether the servlet container aborted the asynchronous
+	 * processing, because of a timeout or an error. An aborted response should
+	 * no longer be written, nor completed.
+	 * 
+	 * @return
+	 */
+	public boolean isAborted() {
+		return this.aborted;
+	}
+
+	/**
+	 * Marks the asynchronous processing as aborted.
+	 */
+	void abort() {
+		this.aborted = true;
+	}
+
+	/**
+	 * Completes the asynchronous processing, committing the response.
+	 */
+	public void complete() {
+		invoke(COMPLETE_METHOD, this.asyncContext);
+	}
+
+	/**
+	 * Invocation handler for the reflective <code>AsyncListener</code>.
+	 * 
+	 * @author Frank Cornelis
+	 * 
+	 */
+	static class AsyncListenerInvocationHandler implements InvocationHandler {
+
+		private final ServletAsyncContext servletAsyncContext;
+
+		AsyncListenerInvocationHandler(ServletAsyncContext servletAsyncContext) {
+			this.servletAsyncContext = servletAsyncContext;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			String methodName = method.getName();
+			if ("onTimeout".equals(methodName)) {
+				LOG.warn("asynchronous processing timeout");
+				this.servletAsyncContext.abort();
+				return null;
+			}
+			if ("onError".equals(methodName)) {
+				LOG.warn("asynchronous processing error");
+				this.servletAsyncContext.abort();
+				return null;
+			}
+			if ("equals".equals(methodName)) {
+				return proxy == args[0];
+			}
+			if ("hashCode".equals(methodName)) {
+				return System.identityHashCode(proxy);
+			}
+			if ("toString".equals(methodName)) {
+				return "AsyncListener for " + this.servletAsyncContext;
+			}
+			/*
+			 * onComplete and onStartAsync
+			 */
+			return null;
+		}
+	}
+
+	private static Object invoke(Method method, Object target, Object... args) {
+		try {
+			return method.invoke(target, args);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException("servlet container error: "
+					+ e.getMessage(), e);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException("servlet container error: "
+					+ cause.getMessage(), cause);
+		}
+	}
+}
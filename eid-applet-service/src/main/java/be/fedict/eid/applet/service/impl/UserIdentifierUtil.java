@@ -21,6 +21,8 @@ package be.fedict.eid.applet.service.impl;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
@@ -74,8 +76,18 @@ public class UserIdentifierUtil {
 
 	public static final String HMAC_ALGO = "HmacSHA1";
 
+	public static final String HMAC_SHA256_ALGO = "HmacSHA256";
+
+	private static final int MAX_CACHED_MACS = 16;
+
+	/*
+	 * Pre-keyed HMAC engines per algorithm and secret. These are never used
+	 * directly, only cloned, so they can be shared across threads.
+	 */
+	private static final ConcurrentMap<String, Mac> macs = new ConcurrentHashMap<String, Mac>();
+
 	/**
-	 * Gives back a non-reversible citizen identifier (NRCID).
+	 * Gives back a non-reversible citizen identifier (NRCID), using HMAC-SHA1.
 	 * 
 	 * @param userId
 	 *            the primary user identifier, i.e. the national registry
@@ -91,6 +103,30 @@ public class UserIdentifierUtil {
 	 */
 	public static String getNonReversibleCitizenIdentifier(String userId,
 			String orgId, String appId, String secret) {
+		return getNonReversibleCitizenIdentifier(userId, orgId, appId, secret,
+				HMAC_ALGO);
+	}
+
+	/**
+	 * Gives back a non-reversible citizen identifier (NRCID).
+	 * 
+	 * @param userId
+	 *            the primary user identifier, i.e. the national registry
+	 *            number.
+	 * @param orgId
+	 *            the optional organization identifier.
+	 * @param appId
+	 *            the optional application identifier.
+	 * @param secret
+	 *            the application specific secret. Should be at least 128 bit
+	 *            long. Encoded in hexadecimal format.
+	 * @param hmacAlgo
+	 *            the HMAC algorithm, like {@link #HMAC_ALGO} or
+	 *            {@link #HMAC_SHA256_ALGO}.
+	 * @return
+	 */
+	public static String getNonReversibleCitizenIdentifier(String userId,
+			String orgId, String appId, String secret, String hmacAlgo) {
 		if (null == secret) {
 			throw new IllegalArgumentException("secret key is null");
 		}
@@ -109,6 +145,47 @@ public class UserIdentifierUtil {
 			LOG.warn("it is advised to use an appId");
 		}
 
+		/*
+		 * Construct the HMAC input sequence.
+		 */
+		String input = userId;
+		if (null != appId) {
+			input += appId;
+		}
+		if (null != orgId) {
+			input += orgId;
+		}
+		byte[] inputData = input.getBytes();
+
+		Mac mac = getMac(hmacAlgo, secret);
+		mac.update(inputData);
+		byte[] resultHMac = mac.doFinal();
+		String resultHex = new String(Hex.encodeHex(resultHMac)).toUpperCase();
+		return resultHex;
+	}
+
+	private static Mac getMac(String hmacAlgo, String secret) {
+		String key = hmacAlgo + ":" + secret;
+		Mac keyedMac = macs.get(key);
+		if (null == keyedMac) {
+			keyedMac = createMac(hmacAlgo, secret);
+			if (macs.size() >= MAX_CACHED_MACS) {
+				return keyedMac;
+			}
+			Mac existingKeyedMac = macs.putIfAbsent(key, keyedMac);
+			if (null != existingKeyedMac) {
+				keyedMac = existingKeyedMac;
+			}
+		}
+		try {
+			return (Mac) keyedMac.clone();
+		} catch (CloneNotSupportedException e) {
+			LOG.debug("HMAC engine cannot be cloned: " + hmacAlgo);
+			return createMac(hmacAlgo, secret);
+		}
+	}
+
+	private static Mac createMac(String hmacAlgo, String secret) {
 		/*
 		 * Decode the secret key.
 		 */
@@ -128,19 +205,7 @@ public class UserIdentifierUtil {
 			throw new IllegalArgumentException("secret key is too short");
 		}
 
-		/*
-		 * Construct the HMAC input sequence.
-		 */
-		String input = userId;
-		if (null != appId) {
-			input += appId;
-		}
-		if (null != orgId) {
-			input += orgId;
-		}
-		byte[] inputData = input.getBytes();
-
-		SecretKey macKey = new SecretKeySpec(secretKey, HMAC_ALGO);
+		SecretKey macKey = new SecretKeySpec(secretKey, hmacAlgo);
 		Mac mac;
 		try {
 			mac = Mac.getInstance(macKey.getAlgorithm());
@@ -154,9 +219,6 @@ public class UserIdentifierUtil {
 			LOG.error("invalid secret key: " + e.getMessage(), e);
 			throw new RuntimeException("invalid secret");
 		}
-		mac.update(inputData);
-		byte[] resultHMac = mac.doFinal();
-		String resultHex = new String(Hex.encodeHex(resultHMac)).toUpperCase();
-		return resultHex;
+		return mac;
 	}
 }
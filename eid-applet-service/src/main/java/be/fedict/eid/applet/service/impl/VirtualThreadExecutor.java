@@ -0,0 +1,73 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.service.impl;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Executor that runs every task on a new virtual thread. Virtual threads are
+ * cheap to block, so the eID Applet Service can keep a large number of
+ * messages in flight while the message handlers wait on the SPI components.
+ * 
+ * <p>
+ * Virtual threads are only available on a Java 21 runtime or later. As the
+ * eID Applet Service targets older runtimes, the virtual thread builder is
+ * looked up reflectively. Construction fails with an
+ * {@link IllegalStateException} on older runtimes.
+ * </p>
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class VirtualThreadExecutor implements Executor {
+
+	private static final Log LOG = LogFactory
+			.getLog(VirtualThreadExecutor.class);
+
+	private final ThreadFactory threadFactory;
+
+	public VirtualThreadExecutor() {
+		try {
+			Method ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+			Object builder = ofVirtualMethod.invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Method nameMethod = builderClass.getMethod("name", String.class,
+					Long.TYPE);
+			builder = nameMethod.invoke(builder, "eid-applet-service-virtual-",
+					0L);
+			Method factoryMethod = builderClass.getMethod("factory");
+			this.threadFactory = (ThreadFactory) factoryMethod.invoke(builder);
+		} catch (Exception e) {
+			throw new IllegalStateException(
+					"virtual threads not supported by Java runtime: "
+							+ e.getMessage(), e);
+		}
+		LOG.debug("virtual thread executor");
+	}
+
+	public void execute(Runnable command) {
+		Thread thread = this.threadFactory.newThread(command);
+		thread.start();
+	}
+}
@@ -58,6 +58,8 @@ import be.fedict.eid.applet.service.EIdData;
 import be.fedict.eid.applet.service.Identity;
 import be.fedict.eid.applet.service.impl.AuthenticationChallenge;
 import be.fedict.eid.applet.service.impl.AuthenticationSignatureContextImpl;
+import be.fedict.eid.applet.service.impl.CertificateChainValidationCache;
+import be.fedict.eid.applet.service.impl.CryptoEnginePool;
 import be.fedict.eid.applet.service.impl.RequestContext;
 import be.fedict.eid.applet.service.impl.ServiceLocator;
 import be.fedict.eid.applet.service.impl.UserIdentifierUtil;
@@ -67,6 +69,7 @@ import be.fedict.eid.applet.service.spi.AuthenticationService;
 import be.fedict.eid.applet.service.spi.AuthenticationSignatureContext;
 import be.fedict.eid.applet.service.spi.AuthenticationSignatureService;
 import be.fedict.eid.applet.service.spi.CertificateSecurityException;
+import be.fedict.eid.applet.service.spi.ChallengeStore;
 import be.fedict.eid.applet.service.spi.ChannelBindingService;
 import be.fedict.eid.applet.service.spi.ExpiredCertificateSecurityException;
 import be.fedict.eid.applet.service.spi.IdentityIntegrityService;
@@ -127,12 +130,18 @@ public class AuthenticationDataMessageHandler implements
 
 	public static final String CHALLENGE_MAX_MATURITY_INIT_PARAM_NAME = "ChallengeMaxMaturity";
 
+	public static final String CHALLENGE_STORE_INIT_PARAM_NAME = "ChallengeStore";
+
+	public static final String CERTIFICATE_VALIDATION_CACHE_TTL_INIT_PARAM_NAME = "CertificateValidationCacheTTL";
+
 	public static final String NRCID_SECRET_INIT_PARAM_NAME = "NRCIDSecret";
 
 	public static final String NRCID_ORG_ID_INIT_PARAM_NAME = "NRCIDOrgId";
 
 	public static final String NRCID_APP_ID_INIT_PARAM_NAME = "NRCIDAppId";
 
+	public static final String NRCID_HMAC_ALGO_INIT_PARAM_NAME = "NRCIDHmacAlgorithm";
+
 	@InitParam(NRCID_SECRET_INIT_PARAM_NAME)
 	private String nrcidSecret;
 
@@ -142,6 +151,9 @@ public class AuthenticationDataMessageHandler implements
 	@InitParam(NRCID_APP_ID_INIT_PARAM_NAME)
 	private String nrcidAppId;
 
+	@InitParam(NRCID_HMAC_ALGO_INIT_PARAM_NAME)
+	private String nrcidHmacAlgo;
+
 	@InitParam(HelloMessageHandler.IDENTITY_INTEGRITY_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<IdentityIntegrityService> identityIntegrityServiceLocator;
 
@@ -151,6 +163,16 @@ public class AuthenticationDataMessageHandler implements
 	@InitParam(AUTHN_SIGNATURE_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<AuthenticationSignatureService> authenticationSignatureServiceLocator;
 
+	@InitParam(CHALLENGE_STORE_INIT_PARAM_NAME)
+	private ServiceLocator<ChallengeStore> challengeStoreLocator;
+
+	@InitParam(CERTIFICATE_VALIDATION_CACHE_TTL_INIT_PARAM_NAME)
+	private Long certificateValidationCacheTtl;
+
+	private CertificateChainValidationCache authnCertificateChainCache;
+
+	private CertificateChainValidationCache rrnCertificateChainCache;
+
 	public Object handleMessage(AuthenticationDataMessage message,
 			Map<String, String> httpHeaders, HttpServletRequest request,
 			HttpSession session) throws ServletException {
@@ -192,7 +214,8 @@ public class AuthenticationDataMessageHandler implements
 		byte[] challenge;
 		try {
 			challenge = AuthenticationChallenge.getAuthnChallenge(session,
-					this.maxMaturity);
+					this.maxMaturity, this.challengeStoreLocator
+							.locateService());
 		} catch (SecurityException e) {
 			AuditService auditService = this.auditServiceLocator
 					.locateService();
@@ -222,18 +245,16 @@ public class AuthenticationDataMessageHandler implements
 		AuthenticationContract authenticationContract = new AuthenticationContract(
 				message.saltValue, this.hostname, this.inetAddress,
 				message.sessionId, serverCertificateClientPOV, challenge);
-		byte[] toBeSigned;
 		try {
-			toBeSigned = authenticationContract.calculateToBeSigned();
-		} catch (IOException e) {
-			throw new ServletException("IO error: " + e.getMessage(), e);
-		}
-
-		try {
-			Signature signature = Signature.getInstance("SHA1withRSA");
-			signature.initVerify(signingKey);
-			signature.update(toBeSigned);
-			boolean result = signature.verify(signatureValue);
+			Signature signature = CryptoEnginePool.getSignature("SHA1withRSA");
+			boolean result;
+			try {
+				signature.initVerify(signingKey);
+				authenticationContract.update(signature);
+				result = signature.verify(signatureValue);
+			} finally {
+				CryptoEnginePool.releaseSignature(signature, "SHA1withRSA");
+			}
 			if (false == result) {
 				AuditService auditService = this.auditServiceLocator
 						.locateService();
@@ -262,10 +283,17 @@ public class AuthenticationDataMessageHandler implements
 						"missing TransactionMessage signature");
 			}
 			try {
-				Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
-				cipher.init(Cipher.DECRYPT_MODE, signingKey);
-				byte[] signatureDigestInfoValue = cipher
-						.doFinal(transactionMessageSignature);
+				Cipher cipher = CryptoEnginePool
+						.getCipher("RSA/ECB/PKCS1Padding");
+				byte[] signatureDigestInfoValue;
+				try {
+					cipher.init(Cipher.DECRYPT_MODE, signingKey);
+					signatureDigestInfoValue = cipher
+							.doFinal(transactionMessageSignature);
+				} finally {
+					CryptoEnginePool.releaseCipher(cipher,
+							"RSA/ECB/PKCS1Padding");
+				}
 				ASN1InputStream aIn = new ASN1InputStream(
 						signatureDigestInfoValue);
 				DigestInfo signatureDigestInfo = new DigestInfo(
@@ -345,7 +373,12 @@ public class AuthenticationDataMessageHandler implements
 		certificateChain.add(message.citizenCaCert);
 		certificateChain.add(message.rootCaCert);
 		try {
-			authenticationService.validateCertificateChain(certificateChain);
+			if (false == this.authnCertificateChainCache
+					.isValid(certificateChain)) {
+				authenticationService
+						.validateCertificateChain(certificateChain);
+				this.authnCertificateChainCache.setValid(certificateChain);
+			}
 		} catch (ExpiredCertificateSecurityException e) {
 			return new FinishedMessage(ErrorCode.CERTIFICATE_EXPIRED);
 		} catch (RevokedCertificateSecurityException e) {
@@ -394,7 +427,8 @@ public class AuthenticationDataMessageHandler implements
 		LOG.info("authenticated: " + userId + " @ " + request.getRemoteAddr());
 		if (null != this.nrcidSecret) {
 			userId = UserIdentifierUtil.getNonReversibleCitizenIdentifier(
-					userId, this.nrcidOrgId, this.nrcidAppId, this.nrcidSecret);
+					userId, this.nrcidOrgId, this.nrcidAppId, this.nrcidSecret,
+					this.nrcidHmacAlgo);
 		}
 		/*
 		 * Some people state that you cannot use the national register number
@@ -462,8 +496,12 @@ public class AuthenticationDataMessageHandler implements
 			rrnCertificateChain.add(message.rootCaCert);
 
 			try {
-				identityIntegrityService
-						.checkNationalRegistrationCertificate(rrnCertificateChain);
+				if (false == this.rrnCertificateChainCache
+						.isValid(rrnCertificateChain)) {
+					identityIntegrityService
+							.checkNationalRegistrationCertificate(rrnCertificateChain);
+					this.rrnCertificateChainCache.setValid(rrnCertificateChain);
+				}
 			} catch (ExpiredCertificateSecurityException e) {
 				return new FinishedMessage(ErrorCode.CERTIFICATE_EXPIRED);
 			} catch (RevokedCertificateSecurityException e) {
@@ -646,11 +684,12 @@ public class AuthenticationDataMessageHandler implements
 	private byte[] digestPhoto(String digestAlgoName, byte[] photoFile) {
 		MessageDigest messageDigest;
 		try {
-			messageDigest = MessageDigest.getInstance(digestAlgoName);
+			messageDigest = CryptoEnginePool.getMessageDigest(digestAlgoName);
 		} catch (NoSuchAlgorithmException e) {
 			throw new RuntimeException("SHA error: " + e.getMessage(), e);
 		}
 		byte[] photoDigest = messageDigest.digest(photoFile);
+		CryptoEnginePool.releaseMessageDigest(messageDigest, digestAlgoName);
 		return photoDigest;
 	}
 
@@ -677,31 +716,32 @@ public class AuthenticationDataMessageHandler implements
 			throws ServletException {
 		Signature signature;
 		try {
-			signature = Signature.getInstance(signatureAlgo);
+			signature = CryptoEnginePool.getSignature(signatureAlgo);
 		} catch (NoSuchAlgorithmException e) {
 			throw new ServletException("algo error: " + e.getMessage(), e);
 		}
+		boolean result;
 		try {
 			signature.initVerify(publicKey);
-		} catch (InvalidKeyException e) {
-			throw new ServletException("key error: " + e.getMessage(), e);
-		}
-		try {
 			for (byte[] dataItem : data) {
 				signature.update(dataItem);
 			}
-			boolean result = signature.verify(signatureData);
-			if (false == result) {
-				AuditService auditService = this.auditServiceLocator
-						.locateService();
-				if (null != auditService) {
-					String remoteAddress = request.getRemoteAddr();
-					auditService.identityIntegrityError(remoteAddress);
-				}
-				throw new ServletException("signature incorrect");
-			}
+			result = signature.verify(signatureData);
+		} catch (InvalidKeyException e) {
+			throw new ServletException("key error: " + e.getMessage(), e);
 		} catch (SignatureException e) {
 			throw new ServletException("signature error: " + e.getMessage(), e);
+		} finally {
+			CryptoEnginePool.releaseSignature(signature, signatureAlgo);
+		}
+		if (false == result) {
+			AuditService auditService = this.auditServiceLocator
+					.locateService();
+			if (null != auditService) {
+				String remoteAddress = request.getRemoteAddr();
+				auditService.identityIntegrityError(remoteAddress);
+			}
+			throw new ServletException("signature incorrect");
 		}
 	}
 
@@ -736,6 +776,14 @@ public class AuthenticationDataMessageHandler implements
 	}
 
 	public void init(ServletConfig config) throws ServletException {
+		if (null == this.nrcidHmacAlgo) {
+			this.nrcidHmacAlgo = UserIdentifierUtil.HMAC_ALGO;
+		}
+		this.authnCertificateChainCache = new CertificateChainValidationCache(
+				this.certificateValidationCacheTtl);
+		this.rrnCertificateChainCache = new CertificateChainValidationCache(
+				this.certificateValidationCacheTtl);
+
 		String channelBindingServerCertificate = config
 				.getInitParameter(HelloMessageHandler.CHANNEL_BINDING_SERVER_CERTIFICATE);
 		if (null != channelBindingServerCertificate) {
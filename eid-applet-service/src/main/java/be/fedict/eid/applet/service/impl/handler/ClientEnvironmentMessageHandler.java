@@ -36,6 +36,7 @@ import be.fedict.eid.applet.service.impl.RequestContext;
 import be.fedict.eid.applet.service.impl.ServiceLocator;
 import be.fedict.eid.applet.service.spi.AuthenticationService;
 import be.fedict.eid.applet.service.spi.AuthorizationException;
+import be.fedict.eid.applet.service.spi.ChallengeStore;
 import be.fedict.eid.applet.service.spi.DigestInfo;
 import be.fedict.eid.applet.service.spi.IdentityIntegrityService;
 import be.fedict.eid.applet.service.spi.IdentityRequest;
@@ -87,6 +88,9 @@ public class ClientEnvironmentMessageHandler implements
 	@InitParam(AuthenticationDataMessageHandler.AUTHN_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<AuthenticationService> authenticationServiceLocator;
 
+	@InitParam(AuthenticationDataMessageHandler.CHALLENGE_STORE_INIT_PARAM_NAME)
+	private ServiceLocator<ChallengeStore> challengeStoreLocator;
+
 	@InitParam(HelloMessageHandler.PRIVACY_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<PrivacyService> privacyServiceLocator;
 
@@ -239,7 +243,8 @@ public class ClientEnvironmentMessageHandler implements
 				.locateService();
 		if (null != authenticationService) {
 			byte[] challenge = AuthenticationChallenge
-					.generateChallenge(session);
+					.generateChallenge(session,
+							this.challengeStoreLocator.locateService());
 			IdentityIntegrityService identityIntegrityService = this.identityIntegrityServiceLocator
 					.locateService();
 			boolean includeIntegrityData = null != identityIntegrityService;
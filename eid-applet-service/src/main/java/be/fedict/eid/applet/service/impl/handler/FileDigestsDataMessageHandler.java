@@ -35,6 +35,7 @@ import org.apache.commons.codec.binary.Hex;
 
 import be.fedict.eid.applet.service.impl.ServiceLocator;
 import be.fedict.eid.applet.service.spi.AuthorizationException;
+import be.fedict.eid.applet.service.spi.DigestAlgorithm;
 import be.fedict.eid.applet.service.spi.DigestInfo;
 import be.fedict.eid.applet.service.spi.IdentityRequest;
 import be.fedict.eid.applet.service.spi.IdentityService;
@@ -87,6 +88,13 @@ public class FileDigestsDataMessageHandler implements
 				throw new ServletException("digest value decode error: "
 						+ e.getMessage(), e);
 			}
+			DigestAlgorithm digestAlgorithm = DigestAlgorithm
+					.forName(digestAlgo);
+			if (null != digestAlgorithm
+					&& digestAlgorithm.getDigestLength() != digestValue.length) {
+				throw new ServletException("incorrect " + digestAlgo
+						+ " digest value length: " + digestValue.length);
+			}
 			fileDigestInfos.add(new DigestInfo(digestValue, digestAlgo,
 					description));
 		}
@@ -35,6 +35,7 @@ import be.fedict.eid.applet.service.impl.RequestContext;
 import be.fedict.eid.applet.service.impl.ServiceLocator;
 import be.fedict.eid.applet.service.spi.AuthenticationService;
 import be.fedict.eid.applet.service.spi.AuthorizationException;
+import be.fedict.eid.applet.service.spi.ChallengeStore;
 import be.fedict.eid.applet.service.spi.DigestInfo;
 import be.fedict.eid.applet.service.spi.IdentityIntegrityService;
 import be.fedict.eid.applet.service.spi.IdentityRequest;
@@ -155,6 +156,9 @@ public class HelloMessageHandler implements MessageHandler<HelloMessage> {
 	@InitParam(AuthenticationDataMessageHandler.AUTHN_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<AuthenticationService> authenticationServiceLocator;
 
+	@InitParam(AuthenticationDataMessageHandler.CHALLENGE_STORE_INIT_PARAM_NAME)
+	private ServiceLocator<ChallengeStore> challengeStoreLocator;
+
 	@InitParam(SIGNATURE_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<SignatureService> signatureServiceLocator;
 
@@ -167,6 +171,18 @@ public class HelloMessageHandler implements MessageHandler<HelloMessage> {
 	@InitParam(SECURE_CARD_READER_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<SecureCardReaderService> secureCardReaderServiceLocator;
 
+	/**
+	 * The kind of response to a hello message. Only depends on the
+	 * configuration, so it is determined once at init.
+	 */
+	private enum HelloResponse {
+		CHECK_CLIENT, ADMINISTRATION, SIGN, AUTHENTICATE, IDENTIFY
+	}
+
+	private HelloResponse helloResponse;
+
+	private boolean includeIntegrityData;
+
 	public Object handleMessage(HelloMessage message,
 			Map<String, String> httpHeaders, HttpServletRequest request,
 			HttpSession session) throws ServletException {
@@ -174,157 +190,156 @@ public class HelloMessageHandler implements MessageHandler<HelloMessage> {
 
 		storeClientLanguage(message.language, session);
 
-		SecureClientEnvironmentService secureClientEnvService = this.secureClientEnvServiceLocator
-				.locateService();
-		if (null != secureClientEnvService) {
+		switch (this.helloResponse) {
+		case CHECK_CLIENT:
 			CheckClientMessage checkClientMessage = new CheckClientMessage();
 			return checkClientMessage;
-		}
-		if (this.changePin || this.unblockPin) {
+		case ADMINISTRATION:
 			AdministrationMessage administrationMessage = new AdministrationMessage(
 					this.changePin, this.unblockPin, this.logoff,
 					this.removeCard, this.requireSecureReader);
 			return administrationMessage;
+		case SIGN:
+			return handleSign(session);
+		case AUTHENTICATE:
+			return handleAuthentication(session);
+		default:
+			return handleIdentification(message, session);
 		}
+	}
+
+	private Object handleSign(HttpSession session) throws ServletException {
 		SignatureService signatureService = this.signatureServiceLocator
 				.locateService();
-		if (null != signatureService) {
-			String filesDigestAlgo = signatureService.getFilesDigestAlgorithm();
-			if (null != filesDigestAlgo) {
-				LOG.debug("files digest algo: " + filesDigestAlgo);
-				FilesDigestRequestMessage filesDigestRequestMessage = new FilesDigestRequestMessage();
-				filesDigestRequestMessage.digestAlgo = filesDigestAlgo;
-				return filesDigestRequestMessage;
-			}
-			if (true == this.includeCertificates) {
-				LOG.debug("include signing certificate chain during pre-sign");
-				IdentityIntegrityService identityIntegrityService = this.identityIntegrityServiceLocator
-						.locateService();
-				boolean includeIntegrityData = null != identityIntegrityService;
-				IdentityService identityService = this.identityServiceLocator
-						.locateService();
-				boolean includeIdentity;
-				boolean includeAddress;
-				boolean includePhoto;
-				if (null != identityService) {
-					IdentityRequest identityRequest = identityService
-							.getIdentityRequest();
-					includeIdentity = identityRequest.includeIdentity();
-					includeAddress = identityRequest.includeAddress();
-					includePhoto = identityRequest.includePhoto();
-				} else {
-					includeIdentity = this.includeIdentity;
-					includeAddress = this.includeAddress;
-					includePhoto = this.includePhoto;
-				}
-				RequestContext requestContext = new RequestContext(session);
-				requestContext.setIncludeIdentity(includeIdentity);
-				requestContext.setIncludeAddress(includeAddress);
-				requestContext.setIncludePhoto(includePhoto);
-				SignCertificatesRequestMessage signCertificatesRequestMessage = new SignCertificatesRequestMessage(
-						includeIdentity, includeAddress, includePhoto,
-						includeIntegrityData);
-				return signCertificatesRequestMessage;
-			}
-
-			DigestInfo digestInfo;
-			try {
-				digestInfo = signatureService.preSign(null, null, null, null,
-						null);
-			} catch (NoSuchAlgorithmException e) {
-				throw new ServletException("no such algo: " + e.getMessage(), e);
-			} catch (AuthorizationException e) {
-				return new FinishedMessage(ErrorCode.AUTHORIZATION);
-			}
-
-			// also save it in the session for later verification
-			SignatureDataMessageHandler.setDigestValue(digestInfo.digestValue,
-					digestInfo.digestAlgo, session);
-
-			IdentityService identityService = this.identityServiceLocator
-					.locateService();
-			boolean removeCard;
-			if (null != identityService) {
-				IdentityRequest identityRequest = identityService
-						.getIdentityRequest();
-				removeCard = identityRequest.removeCard();
-			} else {
-				removeCard = this.removeCard;
-			}
-
-			SignRequestMessage signRequestMessage = new SignRequestMessage(
-					digestInfo.digestValue, digestInfo.digestAlgo,
-					digestInfo.description, this.logoff, removeCard,
-					this.requireSecureReader);
-			return signRequestMessage;
+		String filesDigestAlgo = signatureService.getFilesDigestAlgorithm();
+		if (null != filesDigestAlgo) {
+			LOG.debug("files digest algo: " + filesDigestAlgo);
+			FilesDigestRequestMessage filesDigestRequestMessage = new FilesDigestRequestMessage();
+			filesDigestRequestMessage.digestAlgo = filesDigestAlgo;
+			return filesDigestRequestMessage;
 		}
-		AuthenticationService authenticationService = this.authenticationServiceLocator
-				.locateService();
-		if (null != authenticationService) {
-			byte[] challenge = AuthenticationChallenge
-					.generateChallenge(session);
-			IdentityIntegrityService identityIntegrityService = this.identityIntegrityServiceLocator
+		if (true == this.includeCertificates) {
+			LOG.debug("include signing certificate chain during pre-sign");
+			IdentityService identityService = this.identityServiceLocator
 					.locateService();
-			boolean includeIntegrityData = null != identityIntegrityService;
 			boolean includeIdentity;
 			boolean includeAddress;
 			boolean includePhoto;
-			boolean includeCertificates;
-			boolean removeCard;
-			IdentityService identityService = this.identityServiceLocator
-					.locateService();
 			if (null != identityService) {
 				IdentityRequest identityRequest = identityService
 						.getIdentityRequest();
 				includeIdentity = identityRequest.includeIdentity();
 				includeAddress = identityRequest.includeAddress();
 				includePhoto = identityRequest.includePhoto();
-				includeCertificates = identityRequest.includeCertificates();
-				removeCard = identityRequest.removeCard();
 			} else {
 				includeIdentity = this.includeIdentity;
 				includeAddress = this.includeAddress;
 				includePhoto = this.includePhoto;
-				includeCertificates = this.includeCertificates;
-				removeCard = this.removeCard;
 			}
 			RequestContext requestContext = new RequestContext(session);
 			requestContext.setIncludeIdentity(includeIdentity);
 			requestContext.setIncludeAddress(includeAddress);
 			requestContext.setIncludePhoto(includePhoto);
-			requestContext.setIncludeCertificates(includeCertificates);
+			SignCertificatesRequestMessage signCertificatesRequestMessage = new SignCertificatesRequestMessage(
+					includeIdentity, includeAddress, includePhoto,
+					this.includeIntegrityData);
+			return signCertificatesRequestMessage;
+		}
 
-			String transactionMessage = null;
-			SecureCardReaderService secureCardReaderService = this.secureCardReaderServiceLocator
-					.locateService();
-			if (null != secureCardReaderService) {
-				transactionMessage = secureCardReaderService
-						.getTransactionMessage();
-				if (null != transactionMessage
-						&& transactionMessage.length() > SecureCardReaderService.TRANSACTION_MESSAGE_MAX_SIZE) {
-					transactionMessage = transactionMessage
-							.substring(
-									0,
-									SecureCardReaderService.TRANSACTION_MESSAGE_MAX_SIZE);
-				}
-				LOG.debug("transaction message: " + transactionMessage);
-			}
-			requestContext.setTransactionMessage(transactionMessage);
-
-			AuthenticationRequestMessage authenticationRequestMessage = new AuthenticationRequestMessage(
-					challenge, this.includeHostname, this.includeInetAddress,
-					this.logoff, this.preLogoff, removeCard,
-					this.sessionIdChannelBinding,
-					this.serverCertificateChannelBinding, includeIdentity,
-					includeCertificates, includeAddress, includePhoto,
-					includeIntegrityData, this.requireSecureReader,
-					transactionMessage);
-			return authenticationRequestMessage;
+		DigestInfo digestInfo;
+		try {
+			digestInfo = signatureService.preSign(null, null, null, null,
+					null);
+		} catch (NoSuchAlgorithmException e) {
+			throw new ServletException("no such algo: " + e.getMessage(), e);
+		} catch (AuthorizationException e) {
+			return new FinishedMessage(ErrorCode.AUTHORIZATION);
+		}
+
+		// also save it in the session for later verification
+		SignatureDataMessageHandler.setDigestValue(digestInfo.digestValue,
+				digestInfo.digestAlgo, session);
+
+		IdentityService identityService = this.identityServiceLocator
+				.locateService();
+		boolean removeCard;
+		if (null != identityService) {
+			IdentityRequest identityRequest = identityService
+					.getIdentityRequest();
+			removeCard = identityRequest.removeCard();
+		} else {
+			removeCard = this.removeCard;
+		}
+
+		SignRequestMessage signRequestMessage = new SignRequestMessage(
+				digestInfo.digestValue, digestInfo.digestAlgo,
+				digestInfo.description, this.logoff, removeCard,
+				this.requireSecureReader);
+		return signRequestMessage;
+	}
+
+	private Object handleAuthentication(HttpSession session)
+			throws ServletException {
+		byte[] challenge = AuthenticationChallenge.generateChallenge(session,
+				this.challengeStoreLocator.locateService());
+		boolean includeIdentity;
+		boolean includeAddress;
+		boolean includePhoto;
+		boolean includeCertificates;
+		boolean removeCard;
+		IdentityService identityService = this.identityServiceLocator
+				.locateService();
+		if (null != identityService) {
+			IdentityRequest identityRequest = identityService
+					.getIdentityRequest();
+			includeIdentity = identityRequest.includeIdentity();
+			includeAddress = identityRequest.includeAddress();
+			includePhoto = identityRequest.includePhoto();
+			includeCertificates = identityRequest.includeCertificates();
+			removeCard = identityRequest.removeCard();
+		} else {
+			includeIdentity = this.includeIdentity;
+			includeAddress = this.includeAddress;
+			includePhoto = this.includePhoto;
+			includeCertificates = this.includeCertificates;
+			removeCard = this.removeCard;
 		}
+		RequestContext requestContext = new RequestContext(session);
+		requestContext.setIncludeIdentity(includeIdentity);
+		requestContext.setIncludeAddress(includeAddress);
+		requestContext.setIncludePhoto(includePhoto);
+		requestContext.setIncludeCertificates(includeCertificates);
 
-		IdentityIntegrityService identityIntegrityService = this.identityIntegrityServiceLocator
+		String transactionMessage = null;
+		SecureCardReaderService secureCardReaderService = this.secureCardReaderServiceLocator
 				.locateService();
-		boolean includeIntegrityData = null != identityIntegrityService;
+		if (null != secureCardReaderService) {
+			transactionMessage = secureCardReaderService
+					.getTransactionMessage();
+			if (null != transactionMessage
+					&& transactionMessage.length() > SecureCardReaderService.TRANSACTION_MESSAGE_MAX_SIZE) {
+				transactionMessage = transactionMessage
+						.substring(
+								0,
+								SecureCardReaderService.TRANSACTION_MESSAGE_MAX_SIZE);
+			}
+			LOG.debug("transaction message: " + transactionMessage);
+		}
+		requestContext.setTransactionMessage(transactionMessage);
+
+		AuthenticationRequestMessage authenticationRequestMessage = new AuthenticationRequestMessage(
+				challenge, this.includeHostname, this.includeInetAddress,
+				this.logoff, this.preLogoff, removeCard,
+				this.sessionIdChannelBinding,
+				this.serverCertificateChannelBinding, includeIdentity,
+				includeCertificates, includeAddress, includePhoto,
+				this.includeIntegrityData, this.requireSecureReader,
+				transactionMessage);
+		return authenticationRequestMessage;
+	}
+
+	private Object handleIdentification(HelloMessage message,
+			HttpSession session) throws ServletException {
 		PrivacyService privacyService = this.privacyServiceLocator
 				.locateService();
 		String identityDataUsage;
@@ -358,12 +373,12 @@ public class HelloMessageHandler implements MessageHandler<HelloMessage> {
 		requestContext.setIncludePhoto(includePhoto);
 		requestContext.setIncludeCertificates(includeCertificates);
 		IdentificationRequestMessage responseMessage = new IdentificationRequestMessage(
-				includeAddress, includePhoto, includeIntegrityData,
+				includeAddress, includePhoto, this.includeIntegrityData,
 				includeCertificates, removeCard, identityDataUsage);
 		return responseMessage;
 	}
 
-	private static final String CLIENT_LANGUAGE_SESSION_ATTRIBUTE = HelloMessageHandler.class
+	public static final String CLIENT_LANGUAGE_SESSION_ATTRIBUTE = HelloMessageHandler.class
 			.getName() + ".clientLanguage";
 
 	private void storeClientLanguage(String language, HttpSession httpSession) {
@@ -399,5 +414,21 @@ public class HelloMessageHandler implements MessageHandler<HelloMessage> {
 		if (null != channelBindingService) {
 			this.serverCertificateChannelBinding = true;
 		}
+
+		this.includeIntegrityData = this.identityIntegrityServiceLocator
+				.isConfigured();
+
+		if (this.secureClientEnvServiceLocator.isConfigured()) {
+			this.helloResponse = HelloResponse.CHECK_CLIENT;
+		} else if (this.changePin || this.unblockPin) {
+			this.helloResponse = HelloResponse.ADMINISTRATION;
+		} else if (this.signatureServiceLocator.isConfigured()) {
+			this.helloResponse = HelloResponse.SIGN;
+		} else if (this.authenticationServiceLocator.isConfigured()) {
+			this.helloResponse = HelloResponse.AUTHENTICATE;
+		} else {
+			this.helloResponse = HelloResponse.IDENTIFY;
+		}
+		LOG.debug("hello response: " + this.helloResponse);
 	}
 }
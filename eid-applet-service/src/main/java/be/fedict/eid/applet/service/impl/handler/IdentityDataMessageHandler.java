@@ -19,7 +19,6 @@
 
 package be.fedict.eid.applet.service.impl.handler;
 
-import java.io.ByteArrayInputStream;
 import java.lang.reflect.Method;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
@@ -28,7 +27,6 @@ import java.security.PublicKey;
 import java.security.Signature;
 import java.security.SignatureException;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Date;
@@ -50,6 +48,8 @@ import be.fedict.eid.applet.service.Address;
 import be.fedict.eid.applet.service.EIdCertsData;
 import be.fedict.eid.applet.service.EIdData;
 import be.fedict.eid.applet.service.Identity;
+import be.fedict.eid.applet.service.impl.CertificateChainValidationCache;
+import be.fedict.eid.applet.service.impl.CryptoEnginePool;
 import be.fedict.eid.applet.service.impl.RequestContext;
 import be.fedict.eid.applet.service.impl.ServiceLocator;
 import be.fedict.eid.applet.service.impl.tlv.TlvParser;
@@ -59,6 +59,7 @@ import be.fedict.eid.applet.service.spi.ExpiredCertificateSecurityException;
 import be.fedict.eid.applet.service.spi.IdentityIntegrityService;
 import be.fedict.eid.applet.service.spi.RevokedCertificateSecurityException;
 import be.fedict.eid.applet.service.spi.TrustCertificateSecurityException;
+import be.fedict.eid.applet.shared.CertificateParser;
 import be.fedict.eid.applet.shared.ErrorCode;
 import be.fedict.eid.applet.shared.FinishedMessage;
 import be.fedict.eid.applet.shared.IdentityDataMessage;
@@ -119,6 +120,11 @@ public class IdentityDataMessageHandler implements
 	@InitParam(INCLUDE_DATA_FILES)
 	private boolean includeDataFiles;
 
+	@InitParam(AuthenticationDataMessageHandler.CERTIFICATE_VALIDATION_CACHE_TTL_INIT_PARAM_NAME)
+	private Long certificateValidationCacheTtl;
+
+	private CertificateChainValidationCache rrnCertificateChainCache;
+
 	public Object handleMessage(IdentityDataMessage message,
 			Map<String, String> httpHeaders, HttpServletRequest request,
 			HttpSession session) throws ServletException {
@@ -176,10 +182,10 @@ public class IdentityDataMessageHandler implements
 				throw new ServletException(
 						"root cert not included while requested");
 			}
-			authnCert = getCertificate(message.authnCertFile);
-			signCert = getCertificate(message.signCertFile);
-			caCert = getCertificate(message.caCertFile);
-			rootCert = getCertificate(message.rootCertFile);
+			authnCert = getCertificate(message.authnCertFile, false);
+			signCert = getCertificate(message.signCertFile, false);
+			caCert = getCertificate(message.caCertFile, true);
+			rootCert = getCertificate(message.rootCertFile, true);
 		}
 
 		IdentityIntegrityService identityIntegrityService = this.identityIntegrityServiceLocator
@@ -211,7 +217,8 @@ public class IdentityDataMessageHandler implements
 			/*
 			 * Run identity integrity checks.
 			 */
-			X509Certificate rrnCertificate = getCertificate(message.rrnCertFile);
+			X509Certificate rrnCertificate = getCertificate(
+					message.rrnCertFile, true);
 			PublicKey rrnPublicKey = rrnCertificate.getPublicKey();
 			verifySignature(rrnCertificate.getSigAlgName(),
 					message.identitySignatureFile, rrnPublicKey, request,
@@ -233,13 +240,18 @@ public class IdentityDataMessageHandler implements
 			}
 			LOG.debug("checking national registration certificate: "
 					+ rrnCertificate.getSubjectX500Principal());
-			X509Certificate rootCertificate = getCertificate(message.rootCertFile);
+			X509Certificate rootCertificate = getCertificate(
+					message.rootCertFile, true);
 			List<X509Certificate> rrnCertificateChain = new LinkedList<X509Certificate>();
 			rrnCertificateChain.add(rrnCertificate);
 			rrnCertificateChain.add(rootCertificate);
 			try {
-				identityIntegrityService
-						.checkNationalRegistrationCertificate(rrnCertificateChain);
+				if (false == this.rrnCertificateChainCache
+						.isValid(rrnCertificateChain)) {
+					identityIntegrityService
+							.checkNationalRegistrationCertificate(rrnCertificateChain);
+					this.rrnCertificateChainCache.setValid(rrnCertificateChain);
+				}
 			} catch (ExpiredCertificateSecurityException e) {
 				return new FinishedMessage(ErrorCode.CERTIFICATE_EXPIRED);
 			} catch (RevokedCertificateSecurityException e) {
@@ -393,29 +405,19 @@ public class IdentityDataMessageHandler implements
 			throws ServletException {
 		Signature signature;
 		try {
-			signature = Signature.getInstance(signAlgo);
+			signature = CryptoEnginePool.getSignature(signAlgo);
 		} catch (NoSuchAlgorithmException e) {
 			throw new ServletException("algo error: " + e.getMessage(), e);
 		}
+		boolean result;
 		try {
 			signature.initVerify(publicKey);
-		} catch (InvalidKeyException e) {
-			throw new ServletException("key error: " + e.getMessage(), e);
-		}
-		try {
 			for (byte[] dataItem : data) {
 				signature.update(dataItem);
 			}
-			boolean result = signature.verify(signatureData);
-			if (false == result) {
-				AuditService auditService = this.auditServiceLocator
-						.locateService();
-				if (null != auditService) {
-					String remoteAddress = request.getRemoteAddr();
-					auditService.identityIntegrityError(remoteAddress);
-				}
-				throw new ServletException("signature incorrect");
-			}
+			result = signature.verify(signatureData);
+		} catch (InvalidKeyException e) {
+			throw new ServletException("key error: " + e.getMessage(), e);
 		} catch (SignatureException e) {
 			AuditService auditService = this.auditServiceLocator
 					.locateService();
@@ -424,6 +426,17 @@ public class IdentityDataMessageHandler implements
 				auditService.identityIntegrityError(remoteAddress);
 			}
 			throw new ServletException("signature error: " + e.getMessage(), e);
+		} finally {
+			CryptoEnginePool.releaseSignature(signature, signAlgo);
+		}
+		if (false == result) {
+			AuditService auditService = this.auditServiceLocator
+					.locateService();
+			if (null != auditService) {
+				String remoteAddress = request.getRemoteAddr();
+				auditService.identityIntegrityError(remoteAddress);
+			}
+			throw new ServletException("signature incorrect");
 		}
 	}
 
@@ -431,16 +444,18 @@ public class IdentityDataMessageHandler implements
 	 * Tries to parse the X509 certificate.
 	 * 
 	 * @param certFile
+	 * @param shared
+	 *            whether the certificate is shared across eID cards, like a CA
+	 *            certificate.
 	 * @return the X509 certificate, or <code>null</code> in case of a DER
 	 *         decoding error.
 	 */
-	private X509Certificate getCertificate(byte[] certFile) {
+	private X509Certificate getCertificate(byte[] certFile, boolean shared) {
 		try {
-			CertificateFactory certificateFactory = CertificateFactory
-					.getInstance("X509");
-			X509Certificate certificate = (X509Certificate) certificateFactory
-					.generateCertificate(new ByteArrayInputStream(certFile));
-			return certificate;
+			if (shared) {
+				return CertificateParser.parseSharedCertificate(certFile);
+			}
+			return CertificateParser.parseCertificate(certFile);
 		} catch (CertificateException e) {
 			LOG.warn("certificate error: " + e.getMessage(), e);
 			LOG.debug("certificate size: " + certFile.length);
@@ -469,11 +484,12 @@ public class IdentityDataMessageHandler implements
 	private byte[] digestPhoto(String digestAlgoName, byte[] photoFile) {
 		MessageDigest messageDigest;
 		try {
-			messageDigest = MessageDigest.getInstance(digestAlgoName);
+			messageDigest = CryptoEnginePool.getMessageDigest(digestAlgoName);
 		} catch (NoSuchAlgorithmException e) {
 			throw new RuntimeException("digest error: " + e.getMessage(), e);
 		}
 		byte[] photoDigest = messageDigest.digest(photoFile);
+		CryptoEnginePool.releaseMessageDigest(messageDigest, digestAlgoName);
 		return photoDigest;
 	}
 
@@ -496,6 +512,7 @@ public class IdentityDataMessageHandler implements
 	}
 
 	public void init(ServletConfig config) throws ServletException {
-		// empty
+		this.rrnCertificateChainCache = new CertificateChainValidationCache(
+				this.certificateValidationCacheTtl);
 	}
 }
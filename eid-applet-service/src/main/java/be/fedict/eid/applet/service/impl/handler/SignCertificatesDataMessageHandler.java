@@ -42,6 +42,8 @@ import org.apache.commons.logging.LogFactory;
 import be.fedict.eid.applet.service.Address;
 import be.fedict.eid.applet.service.Identity;
 import be.fedict.eid.applet.service.dto.DTOMapper;
+import be.fedict.eid.applet.service.impl.CertificateChainValidationCache;
+import be.fedict.eid.applet.service.impl.CryptoEnginePool;
 import be.fedict.eid.applet.service.impl.RequestContext;
 import be.fedict.eid.applet.service.impl.ServiceLocator;
 import be.fedict.eid.applet.service.impl.tlv.TlvParser;
@@ -93,6 +95,11 @@ public class SignCertificatesDataMessageHandler implements
 	@InitParam(HelloMessageHandler.IDENTITY_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<IdentityService> identityServiceLocator;
 
+	@InitParam(AuthenticationDataMessageHandler.CERTIFICATE_VALIDATION_CACHE_TTL_INIT_PARAM_NAME)
+	private Long certificateValidationCacheTtl;
+
+	private CertificateChainValidationCache rrnCertificateChainCache;
+
 	public Object handleMessage(SignCertificatesDataMessage message,
 			Map<String, String> httpHeaders, HttpServletRequest request,
 			HttpSession session) throws ServletException {
@@ -191,8 +198,12 @@ public class SignCertificatesDataMessageHandler implements
 				List<X509Certificate> rrnCertificateChain = new LinkedList<X509Certificate>();
 				rrnCertificateChain.add(message.rrnCertificate);
 				rrnCertificateChain.add(message.rootCertificate);
-				identityIntegrityService
-						.checkNationalRegistrationCertificate(rrnCertificateChain);
+				if (false == this.rrnCertificateChainCache
+						.isValid(rrnCertificateChain)) {
+					identityIntegrityService
+							.checkNationalRegistrationCertificate(rrnCertificateChain);
+					this.rrnCertificateChainCache.setValid(rrnCertificateChain);
+				}
 			}
 		}
 
@@ -233,17 +244,19 @@ public class SignCertificatesDataMessageHandler implements
 	}
 
 	public void init(ServletConfig config) throws ServletException {
-		// empty
+		this.rrnCertificateChainCache = new CertificateChainValidationCache(
+				this.certificateValidationCacheTtl);
 	}
 
 	private byte[] digestPhoto(String digestAlgoName, byte[] photoFile) {
 		MessageDigest messageDigest;
 		try {
-			messageDigest = MessageDigest.getInstance(digestAlgoName);
+			messageDigest = CryptoEnginePool.getMessageDigest(digestAlgoName);
 		} catch (NoSuchAlgorithmException e) {
 			throw new RuntimeException("digest error: " + e.getMessage(), e);
 		}
 		byte[] photoDigest = messageDigest.digest(photoFile);
+		CryptoEnginePool.releaseMessageDigest(messageDigest, digestAlgoName);
 		return photoDigest;
 	}
 
@@ -252,31 +265,32 @@ public class SignCertificatesDataMessageHandler implements
 			HttpServletRequest request, byte[]... data) throws ServletException {
 		Signature signature;
 		try {
-			signature = Signature.getInstance(signatureAlgoName);
+			signature = CryptoEnginePool.getSignature(signatureAlgoName);
 		} catch (NoSuchAlgorithmException e) {
 			throw new ServletException("algo error: " + e.getMessage(), e);
 		}
+		boolean result;
 		try {
 			signature.initVerify(publicKey);
-		} catch (InvalidKeyException e) {
-			throw new ServletException("key error: " + e.getMessage(), e);
-		}
-		try {
 			for (byte[] dataItem : data) {
 				signature.update(dataItem);
 			}
-			boolean result = signature.verify(signatureData);
-			if (false == result) {
-				AuditService auditService = this.auditServiceLocator
-						.locateService();
-				if (null != auditService) {
-					String remoteAddress = request.getRemoteAddr();
-					auditService.identityIntegrityError(remoteAddress);
-				}
-				throw new ServletException("signature incorrect");
-			}
+			result = signature.verify(signatureData);
+		} catch (InvalidKeyException e) {
+			throw new ServletException("key error: " + e.getMessage(), e);
 		} catch (SignatureException e) {
 			throw new ServletException("signature error: " + e.getMessage(), e);
+		} finally {
+			CryptoEnginePool.releaseSignature(signature, signatureAlgoName);
+		}
+		if (false == result) {
+			AuditService auditService = this.auditServiceLocator
+					.locateService();
+			if (null != auditService) {
+				String remoteAddress = request.getRemoteAddr();
+				auditService.identityIntegrityError(remoteAddress);
+			}
+			throw new ServletException("signature incorrect");
 		}
 	}
 
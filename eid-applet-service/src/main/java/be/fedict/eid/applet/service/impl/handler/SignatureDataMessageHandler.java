@@ -18,12 +18,10 @@
 
 package be.fedict.eid.applet.service.impl.handler;
 
-import java.io.ByteArrayOutputStream;
 import java.lang.reflect.Method;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.cert.X509Certificate;
-import java.security.spec.MGF1ParameterSpec;
 import java.security.spec.PSSParameterSpec;
 import java.util.List;
 import java.util.Map;
@@ -37,10 +35,12 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
+import be.fedict.eid.applet.service.impl.CryptoEnginePool;
 import be.fedict.eid.applet.service.impl.ServiceLocator;
 import be.fedict.eid.applet.service.impl.UserIdentifierUtil;
 import be.fedict.eid.applet.service.spi.AuditService;
 import be.fedict.eid.applet.service.spi.CertificateSecurityException;
+import be.fedict.eid.applet.service.spi.DigestAlgorithm;
 import be.fedict.eid.applet.service.spi.ExpiredCertificateSecurityException;
 import be.fedict.eid.applet.service.spi.RevokedCertificateSecurityException;
 import be.fedict.eid.applet.service.spi.SignatureService;
@@ -62,37 +62,61 @@ public class SignatureDataMessageHandler implements
 	private static final Log LOG = LogFactory
 			.getLog(SignatureDataMessageHandler.class);
 
-	public static final byte[] SHA1_DIGEST_INFO_PREFIX = new byte[] { 0x30,
-			0x21, 0x30, 0x09, 0x06, 0x05, 0x2b, 0x0e, 0x03, 0x02, 0x1a, 0x05,
-			0x00, 0x04, 0x14 };
+	/**
+	 * @deprecated use {@link DigestAlgorithm#getDigestInfoPrefix()}.
+	 */
+	@Deprecated
+	public static final byte[] SHA1_DIGEST_INFO_PREFIX = DigestAlgorithm.SHA1
+			.getDigestInfoPrefix();
 
-	public static final byte[] SHA224_DIGEST_INFO_PREFIX = new byte[] { 0x30,
-			0x2d, 0x30, 0x0d, 0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65,
-			0x03, 0x04, 0x02, 0x04, 0x05, 0x00, 0x04, 0x1c };
+	/**
+	 * @deprecated use {@link DigestAlgorithm#getDigestInfoPrefix()}.
+	 */
+	@Deprecated
+	public static final byte[] SHA224_DIGEST_INFO_PREFIX = DigestAlgorithm.SHA224
+			.getDigestInfoPrefix();
 
-	public static final byte[] SHA256_DIGEST_INFO_PREFIX = new byte[] { 0x30,
-			0x31, 0x30, 0x0d, 0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65,
-			0x03, 0x04, 0x02, 0x01, 0x05, 0x00, 0x04, 0x20 };
+	/**
+	 * @deprecated use {@link DigestAlgorithm#getDigestInfoPrefix()}.
+	 */
+	@Deprecated
+	public static final byte[] SHA256_DIGEST_INFO_PREFIX = DigestAlgorithm.SHA256
+			.getDigestInfoPrefix();
 
-	public static final byte[] SHA384_DIGEST_INFO_PREFIX = new byte[] { 0x30,
-			0x41, 0x30, 0x0d, 0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65,
-			0x03, 0x04, 0x02, 0x02, 0x05, 0x00, 0x04, 0x30 };
+	/**
+	 * @deprecated use {@link DigestAlgorithm#getDigestInfoPrefix()}.
+	 */
+	@Deprecated
+	public static final byte[] SHA384_DIGEST_INFO_PREFIX = DigestAlgorithm.SHA384
+			.getDigestInfoPrefix();
 
-	public static final byte[] SHA512_DIGEST_INFO_PREFIX = new byte[] { 0x30,
-			0x51, 0x30, 0x0d, 0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65,
-			0x03, 0x04, 0x02, 0x03, 0x05, 0x00, 0x04, 0x40 };
+	/**
+	 * @deprecated use {@link DigestAlgorithm#getDigestInfoPrefix()}.
+	 */
+	@Deprecated
+	public static final byte[] SHA512_DIGEST_INFO_PREFIX = DigestAlgorithm.SHA512
+			.getDigestInfoPrefix();
 
-	public static final byte[] RIPEMD160_DIGEST_INFO_PREFIX = new byte[] {
-			0x30, 0x21, 0x30, 0x09, 0x06, 0x05, 0x2b, 0x24, 0x03, 0x02, 0x01,
-			0x05, 0x00, 0x04, 0x14 };
+	/**
+	 * @deprecated use {@link DigestAlgorithm#getDigestInfoPrefix()}.
+	 */
+	@Deprecated
+	public static final byte[] RIPEMD160_DIGEST_INFO_PREFIX = DigestAlgorithm.RIPEMD160
+			.getDigestInfoPrefix();
 
-	public static final byte[] RIPEMD128_DIGEST_INFO_PREFIX = new byte[] {
-			0x30, 0x1d, 0x30, 0x09, 0x06, 0x05, 0x2b, 0x24, 0x03, 0x02, 0x02,
-			0x05, 0x00, 0x04, 0x10 };
+	/**
+	 * @deprecated use {@link DigestAlgorithm#getDigestInfoPrefix()}.
+	 */
+	@Deprecated
+	public static final byte[] RIPEMD128_DIGEST_INFO_PREFIX = DigestAlgorithm.RIPEMD128
+			.getDigestInfoPrefix();
 
-	public static final byte[] RIPEMD256_DIGEST_INFO_PREFIX = new byte[] {
-			0x30, 0x2d, 0x30, 0x09, 0x06, 0x05, 0x2b, 0x24, 0x03, 0x02, 0x03,
-			0x05, 0x00, 0x04, 0x20 };
+	/**
+	 * @deprecated use {@link DigestAlgorithm#getDigestInfoPrefix()}.
+	 */
+	@Deprecated
+	public static final byte[] RIPEMD256_DIGEST_INFO_PREFIX = DigestAlgorithm.RIPEMD256
+			.getDigestInfoPrefix();
 
 	@InitParam(HelloMessageHandler.SIGNATURE_SERVICE_INIT_PARAM_NAME)
 	private ServiceLocator<SignatureService> signatureServiceLocator;
@@ -130,19 +154,31 @@ public class SignatureDataMessageHandler implements
 		String digestAlgo = SignatureDataMessageHandler.getDigestAlgo(session);
 		byte[] expectedDigestValue = SignatureDataMessageHandler
 				.getDigestValue(session);
+		DigestAlgorithm digestAlgorithm = DigestAlgorithm.forName(digestAlgo);
 		if (digestAlgo.endsWith("-PSS")) {
 			LOG.debug("verifying RSA/PSS signature");
 			try {
-				Signature signature = Signature.getInstance("RAWRSASSA-PSS",
-						BouncyCastleProvider.PROVIDER_NAME);
-				if ("SHA-256-PSS".equals(digestAlgo)) {
-					LOG.debug("RSA/PSS SHA256");
-					signature.setParameter(new PSSParameterSpec("SHA-256",
-							"MGF1", new MGF1ParameterSpec("SHA-256"), 32, 1));
+				Signature signature = CryptoEnginePool.getSignature(
+						"RAWRSASSA-PSS", BouncyCastleProvider.PROVIDER_NAME);
+				boolean result;
+				try {
+					/*
+					 * Pooled engines might still carry the parameters of a
+					 * previous verification.
+					 */
+					if (null != digestAlgorithm) {
+						signature.setParameter(digestAlgorithm
+								.getPssParameterSpec());
+					} else {
+						signature.setParameter(PSSParameterSpec.DEFAULT);
+					}
+					signature.initVerify(signingPublicKey);
+					signature.update(expectedDigestValue);
+					result = signature.verify(signatureValue);
+				} finally {
+					CryptoEnginePool.releaseSignature(signature,
+							"RAWRSASSA-PSS", BouncyCastleProvider.PROVIDER_NAME);
 				}
-				signature.initVerify(signingPublicKey);
-				signature.update(expectedDigestValue);
-				boolean result = signature.verify(signatureValue);
 				if (false == result) {
 					throw new SecurityException("signature incorrect");
 				}
@@ -153,30 +189,24 @@ public class SignatureDataMessageHandler implements
 			}
 		} else {
 			try {
-				Signature signature = Signature.getInstance("RawRSA",
+				Signature signature = CryptoEnginePool.getSignature("RawRSA",
 						BouncyCastleProvider.PROVIDER_NAME);
-				signature.initVerify(signingPublicKey);
-				ByteArrayOutputStream digestInfo = new ByteArrayOutputStream();
-				if ("SHA-1".equals(digestAlgo) || "SHA1".equals(digestAlgo)) {
-					digestInfo.write(SHA1_DIGEST_INFO_PREFIX);
-				} else if ("SHA-224".equals(digestAlgo)) {
-					digestInfo.write(SHA224_DIGEST_INFO_PREFIX);
-				} else if ("SHA-256".equals(digestAlgo)) {
-					digestInfo.write(SHA256_DIGEST_INFO_PREFIX);
-				} else if ("SHA-384".equals(digestAlgo)) {
-					digestInfo.write(SHA384_DIGEST_INFO_PREFIX);
-				} else if ("SHA-512".equals(digestAlgo)) {
-					digestInfo.write(SHA512_DIGEST_INFO_PREFIX);
-				} else if ("RIPEMD160".equals(digestAlgo)) {
-					digestInfo.write(RIPEMD160_DIGEST_INFO_PREFIX);
-				} else if ("RIPEMD128".equals(digestAlgo)) {
-					digestInfo.write(RIPEMD128_DIGEST_INFO_PREFIX);
-				} else if ("RIPEMD256".equals(digestAlgo)) {
-					digestInfo.write(RIPEMD256_DIGEST_INFO_PREFIX);
+				boolean result;
+				try {
+					signature.initVerify(signingPublicKey);
+					byte[] digestInfo;
+					if (null != digestAlgorithm) {
+						digestInfo = digestAlgorithm
+								.getDigestInfo(expectedDigestValue);
+					} else {
+						digestInfo = expectedDigestValue;
+					}
+					signature.update(digestInfo);
+					result = signature.verify(signatureValue);
+				} finally {
+					CryptoEnginePool.releaseSignature(signature, "RawRSA",
+							BouncyCastleProvider.PROVIDER_NAME);
 				}
-				digestInfo.write(expectedDigestValue);
-				signature.update(digestInfo.toByteArray());
-				boolean result = signature.verify(signatureValue);
 				if (false == result) {
 					AuditService auditService = this.auditServiceLocator
 							.locateService();
@@ -0,0 +1,152 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.servlet.ServletHolder;
+import org.mortbay.jetty.testing.ServletTester;
+
+import be.fedict.eid.applet.service.AbstractAppletServiceServlet;
+import be.fedict.eid.applet.service.impl.handler.HelloMessageHandler;
+import be.fedict.eid.applet.service.impl.handler.MessageHandler;
+import be.fedict.eid.applet.service.spi.ProtocolContextStore;
+import be.fedict.eid.applet.shared.HelloMessage;
+import be.fedict.eid.applet.shared.protocol.HttpTransmitter;
+import be.fedict.eid.applet.shared.protocol.Transport;
+
+public class AbstractAppletServiceServletTest {
+
+	private ServletTester servletTester;
+
+	private String location;
+
+	@Before
+	public void setUp() throws Exception {
+		this.servletTester = new ServletTester();
+		ServletHolder servletHolder = this.servletTester.addServlet(
+				FailingAppletServiceServlet.class, "/");
+		servletHolder.setInitParameter("SkipSecureConnectionCheck", "true");
+		servletHolder.setInitParameter("ProtocolContextStoreClass",
+				TestProtocolContextStore.class.getName());
+		TestProtocolContextStore.protocolContext = null;
+
+		this.servletTester.start();
+		this.location = this.servletTester.createSocketConnector(true);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.servletTester.stop();
+	}
+
+	@Test
+	public void testProtocolContextStoredOnError() throws Exception {
+		// setup
+		HttpClient httpClient = new HttpClient();
+		PostMethod postMethod = new PostMethod(this.location);
+		final PostMethodHttpTransmitter postMethodHttpTransmitter = new PostMethodHttpTransmitter(
+				postMethod);
+		HttpTransmitter httpTransmitter = new HttpTransmitter() {
+
+			public void setBody(byte[] bodyValue) {
+				postMethodHttpTransmitter.setBody(bodyValue);
+			}
+
+			public boolean isSecure() {
+				return true;
+			}
+
+			public void addHeader(String headerName, String headerValue) {
+				postMethodHttpTransmitter.addHeader(headerName, headerValue);
+			}
+		};
+		Transport.transfer(new HelloMessage(), httpTransmitter);
+
+		// operate
+		int result = httpClient.executeMethod(postMethod);
+
+		// verify
+		assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, result);
+		Map<String, Object> protocolContext = TestProtocolContextStore.protocolContext;
+		assertNotNull(protocolContext);
+		assertEquals("nl", protocolContext
+				.get(HelloMessageHandler.CLIENT_LANGUAGE_SESSION_ATTRIBUTE));
+	}
+
+	public static class FailingAppletServiceServlet extends
+			AbstractAppletServiceServlet {
+
+		private static final long serialVersionUID = 1L;
+
+		@SuppressWarnings("unchecked")
+		@Override
+		protected <T> MessageHandler<T> getMessageHandler(Class<T> messageClass) {
+			return (MessageHandler<T>) new FailingMessageHandler();
+		}
+	}
+
+	public static class FailingMessageHandler implements
+			MessageHandler<Object> {
+
+		public Object handleMessage(Object message,
+				Map<String, String> httpHeaders, HttpServletRequest request,
+				HttpSession session) throws ServletException {
+			session.setAttribute(
+					HelloMessageHandler.CLIENT_LANGUAGE_SESSION_ATTRIBUTE, "nl");
+			throw new ServletException("message handler error");
+		}
+
+		public void init(ServletConfig config) throws ServletException {
+		}
+	}
+
+	public static class TestProtocolContextStore implements
+			ProtocolContextStore {
+
+		private static Map<String, Object> protocolContext;
+
+		public Map<String, Object> getProtocolContext(String sessionId) {
+			return null;
+		}
+
+		public void setProtocolContext(String sessionId,
+				Map<String, Object> protocolContext) {
+			TestProtocolContextStore.protocolContext = protocolContext;
+		}
+
+		public void removeProtocolContext(String sessionId) {
+			TestProtocolContextStore.protocolContext = null;
+		}
+	}
+}
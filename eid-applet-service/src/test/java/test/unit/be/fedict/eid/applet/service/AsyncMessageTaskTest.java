@@ -0,0 +1,162 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.service;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import be.fedict.eid.applet.service.impl.AsyncMessageTask;
+import be.fedict.eid.applet.service.impl.ServletAsyncContext;
+
+public class AsyncMessageTaskTest {
+
+	private HttpServletResponse mockHttpServletResponse;
+
+	private ServletAsyncContext mockServletAsyncContext;
+
+	@Before
+	public void setUp() throws Exception {
+		this.mockHttpServletResponse = EasyMock
+				.createMock(HttpServletResponse.class);
+		this.mockServletAsyncContext = EasyMock
+				.createMock(ServletAsyncContext.class);
+	}
+
+	@Test
+	public void testComplete() throws Exception {
+		// setup
+		TestAsyncMessageTask asyncMessageTask = new TestAsyncMessageTask(
+				this.mockHttpServletResponse, this.mockServletAsyncContext,
+				null);
+		EasyMock.expect(this.mockServletAsyncContext.isAborted()).andReturn(
+				false).times(2);
+		this.mockServletAsyncContext.complete();
+
+		// prepare
+		EasyMock.replay(this.mockHttpServletResponse,
+				this.mockServletAsyncContext);
+
+		// operate
+		asyncMessageTask.run();
+
+		// verify
+		EasyMock.verify(this.mockHttpServletResponse,
+				this.mockServletAsyncContext);
+		assertTrue(asyncMessageTask.processed);
+	}
+
+	@Test
+	public void testAbortedBeforeProcessing() throws Exception {
+		// setup
+		TestAsyncMessageTask asyncMessageTask = new TestAsyncMessageTask(
+				this.mockHttpServletResponse, this.mockServletAsyncContext,
+				null);
+		EasyMock.expect(this.mockServletAsyncContext.isAborted()).andReturn(
+				true);
+
+		// prepare
+		EasyMock.replay(this.mockHttpServletResponse,
+				this.mockServletAsyncContext);
+
+		// operate
+		asyncMessageTask.run();
+
+		// verify
+		EasyMock.verify(this.mockHttpServletResponse,
+				this.mockServletAsyncContext);
+		assertFalse(asyncMessageTask.processed);
+	}
+
+	@Test
+	public void testError() throws Exception {
+		// setup
+		TestAsyncMessageTask asyncMessageTask = new TestAsyncMessageTask(
+				this.mockHttpServletResponse, this.mockServletAsyncContext,
+				new RuntimeException("test error"));
+		EasyMock.expect(this.mockServletAsyncContext.isAborted()).andReturn(
+				false).times(3);
+		EasyMock.expect(this.mockHttpServletResponse.isCommitted()).andReturn(
+				false);
+		this.mockHttpServletResponse
+				.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		this.mockServletAsyncContext.complete();
+
+		// prepare
+		EasyMock.replay(this.mockHttpServletResponse,
+				this.mockServletAsyncContext);
+
+		// operate
+		asyncMessageTask.run();
+
+		// verify
+		EasyMock.verify(this.mockHttpServletResponse,
+				this.mockServletAsyncContext);
+	}
+
+	@Test
+	public void testErrorAfterTimeout() throws Exception {
+		// setup
+		TestAsyncMessageTask asyncMessageTask = new TestAsyncMessageTask(
+				this.mockHttpServletResponse, this.mockServletAsyncContext,
+				new RuntimeException("test error"));
+		EasyMock.expect(this.mockServletAsyncContext.isAborted()).andReturn(
+				false);
+		EasyMock.expect(this.mockServletAsyncContext.isAborted()).andReturn(
+				true).times(2);
+
+		// prepare
+		EasyMock.replay(this.mockHttpServletResponse,
+				this.mockServletAsyncContext);
+
+		// operate
+		asyncMessageTask.run();
+
+		// verify
+		EasyMock.verify(this.mockHttpServletResponse,
+				this.mockServletAsyncContext);
+		assertTrue(asyncMessageTask.processed);
+	}
+
+	private static class TestAsyncMessageTask extends AsyncMessageTask {
+
+		private final RuntimeException exception;
+
+		private boolean processed;
+
+		public TestAsyncMessageTask(HttpServletResponse response,
+				ServletAsyncContext asyncContext, RuntimeException exception) {
+			super(response, asyncContext);
+			this.exception = exception;
+		}
+
+		@Override
+		protected void processMessage() throws Exception {
+			this.processed = true;
+			if (null != this.exception) {
+				throw this.exception;
+			}
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import be.fedict.eid.applet.service.impl.AuthenticationChallenge;
+import be.fedict.eid.applet.service.impl.DetachedProtocolContext;
+import be.fedict.eid.applet.service.impl.DetachedProtocolContextHttpSession;
+import be.fedict.eid.applet.service.impl.InMemoryChallengeStore;
+import be.fedict.eid.applet.service.spi.ChallengeStore;
+
+public class AuthenticationChallengeTest {
+
+	@Test
+	public void testGenerateChallenge() throws Exception {
+		// setup
+		HttpTestSession session1 = new HttpTestSession();
+		HttpTestSession session2 = new HttpTestSession();
+
+		// operate
+		byte[] challenge1 = AuthenticationChallenge.generateChallenge(session1);
+		byte[] challenge2 = AuthenticationChallenge.generateChallenge(session2);
+
+		// verify
+		assertEquals(20, challenge1.length);
+		assertFalse(Arrays.equals(challenge1, challenge2));
+		assertArrayEquals(challenge1, AuthenticationChallenge
+				.getAuthnChallenge(session1));
+	}
+
+	@Test
+	public void testChallengeConsumedOnce() throws Exception {
+		// setup
+		HttpTestSession session = new HttpTestSession();
+		AuthenticationChallenge.generateChallenge(session);
+		AuthenticationChallenge.getAuthnChallenge(session);
+
+		// operate & verify
+		try {
+			AuthenticationChallenge.getAuthnChallenge(session);
+			fail();
+		} catch (SecurityException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testChallengeStore() throws Exception {
+		// setup
+		HttpTestSession session = new HttpTestSession();
+		ChallengeStore challengeStore = new InMemoryChallengeStore();
+
+		// operate
+		byte[] challenge = AuthenticationChallenge.generateChallenge(session,
+				challengeStore);
+
+		// verify
+		assertNull(session
+				.getAttribute(AuthenticationChallenge.AUTHN_CHALLENGE_SESSION_ATTRIBUTE));
+		assertArrayEquals(challenge, AuthenticationChallenge.getAuthnChallenge(
+				session, null, challengeStore));
+		try {
+			AuthenticationChallenge.getAuthnChallenge(session, null,
+					challengeStore);
+			fail();
+		} catch (SecurityException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testChallengeStoreKeyedOnProtocolRunId() throws Exception {
+		// setup
+		HttpServletRequest mockHttpServletRequest = EasyMock
+				.createMock(HttpServletRequest.class);
+		DetachedProtocolContext protocolContext = new DetachedProtocolContext();
+		protocolContext.setProtocolRunId("protocol-run-id");
+		DetachedProtocolContextHttpSession session = new DetachedProtocolContextHttpSession(
+				protocolContext, mockHttpServletRequest);
+		ChallengeStore challengeStore = new InMemoryChallengeStore();
+
+		// prepare
+		EasyMock.replay(mockHttpServletRequest);
+
+		// operate
+		byte[] challenge = AuthenticationChallenge.generateChallenge(session,
+				challengeStore);
+
+		// verify
+		EasyMock.verify(mockHttpServletRequest);
+		assertArrayEquals(challenge, challengeStore.consumeChallenge(
+				"protocol-run-id", 1000 * 60));
+	}
+}
@@ -46,6 +46,7 @@ import org.junit.Test;
 
 import be.fedict.eid.applet.service.AppletServiceServlet;
 import be.fedict.eid.applet.service.impl.AuthenticationChallenge;
+import be.fedict.eid.applet.service.impl.ServiceLocator;
 import be.fedict.eid.applet.service.impl.UserIdentifierUtil;
 import be.fedict.eid.applet.service.impl.handler.AuthenticationDataMessageHandler;
 import be.fedict.eid.applet.service.impl.handler.HelloMessageHandler;
@@ -186,6 +187,10 @@ public class AuthenticationDataMessageHandlerTest {
 				mockServletConfig
 						.getInitParameter(AuthenticationDataMessageHandler.NRCID_APP_ID_INIT_PARAM_NAME))
 				.andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.NRCID_HMAC_ALGO_INIT_PARAM_NAME))
+				.andStubReturn(null);
 		EasyMock.expect(
 				mockServletConfig
 						.getInitParameter(AuthenticationDataMessageHandler.AUTHN_SIGNATURE_SERVICE_INIT_PARAM_NAME))
@@ -194,6 +199,14 @@ public class AuthenticationDataMessageHandlerTest {
 				mockServletConfig
 						.getInitParameter(AuthenticationDataMessageHandler.AUTHN_SIGNATURE_SERVICE_INIT_PARAM_NAME
 								+ "Class")).andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CHALLENGE_STORE_INIT_PARAM_NAME))
+				.andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CHALLENGE_STORE_INIT_PARAM_NAME
+								+ "Class")).andReturn(null);
 		EasyMock.expect(
 				mockServletConfig
 						.getInitParameter(IdentityDataMessageHandler.INCLUDE_DATA_FILES))
@@ -207,6 +220,17 @@ public class AuthenticationDataMessageHandlerTest {
 				"1.2.3.4");
 
 		// prepare
+		EasyMock.expect(
+				mockServletConfig.getInitParameter(EasyMock.endsWith("Cache")))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CERTIFICATE_VALIDATION_CACHE_TTL_INIT_PARAM_NAME))
+				.andStubReturn(null);
 		EasyMock.replay(mockServletRequest, mockServletConfig);
 
 		// operate
@@ -310,6 +334,10 @@ public class AuthenticationDataMessageHandlerTest {
 				mockServletConfig
 						.getInitParameter(AuthenticationDataMessageHandler.NRCID_APP_ID_INIT_PARAM_NAME))
 				.andStubReturn(nrcidAppId);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.NRCID_HMAC_ALGO_INIT_PARAM_NAME))
+				.andStubReturn(null);
 		String nrcidOrgId = "my-org-id";
 		EasyMock.expect(
 				mockServletConfig
@@ -366,8 +394,27 @@ public class AuthenticationDataMessageHandlerTest {
 				mockServletConfig
 						.getInitParameter(AuthenticationDataMessageHandler.AUTHN_SIGNATURE_SERVICE_INIT_PARAM_NAME
 								+ "Class")).andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CHALLENGE_STORE_INIT_PARAM_NAME))
+				.andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CHALLENGE_STORE_INIT_PARAM_NAME
+								+ "Class")).andReturn(null);
 
 		// prepare
+		EasyMock.expect(
+				mockServletConfig.getInitParameter(EasyMock.endsWith("Cache")))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CERTIFICATE_VALIDATION_CACHE_TTL_INIT_PARAM_NAME))
+				.andStubReturn(null);
 		EasyMock.replay(mockServletRequest, mockServletConfig);
 
 		// operate
@@ -518,6 +565,10 @@ public class AuthenticationDataMessageHandlerTest {
 				mockServletConfig
 						.getInitParameter(AuthenticationDataMessageHandler.NRCID_APP_ID_INIT_PARAM_NAME))
 				.andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.NRCID_HMAC_ALGO_INIT_PARAM_NAME))
+				.andStubReturn(null);
 		EasyMock.expect(
 				mockServletConfig
 						.getInitParameter(IdentityDataMessageHandler.INCLUDE_DATA_FILES))
@@ -530,8 +581,27 @@ public class AuthenticationDataMessageHandlerTest {
 				mockServletConfig
 						.getInitParameter(AuthenticationDataMessageHandler.AUTHN_SIGNATURE_SERVICE_INIT_PARAM_NAME
 								+ "Class")).andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CHALLENGE_STORE_INIT_PARAM_NAME))
+				.andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CHALLENGE_STORE_INIT_PARAM_NAME
+								+ "Class")).andReturn(null);
 
 		// prepare
+		EasyMock.expect(
+				mockServletConfig.getInitParameter(EasyMock.endsWith("Cache")))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CERTIFICATE_VALIDATION_CACHE_TTL_INIT_PARAM_NAME))
+				.andStubReturn(null);
 		EasyMock.replay(mockServletRequest, mockServletConfig);
 
 		// operate
@@ -675,6 +745,10 @@ public class AuthenticationDataMessageHandlerTest {
 				mockServletConfig
 						.getInitParameter(AuthenticationDataMessageHandler.NRCID_APP_ID_INIT_PARAM_NAME))
 				.andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.NRCID_HMAC_ALGO_INIT_PARAM_NAME))
+				.andStubReturn(null);
 		EasyMock.expect(
 				mockServletConfig
 						.getInitParameter(IdentityDataMessageHandler.INCLUDE_DATA_FILES))
@@ -687,6 +761,14 @@ public class AuthenticationDataMessageHandlerTest {
 				mockServletConfig
 						.getInitParameter(AuthenticationDataMessageHandler.AUTHN_SIGNATURE_SERVICE_INIT_PARAM_NAME
 								+ "Class")).andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CHALLENGE_STORE_INIT_PARAM_NAME))
+				.andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CHALLENGE_STORE_INIT_PARAM_NAME
+								+ "Class")).andReturn(null);
 
 		EasyMock.expect(
 				mockServletRequest
@@ -698,6 +780,17 @@ public class AuthenticationDataMessageHandlerTest {
 				remoteAddress);
 
 		// prepare
+		EasyMock.expect(
+				mockServletConfig.getInitParameter(EasyMock.endsWith("Cache")))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CERTIFICATE_VALIDATION_CACHE_TTL_INIT_PARAM_NAME))
+				.andStubReturn(null);
 		EasyMock.replay(mockServletRequest, mockServletConfig);
 
 		// operate
@@ -842,6 +935,10 @@ public class AuthenticationDataMessageHandlerTest {
 				mockServletConfig
 						.getInitParameter(AuthenticationDataMessageHandler.NRCID_APP_ID_INIT_PARAM_NAME))
 				.andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.NRCID_HMAC_ALGO_INIT_PARAM_NAME))
+				.andStubReturn(null);
 		EasyMock.expect(
 				mockServletConfig
 						.getInitParameter(AuthenticationDataMessageHandler.AUTHN_SIGNATURE_SERVICE_INIT_PARAM_NAME))
@@ -850,6 +947,14 @@ public class AuthenticationDataMessageHandlerTest {
 				mockServletConfig
 						.getInitParameter(AuthenticationDataMessageHandler.AUTHN_SIGNATURE_SERVICE_INIT_PARAM_NAME
 								+ "Class")).andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CHALLENGE_STORE_INIT_PARAM_NAME))
+				.andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CHALLENGE_STORE_INIT_PARAM_NAME
+								+ "Class")).andReturn(null);
 
 		EasyMock.expect(
 				mockServletRequest
@@ -863,6 +968,17 @@ public class AuthenticationDataMessageHandlerTest {
 				"1.2.3.4");
 
 		// prepare
+		EasyMock.expect(
+				mockServletConfig.getInitParameter(EasyMock.endsWith("Cache")))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CERTIFICATE_VALIDATION_CACHE_TTL_INIT_PARAM_NAME))
+				.andStubReturn(null);
 		EasyMock.replay(mockServletRequest, mockServletConfig);
 
 		// operate
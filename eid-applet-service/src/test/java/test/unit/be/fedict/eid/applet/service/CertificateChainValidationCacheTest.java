@@ -0,0 +1,93 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.service;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import be.fedict.eid.applet.service.impl.CertificateChainValidationCache;
+
+public class CertificateChainValidationCacheTest {
+
+	@Test
+	public void testValid() throws Exception {
+		// setup
+		List<X509Certificate> certificateChain = generateCertificateChain("CN=Test 1");
+		List<X509Certificate> otherCertificateChain = generateCertificateChain("CN=Test 2");
+		CertificateChainValidationCache cache = new CertificateChainValidationCache(
+				1000L * 60);
+
+		// operate
+		cache.setValid(certificateChain);
+
+		// verify
+		assertTrue(cache.isValid(certificateChain));
+		assertFalse(cache.isValid(otherCertificateChain));
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		// setup
+		List<X509Certificate> certificateChain = generateCertificateChain("CN=Test");
+		CertificateChainValidationCache cache = new CertificateChainValidationCache(
+				(Long) null);
+
+		// operate
+		cache.setValid(certificateChain);
+
+		// verify
+		assertFalse(cache.isValid(certificateChain));
+	}
+
+	@Test
+	public void testMaxSize() throws Exception {
+		// setup
+		List<X509Certificate> certificateChain1 = generateCertificateChain("CN=Test 1");
+		List<X509Certificate> certificateChain2 = generateCertificateChain("CN=Test 2");
+		CertificateChainValidationCache cache = new CertificateChainValidationCache(
+				1000L * 60, 1);
+
+		// operate
+		cache.setValid(certificateChain1);
+		cache.setValid(certificateChain2);
+
+		// verify
+		assertFalse(cache.isValid(certificateChain1));
+		assertTrue(cache.isValid(certificateChain2));
+	}
+
+	private List<X509Certificate> generateCertificateChain(String subjectName)
+			throws Exception {
+		KeyPair keyPair = MiscTestUtils.generateKeyPair();
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		X509Certificate certificate = MiscTestUtils.generateCertificate(
+				keyPair.getPublic(), subjectName, notBefore, notAfter, null,
+				keyPair.getPrivate(), true, 0, null, null);
+		return Collections.singletonList(certificate);
+	}
+}
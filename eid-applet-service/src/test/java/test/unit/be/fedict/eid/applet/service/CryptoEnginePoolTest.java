@@ -0,0 +1,71 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package test.unit.be.fedict.eid.applet.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+
+import java.security.MessageDigest;
+
+import org.junit.Test;
+
+import be.fedict.eid.applet.service.impl.CryptoEnginePool;
+
+public class CryptoEnginePoolTest {
+
+	@Test
+	public void testMessageDigestReuse() throws Exception {
+		// setup
+		byte[] data = "hello world".getBytes();
+		byte[] expectedDigest = MessageDigest.getInstance("MD5").digest(data);
+
+		// operate
+		MessageDigest messageDigest1 = CryptoEnginePool.getMessageDigest("MD5");
+		messageDigest1.update("garbage".getBytes());
+		CryptoEnginePool.releaseMessageDigest(messageDigest1, "MD5");
+		MessageDigest messageDigest2 = CryptoEnginePool.getMessageDigest("MD5");
+		byte[] result = messageDigest2.digest(data);
+
+		// verify
+		assertArrayEquals(expectedDigest, result);
+	}
+
+	@Test
+	public void testMessageDigestPooling() throws Exception {
+		// setup
+		byte[] expectedDigest = MessageDigest.getInstance("MD5").digest();
+
+		// operate
+		/*
+		 * Single thread, and MD5 is not pooled by the eID Applet Service
+		 * itself, so the released engine is the only idle one.
+		 */
+		MessageDigest messageDigest1 = CryptoEnginePool.getMessageDigest("MD5");
+		messageDigest1.update("garbage".getBytes());
+		CryptoEnginePool.releaseMessageDigest(messageDigest1, "MD5");
+		MessageDigest messageDigest2 = CryptoEnginePool.getMessageDigest("MD5");
+		byte[] result = messageDigest2.digest();
+		CryptoEnginePool.releaseMessageDigest(messageDigest2, "MD5");
+
+		// verify
+		assertSame(messageDigest1, messageDigest2);
+		assertArrayEquals(expectedDigest, result);
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package test.unit.be.fedict.eid.applet.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.security.MessageDigest;
+
+import org.junit.Test;
+
+import be.fedict.eid.applet.service.spi.DigestAlgorithm;
+
+public class DigestAlgorithmTest {
+
+	@Test
+	public void testForName() throws Exception {
+		assertSame(DigestAlgorithm.SHA1, DigestAlgorithm.forName("SHA-1"));
+		assertSame(DigestAlgorithm.SHA1, DigestAlgorithm.forName("SHA1"));
+		assertSame(DigestAlgorithm.SHA256_PSS,
+				DigestAlgorithm.forName("SHA-256-PSS"));
+		assertNull(DigestAlgorithm.forName("foobar"));
+	}
+
+	@Test
+	public void testDigestInfoEncoding() throws Exception {
+		for (DigestAlgorithm digestAlgorithm : DigestAlgorithm.values()) {
+			if (digestAlgorithm.isPss()) {
+				assertNull(digestAlgorithm.getDigestInfoPrefix());
+				continue;
+			}
+			byte[] digestValue = new byte[digestAlgorithm.getDigestLength()];
+
+			// operate
+			byte[] digestInfo = digestAlgorithm.getDigestInfo(digestValue);
+
+			// verify: DER SEQUENCE length and OCTET STRING length
+			assertEquals(digestInfo.length - 2, digestInfo[1]);
+			assertEquals(digestValue.length, digestInfo[digestInfo.length
+					- digestValue.length - 1]);
+		}
+	}
+
+	@Test
+	public void testDigestLength() throws Exception {
+		for (DigestAlgorithm digestAlgorithm : DigestAlgorithm.values()) {
+			if (digestAlgorithm.getJcaName().startsWith("RIPEMD")) {
+				// not available without the BouncyCastle provider
+				continue;
+			}
+			MessageDigest messageDigest = MessageDigest
+					.getInstance(digestAlgorithm.getJcaName());
+			assertEquals(messageDigest.getDigestLength(),
+					digestAlgorithm.getDigestLength());
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Vector;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Test;
+
+import be.fedict.eid.applet.service.impl.HttpServletRequestHeaderMap;
+
+public class HttpServletRequestHeaderMapTest {
+
+	@Test
+	public void testGet() throws Exception {
+		// setup
+		HttpServletRequest mockRequest = EasyMock
+				.createMock(HttpServletRequest.class);
+		EasyMock.expect(mockRequest.getHeader("user-agent")).andReturn(
+				"test-agent");
+		EasyMock.expect(mockRequest.getHeader("foo")).andReturn(null);
+
+		// prepare
+		EasyMock.replay(mockRequest);
+
+		// operate
+		Map<String, String> httpHeaders = new HttpServletRequestHeaderMap(
+				mockRequest);
+
+		// verify
+		assertEquals("test-agent", httpHeaders.get("user-agent"));
+		assertFalse(httpHeaders.containsKey("foo"));
+		assertNull(httpHeaders.get(1));
+		EasyMock.verify(mockRequest);
+	}
+
+	@Test
+	public void testEntrySet() throws Exception {
+		// setup
+		HttpServletRequest mockRequest = EasyMock
+				.createMock(HttpServletRequest.class);
+		final Vector<String> headerNames = new Vector<String>();
+		headerNames.add("user-agent");
+		headerNames.add("host");
+		EasyMock.expect(mockRequest.getHeaderNames()).andStubAnswer(
+				new IAnswer<Object>() {
+					public Object answer() throws Throwable {
+						return Collections.enumeration(headerNames);
+					}
+				});
+		EasyMock.expect(mockRequest.getHeader("user-agent")).andStubReturn(
+				"test-agent");
+		EasyMock.expect(mockRequest.getHeader("host")).andStubReturn(
+				"localhost");
+
+		// prepare
+		EasyMock.replay(mockRequest);
+
+		// operate
+		Map<String, String> httpHeaders = new HttpServletRequestHeaderMap(
+				mockRequest);
+
+		// verify
+		assertEquals(2, httpHeaders.size());
+		assertTrue(httpHeaders.entrySet().iterator().hasNext());
+		assertEquals("localhost", httpHeaders.get("host"));
+	}
+}
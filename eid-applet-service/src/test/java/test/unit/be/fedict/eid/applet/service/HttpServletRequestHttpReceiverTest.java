@@ -0,0 +1,182 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package test.unit.be.fedict.eid.applet.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Vector;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Test;
+
+import be.fedict.eid.applet.service.impl.HttpServletRequestHttpReceiver;
+
+public class HttpServletRequestHttpReceiverTest {
+
+	@Test
+	public void testGetBody() throws Exception {
+		// setup
+		byte[] body = "hello world".getBytes();
+		HttpServletRequest mockRequest = createMockRequest(body.length, body,
+				"X-AppletProtocol-IdentityFileSize", "11");
+
+		// prepare
+		EasyMock.replay(mockRequest);
+
+		// operate
+		HttpServletRequestHttpReceiver httpReceiver = new HttpServletRequestHttpReceiver(
+				mockRequest, true, 1024);
+		byte[] result = httpReceiver.getBody();
+
+		// verify
+		EasyMock.verify(mockRequest);
+		assertArrayEquals(body, result);
+	}
+
+	@Test
+	public void testContentLengthTooLarge() throws Exception {
+		// setup
+		HttpServletRequest mockRequest = EasyMock
+				.createMock(HttpServletRequest.class);
+		EasyMock.expect(mockRequest.getContentLength()).andStubReturn(2048);
+
+		// prepare
+		EasyMock.replay(mockRequest);
+
+		// operate & verify
+		HttpServletRequestHttpReceiver httpReceiver = new HttpServletRequestHttpReceiver(
+				mockRequest, true, 1024);
+		try {
+			httpReceiver.getBody();
+			fail();
+		} catch (SecurityException e) {
+			// expected
+			EasyMock.verify(mockRequest);
+		}
+	}
+
+	@Test
+	public void testAnnouncedSizeTooLarge() throws Exception {
+		// setup
+		HttpServletRequest mockRequest = createMockRequest(100, new byte[100],
+				"X-AppletProtocol-IdentityFileSize", "1000",
+				"X-AppletProtocol-PhotoFileSize", "1000");
+
+		// prepare
+		EasyMock.replay(mockRequest);
+
+		// operate & verify
+		HttpServletRequestHttpReceiver httpReceiver = new HttpServletRequestHttpReceiver(
+				mockRequest, true, 1024);
+		try {
+			httpReceiver.getBodyInputStream();
+			fail();
+		} catch (SecurityException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testNegativeSizeHeader() throws Exception {
+		// setup
+		HttpServletRequest mockRequest = createMockRequest(100, new byte[100],
+				"X-AppletProtocol-IdentityFileSize", "5000",
+				"X-AppletProtocol-PhotoFileSize", "-5000");
+
+		// prepare
+		EasyMock.replay(mockRequest);
+
+		// operate & verify
+		HttpServletRequestHttpReceiver httpReceiver = new HttpServletRequestHttpReceiver(
+				mockRequest, true, 1024);
+		try {
+			httpReceiver.getBody();
+			fail();
+		} catch (SecurityException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testChunkedBodyTooLarge() throws Exception {
+		// setup
+		HttpServletRequest mockRequest = createMockRequest(-1, new byte[2048]);
+
+		// prepare
+		EasyMock.replay(mockRequest);
+
+		// operate & verify
+		HttpServletRequestHttpReceiver httpReceiver = new HttpServletRequestHttpReceiver(
+				mockRequest, true, 1024);
+		try {
+			httpReceiver.getBody();
+			fail();
+		} catch (SecurityException e) {
+			// expected
+		}
+	}
+
+	private static HttpServletRequest createMockRequest(int contentLength,
+			byte[] body, String... headers) throws IOException {
+		HttpServletRequest mockRequest = EasyMock
+				.createMock(HttpServletRequest.class);
+		EasyMock.expect(mockRequest.getContentLength()).andStubReturn(
+				contentLength);
+		final Vector<String> headerNames = new Vector<String>();
+		for (int idx = 0; idx < headers.length; idx += 2) {
+			headerNames.add(headers[idx]);
+			EasyMock.expect(mockRequest.getHeader(headers[idx]))
+					.andStubReturn(headers[idx + 1]);
+		}
+		EasyMock.expect(mockRequest.getHeaderNames()).andStubAnswer(
+				new IAnswer<Enumeration<String>>() {
+					public Enumeration<String> answer() throws Throwable {
+						return Collections.enumeration(headerNames);
+					}
+				});
+		EasyMock.expect(mockRequest.getInputStream()).andStubReturn(
+				new TestServletInputStream(new ByteArrayInputStream(body)));
+		return mockRequest;
+	}
+
+	private static class TestServletInputStream extends ServletInputStream {
+
+		private final InputStream inputStream;
+
+		public TestServletInputStream(InputStream inputStream) {
+			this.inputStream = inputStream;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return this.inputStream.read();
+		}
+	}
+}
@@ -21,6 +21,7 @@ package test.unit.be.fedict.eid.applet.service;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpSession;
@@ -30,8 +31,11 @@ public class HttpTestSession implements HttpSession {
 
 	private final Map<String, Object> attributes;
 
+	private final String id;
+
 	public HttpTestSession() {
 		this.attributes = new HashMap<String, Object>();
+		this.id = UUID.randomUUID().toString();
 	}
 
 	public Object getAttribute(String name) {
@@ -47,7 +51,7 @@ public class HttpTestSession implements HttpSession {
 	}
 
 	public String getId() {
-		return null;
+		return this.id;
 	}
 
 	public long getLastAccessedTime() {
@@ -85,6 +89,7 @@ public class HttpTestSession implements HttpSession {
 	}
 
 	public void removeAttribute(String name) {
+		this.attributes.remove(name);
 	}
 
 	public void removeValue(String name) {
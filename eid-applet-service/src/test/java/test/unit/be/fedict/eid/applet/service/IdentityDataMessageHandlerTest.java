@@ -45,6 +45,8 @@ import be.fedict.eid.applet.service.AppletServiceServlet;
 import be.fedict.eid.applet.service.EIdData;
 import be.fedict.eid.applet.service.Identity;
 import be.fedict.eid.applet.service.impl.RequestContext;
+import be.fedict.eid.applet.service.impl.ServiceLocator;
+import be.fedict.eid.applet.service.impl.handler.AuthenticationDataMessageHandler;
 import be.fedict.eid.applet.service.impl.handler.IdentityDataMessageHandler;
 import be.fedict.eid.applet.service.spi.IdentityIntegrityService;
 import be.fedict.eid.applet.shared.IdentityDataMessage;
@@ -117,6 +119,17 @@ public class IdentityDataMessageHandlerTest {
 		message.idFile = idFile;
 
 		// prepare
+		EasyMock.expect(
+				mockServletConfig.getInitParameter(EasyMock.endsWith("Cache")))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CERTIFICATE_VALIDATION_CACHE_TTL_INIT_PARAM_NAME))
+				.andStubReturn(null);
 		EasyMock.replay(mockServletConfig, mockHttpSession, mockServletRequest);
 
 		// operate
@@ -207,6 +220,17 @@ public class IdentityDataMessageHandlerTest {
 		message.rootCertFile = rootCertificate.getEncoded();
 
 		// prepare
+		EasyMock.expect(
+				mockServletConfig.getInitParameter(EasyMock.endsWith("Cache")))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CERTIFICATE_VALIDATION_CACHE_TTL_INIT_PARAM_NAME))
+				.andStubReturn(null);
 		EasyMock.replay(mockServletConfig, mockHttpSession, mockServletRequest);
 
 		// operate
@@ -287,6 +311,17 @@ public class IdentityDataMessageHandlerTest {
 		message.rrnCertFile = certificate.getEncoded();
 
 		// prepare
+		EasyMock.expect(
+				mockServletConfig.getInitParameter(EasyMock.endsWith("Cache")))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CERTIFICATE_VALIDATION_CACHE_TTL_INIT_PARAM_NAME))
+				.andStubReturn(null);
 		EasyMock.replay(mockServletConfig, mockHttpSession, mockServletRequest);
 
 		// operate
@@ -368,6 +403,17 @@ public class IdentityDataMessageHandlerTest {
 		message.rrnCertFile = certificate.getEncoded();
 
 		// prepare
+		EasyMock.expect(
+				mockServletConfig.getInitParameter(EasyMock.endsWith("Cache")))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(AuthenticationDataMessageHandler.CERTIFICATE_VALIDATION_CACHE_TTL_INIT_PARAM_NAME))
+				.andStubReturn(null);
 		EasyMock.replay(mockServletConfig, mockHttpSession, mockServletRequest);
 
 		// operate
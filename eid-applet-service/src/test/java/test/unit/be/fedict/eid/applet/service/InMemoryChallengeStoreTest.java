@@ -0,0 +1,88 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import be.fedict.eid.applet.service.impl.InMemoryChallengeStore;
+import be.fedict.eid.applet.service.spi.ChallengeStore;
+
+public class InMemoryChallengeStoreTest {
+
+	@Test
+	public void testStoreAndConsume() throws Exception {
+		// setup
+		ChallengeStore store = new InMemoryChallengeStore();
+		byte[] challenge = "challenge".getBytes();
+
+		// operate
+		store.storeChallenge("session-1", challenge);
+		byte[] result = store.consumeChallenge("session-1", 1000 * 60);
+
+		// verify
+		assertArrayEquals(challenge, result);
+		assertNull(store.consumeChallenge("session-1", 1000 * 60));
+		assertNull(store.consumeChallenge("session-2", 1000 * 60));
+	}
+
+	@Test
+	public void testOverwrite() throws Exception {
+		// setup
+		ChallengeStore store = new InMemoryChallengeStore();
+		store.storeChallenge("session", "challenge-1".getBytes());
+
+		// operate
+		store.storeChallenge("session", "challenge-2".getBytes());
+
+		// verify
+		assertArrayEquals("challenge-2".getBytes(), store.consumeChallenge(
+				"session", 1000 * 60));
+		assertNull(store.consumeChallenge("session", 1000 * 60));
+	}
+
+	@Test
+	public void testMaxMaturity() throws Exception {
+		// setup
+		ChallengeStore store = new InMemoryChallengeStore();
+		store.storeChallenge("session", "challenge".getBytes());
+		Thread.sleep(10);
+
+		// operate & verify
+		assertNull(store.consumeChallenge("session", 1));
+	}
+
+	@Test
+	public void testConsumeRemovesFromAllBuckets() throws Exception {
+		// setup
+		ChallengeStore store = new InMemoryChallengeStore(4);
+		store.storeChallenge("session", "challenge".getBytes());
+		Thread.sleep(2);
+		store.storeChallenge("other-session", "challenge".getBytes());
+
+		// operate
+		byte[] result = store.consumeChallenge("session", 1000 * 60);
+
+		// verify
+		assertArrayEquals("challenge".getBytes(), result);
+		assertNull(store.consumeChallenge("session", 1000 * 60));
+	}
+}
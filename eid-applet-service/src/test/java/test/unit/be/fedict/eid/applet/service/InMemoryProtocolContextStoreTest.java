@@ -0,0 +1,86 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import be.fedict.eid.applet.service.impl.DetachedProtocolContext;
+import be.fedict.eid.applet.service.impl.InMemoryProtocolContextStore;
+import be.fedict.eid.applet.service.impl.RequestContext;
+import be.fedict.eid.applet.service.spi.ProtocolContextStore;
+import be.fedict.eid.applet.shared.protocol.ProtocolState;
+
+public class InMemoryProtocolContextStoreTest {
+
+	@Test
+	public void testStoreAndLoad() throws Exception {
+		// setup
+		ProtocolContextStore store = new InMemoryProtocolContextStore();
+		DetachedProtocolContext protocolContext = new DetachedProtocolContext();
+		protocolContext.setProtocolState(ProtocolState.IDENTIFY);
+		protocolContext.setAttribute(
+				RequestContext.INCLUDE_ADDRESS_SESSION_ATTRIBUTE, true);
+
+		// operate
+		store.setProtocolContext("session-1", protocolContext.toMap());
+		Map<String, Object> resultMap = store.getProtocolContext("session-1");
+
+		// verify
+		DetachedProtocolContext result = DetachedProtocolContext
+				.fromMap(resultMap);
+		assertEquals(ProtocolState.IDENTIFY, result.getProtocolState());
+		assertEquals(Boolean.TRUE, result
+				.getAttribute(RequestContext.INCLUDE_ADDRESS_SESSION_ATTRIBUTE));
+		assertNull(store.getProtocolContext("session-2"));
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		// setup
+		ProtocolContextStore store = new InMemoryProtocolContextStore();
+		DetachedProtocolContext protocolContext = new DetachedProtocolContext();
+		protocolContext.setProtocolState(ProtocolState.SIGN);
+		store.setProtocolContext("session", protocolContext.toMap());
+
+		// operate
+		store.removeProtocolContext("session");
+
+		// verify
+		assertNull(store.getProtocolContext("session"));
+	}
+
+	@Test
+	public void testExpiry() throws Exception {
+		// setup
+		ProtocolContextStore store = new InMemoryProtocolContextStore(-1);
+		DetachedProtocolContext protocolContext = new DetachedProtocolContext();
+		protocolContext.setProtocolState(ProtocolState.AUTHENTICATE);
+
+		// operate
+		store.setProtocolContext("session", protocolContext.toMap());
+
+		// verify
+		assertNull(store.getProtocolContext("session"));
+	}
+}
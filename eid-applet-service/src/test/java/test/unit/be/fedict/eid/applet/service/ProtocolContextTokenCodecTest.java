@@ -0,0 +1,237 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import be.fedict.eid.applet.service.impl.AuthenticationChallenge;
+import be.fedict.eid.applet.service.impl.DetachedProtocolContextHttpSession;
+import be.fedict.eid.applet.service.impl.ProtocolContextTokenCodec;
+import be.fedict.eid.applet.service.impl.RequestContext;
+import be.fedict.eid.applet.service.impl.DetachedProtocolContext;
+import be.fedict.eid.applet.service.impl.handler.SignatureDataMessageHandler;
+import be.fedict.eid.applet.shared.protocol.ProtocolState;
+
+public class ProtocolContextTokenCodecTest {
+
+	private static final Log LOG = LogFactory
+			.getLog(ProtocolContextTokenCodecTest.class);
+
+	private static final String SECRET = "123456789ABCDEF0123456789ABCDEF0";
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		// setup
+		ProtocolContextTokenCodec codec = new ProtocolContextTokenCodec(
+				SECRET, ProtocolContextTokenCodec.DEFAULT_MAX_AGE);
+		DetachedProtocolContext protocolContext = new DetachedProtocolContext();
+		protocolContext.setProtocolState(ProtocolState.AUTHENTICATE);
+		HttpTestSession session = new HttpTestSession();
+		byte[] challenge = AuthenticationChallenge.generateChallenge(session);
+		protocolContext.setAttribute(
+				AuthenticationChallenge.AUTHN_CHALLENGE_SESSION_ATTRIBUTE,
+				session.getAttribute(AuthenticationChallenge.AUTHN_CHALLENGE_SESSION_ATTRIBUTE));
+		byte[] digestValue = "digest-value".getBytes();
+		protocolContext.setAttribute(
+				RequestContext.INCLUDE_PHOTO_SESSION_ATTRIBUTE, true);
+		protocolContext.setAttribute(
+				SignatureDataMessageHandler.DIGEST_VALUE_SESSION_ATTRIBUTE,
+				digestValue);
+		protocolContext.setAttribute(
+				SignatureDataMessageHandler.DIGEST_ALGO_SESSION_ATTRIBUTE,
+				"SHA-1");
+
+		// operate
+		String token = codec.encode(protocolContext);
+		DetachedProtocolContext result = codec.decode(token);
+
+		// verify
+		LOG.debug("token: " + token);
+		LOG.debug("token size: " + token.length());
+		HttpTestSession resultSession = new HttpTestSession();
+		resultSession
+				.setAttribute(
+						AuthenticationChallenge.AUTHN_CHALLENGE_SESSION_ATTRIBUTE,
+						result.getAttribute(AuthenticationChallenge.AUTHN_CHALLENGE_SESSION_ATTRIBUTE));
+		assertArrayEquals(challenge, AuthenticationChallenge
+				.getAuthnChallenge(resultSession));
+		assertEquals(ProtocolState.AUTHENTICATE, result.getProtocolState());
+		assertEquals(Boolean.TRUE, result
+				.getAttribute(RequestContext.INCLUDE_PHOTO_SESSION_ATTRIBUTE));
+		assertNull(result
+				.getAttribute(RequestContext.INCLUDE_ADDRESS_SESSION_ATTRIBUTE));
+		assertArrayEquals(digestValue, (byte[]) result
+				.getAttribute(SignatureDataMessageHandler.DIGEST_VALUE_SESSION_ATTRIBUTE));
+		assertEquals("SHA-1", result
+				.getAttribute(SignatureDataMessageHandler.DIGEST_ALGO_SESSION_ATTRIBUTE));
+	}
+
+	@Test
+	public void testNoToken() throws Exception {
+		// setup
+		ProtocolContextTokenCodec codec = new ProtocolContextTokenCodec(
+				SECRET, ProtocolContextTokenCodec.DEFAULT_MAX_AGE);
+
+		// operate
+		DetachedProtocolContext result = codec.decode(null);
+
+		// verify
+		assertTrue(result.isEmpty());
+	}
+
+	@Test
+	public void testTamperedToken() throws Exception {
+		// setup
+		ProtocolContextTokenCodec codec = new ProtocolContextTokenCodec(
+				SECRET, ProtocolContextTokenCodec.DEFAULT_MAX_AGE);
+		DetachedProtocolContext protocolContext = new DetachedProtocolContext();
+		protocolContext.setProtocolState(ProtocolState.IDENTIFY);
+		String token = codec.encode(protocolContext);
+		ProtocolContextTokenCodec otherCodec = new ProtocolContextTokenCodec(
+				"0123456789ABCDEF0123456789ABCDEF", Long.MAX_VALUE);
+
+		// operate & verify
+		try {
+			otherCodec.decode(token);
+			fail();
+		} catch (SecurityException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testExpiredToken() throws Exception {
+		// setup
+		ProtocolContextTokenCodec codec = new ProtocolContextTokenCodec(
+				SECRET, -1);
+		DetachedProtocolContext protocolContext = new DetachedProtocolContext();
+		protocolContext.setProtocolState(ProtocolState.SIGN);
+		String token = codec.encode(protocolContext);
+
+		// operate & verify
+		try {
+			codec.decode(token);
+			fail();
+		} catch (SecurityException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testReplayedToken() throws Exception {
+		// setup
+		ProtocolContextTokenCodec codec = new ProtocolContextTokenCodec(
+				SECRET, ProtocolContextTokenCodec.DEFAULT_MAX_AGE);
+		DetachedProtocolContext protocolContext = new DetachedProtocolContext();
+		protocolContext.setProtocolState(ProtocolState.IDENTIFY);
+		String token = codec.encode(protocolContext);
+		codec.decode(token);
+
+		// operate & verify
+		try {
+			codec.decode(token);
+			fail();
+		} catch (SecurityException e) {
+			// expected
+			LOG.debug("expected exception: " + e.getMessage());
+		}
+	}
+
+	@Test
+	public void testProtocolRunId() throws Exception {
+		// setup
+		ProtocolContextTokenCodec codec = new ProtocolContextTokenCodec(
+				SECRET, ProtocolContextTokenCodec.DEFAULT_MAX_AGE);
+
+		// operate
+		DetachedProtocolContext protocolContext = codec.decode(null);
+		protocolContext.setProtocolState(ProtocolState.IDENTIFY);
+		DetachedProtocolContext result = codec.decode(codec
+				.encode(protocolContext));
+		DetachedProtocolContext nextResult = codec.decode(codec.encode(result));
+		DetachedProtocolContext otherProtocolContext = codec.decode(null);
+
+		// verify
+		assertNotNull(protocolContext.getProtocolRunId());
+		assertEquals(protocolContext.getProtocolRunId(),
+				result.getProtocolRunId());
+		assertEquals(protocolContext.getProtocolRunId(),
+				nextResult.getProtocolRunId());
+		assertFalse(protocolContext.getProtocolRunId().equals(
+				otherProtocolContext.getProtocolRunId()));
+	}
+
+	@Test
+	public void testConsumedChallengeNotInNextToken() throws Exception {
+		// setup
+		ProtocolContextTokenCodec codec = new ProtocolContextTokenCodec(
+				SECRET, ProtocolContextTokenCodec.DEFAULT_MAX_AGE);
+		HttpServletRequest mockRequest = EasyMock
+				.createMock(HttpServletRequest.class);
+		DetachedProtocolContext protocolContext = codec.decode(null);
+		protocolContext.setProtocolState(ProtocolState.AUTHENTICATE);
+		byte[] challenge = AuthenticationChallenge
+				.generateChallenge(new DetachedProtocolContextHttpSession(
+						protocolContext, mockRequest));
+		DetachedProtocolContext result = codec.decode(codec
+				.encode(protocolContext));
+
+		// prepare
+		EasyMock.replay(mockRequest);
+
+		// operate
+		byte[] resultChallenge = AuthenticationChallenge
+				.getAuthnChallenge(new DetachedProtocolContextHttpSession(
+						result, mockRequest));
+		DetachedProtocolContext nextResult = codec.decode(codec.encode(result));
+
+		// verify
+		EasyMock.verify(mockRequest);
+		assertArrayEquals(challenge, resultChallenge);
+		assertNull(nextResult
+				.getAttribute(AuthenticationChallenge.AUTHN_CHALLENGE_SESSION_ATTRIBUTE));
+	}
+
+	@Test
+	public void testNonProtocolAttribute() throws Exception {
+		// setup
+		DetachedProtocolContext protocolContext = new DetachedProtocolContext();
+
+		// operate & verify
+		try {
+			protocolContext.setAttribute("foobar", "value");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.service;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import javax.servlet.ServletConfig;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import be.fedict.eid.applet.service.impl.ServiceLocator;
+
+public class ServiceLocatorTest {
+
+	@Test
+	public void testCachedService() throws Exception {
+		// setup
+		ServletConfig mockServletConfig = EasyMock
+				.createMock(ServletConfig.class);
+		EasyMock.expect(mockServletConfig.getInitParameter("TestService"))
+				.andReturn(null);
+		EasyMock.expect(mockServletConfig.getInitParameter("TestServiceClass"))
+				.andReturn(TestService.class.getName());
+		EasyMock.expect(mockServletConfig.getInitParameter("TestServiceCache"))
+				.andReturn("true");
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andReturn(null);
+
+		// prepare
+		EasyMock.replay(mockServletConfig);
+
+		// operate
+		ServiceLocator<TestService> serviceLocator = new ServiceLocator<TestService>(
+				"TestService", mockServletConfig);
+		TestService result1 = serviceLocator.locateService();
+		TestService result2 = serviceLocator.locateService();
+
+		// verify
+		EasyMock.verify(mockServletConfig);
+		assertNotNull(result1);
+		assertSame(result1, result2);
+	}
+
+	@Test
+	public void testNotCachedByDefault() throws Exception {
+		// setup
+		ServletConfig mockServletConfig = EasyMock
+				.createMock(ServletConfig.class);
+		EasyMock.expect(mockServletConfig.getInitParameter("TestService"))
+				.andReturn(null);
+		EasyMock.expect(mockServletConfig.getInitParameter("TestServiceClass"))
+				.andReturn(TestService.class.getName());
+		EasyMock.expect(mockServletConfig.getInitParameter("TestServiceCache"))
+				.andReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andReturn(null);
+
+		// prepare
+		EasyMock.replay(mockServletConfig);
+
+		// operate
+		ServiceLocator<TestService> serviceLocator = new ServiceLocator<TestService>(
+				"TestService", mockServletConfig);
+		TestService result1 = serviceLocator.locateService();
+		TestService result2 = serviceLocator.locateService();
+
+		// verify
+		EasyMock.verify(mockServletConfig);
+		assertNotSame(result1, result2);
+	}
+
+	@Test
+	public void testExpiredCache() throws Exception {
+		// setup
+		ServletConfig mockServletConfig = EasyMock
+				.createMock(ServletConfig.class);
+		EasyMock.expect(mockServletConfig.getInitParameter("TestService"))
+				.andReturn(null);
+		EasyMock.expect(mockServletConfig.getInitParameter("TestServiceClass"))
+				.andReturn(TestService.class.getName());
+		EasyMock.expect(mockServletConfig.getInitParameter("TestServiceCache"))
+				.andReturn("true");
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andReturn("0");
+
+		// prepare
+		EasyMock.replay(mockServletConfig);
+
+		// operate
+		ServiceLocator<TestService> serviceLocator = new ServiceLocator<TestService>(
+				"TestService", mockServletConfig);
+		TestService result1 = serviceLocator.locateService();
+		Thread.sleep(1);
+		TestService result2 = serviceLocator.locateService();
+
+		// verify
+		EasyMock.verify(mockServletConfig);
+		assertNotSame(result1, result2);
+	}
+
+	@Test
+	public void testNotConfigured() throws Exception {
+		// setup
+		ServletConfig mockServletConfig = EasyMock
+				.createMock(ServletConfig.class);
+		EasyMock.expect(mockServletConfig.getInitParameter("TestService"))
+				.andReturn(null);
+		EasyMock.expect(mockServletConfig.getInitParameter("TestServiceClass"))
+				.andReturn(null);
+
+		// prepare
+		EasyMock.replay(mockServletConfig);
+
+		// operate
+		ServiceLocator<TestService> serviceLocator = new ServiceLocator<TestService>(
+				"TestService", mockServletConfig);
+		TestService result = serviceLocator.locateService();
+
+		// verify
+		EasyMock.verify(mockServletConfig);
+		assertNull(result);
+	}
+
+	public static class TestService {
+	}
+}
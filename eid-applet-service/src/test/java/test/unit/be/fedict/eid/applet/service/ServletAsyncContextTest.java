@@ -0,0 +1,51 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.service;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import be.fedict.eid.applet.service.impl.ServletAsyncContext;
+
+public class ServletAsyncContextTest {
+
+	@Test
+	public void testServlet24Container() throws Exception {
+		// setup
+		HttpServletRequest mockHttpServletRequest = EasyMock
+				.createMock(HttpServletRequest.class);
+
+		// prepare
+		EasyMock.replay(mockHttpServletRequest);
+
+		// operate
+		ServletAsyncContext result = ServletAsyncContext.startAsync(
+				mockHttpServletRequest, 1000);
+
+		// verify
+		EasyMock.verify(mockHttpServletRequest);
+		assertFalse(ServletAsyncContext.isAvailable());
+		assertNull(result);
+	}
+}
@@ -49,6 +49,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import be.fedict.eid.applet.service.AppletServiceServlet;
+import be.fedict.eid.applet.service.impl.ServiceLocator;
 import be.fedict.eid.applet.service.impl.handler.SignatureDataMessageHandler;
 import be.fedict.eid.applet.service.spi.AddressDTO;
 import be.fedict.eid.applet.service.spi.DigestInfo;
@@ -124,6 +125,13 @@ public class SignatureDataMessageHandlerTest {
 		message.signatureValue = signatureValue;
 
 		// prepare
+		EasyMock.expect(
+				mockServletConfig.getInitParameter(EasyMock.endsWith("Cache")))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andStubReturn(null);
 		EasyMock.replay(mockServletConfig, mockHttpSession, mockServletRequest);
 
 		// operate
@@ -188,6 +196,13 @@ public class SignatureDataMessageHandlerTest {
 		message.signatureValue = signatureValue;
 
 		// prepare
+		EasyMock.expect(
+				mockServletConfig.getInitParameter(EasyMock.endsWith("Cache")))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andStubReturn(null);
 		EasyMock.replay(mockServletConfig, mockHttpSession, mockServletRequest);
 
 		// operate
@@ -252,6 +267,13 @@ public class SignatureDataMessageHandlerTest {
 		message.signatureValue = signatureValue;
 
 		// prepare
+		EasyMock.expect(
+				mockServletConfig.getInitParameter(EasyMock.endsWith("Cache")))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andStubReturn(null);
 		EasyMock.replay(mockServletConfig, mockHttpSession, mockServletRequest);
 
 		// operate
@@ -316,6 +338,13 @@ public class SignatureDataMessageHandlerTest {
 		message.signatureValue = signatureValue;
 
 		// prepare
+		EasyMock.expect(
+				mockServletConfig.getInitParameter(EasyMock.endsWith("Cache")))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andStubReturn(null);
 		EasyMock.replay(mockServletConfig, mockHttpSession, mockServletRequest);
 
 		// operate
@@ -384,6 +413,13 @@ public class SignatureDataMessageHandlerTest {
 		message.signatureValue = signatureValue;
 
 		// prepare
+		EasyMock.expect(
+				mockServletConfig.getInitParameter(EasyMock.endsWith("Cache")))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockServletConfig
+						.getInitParameter(ServiceLocator.CACHE_TTL_INIT_PARAM))
+				.andStubReturn(null);
 		EasyMock.replay(mockServletConfig, mockHttpSession, mockServletRequest);
 
 		// operate
@@ -165,4 +165,28 @@ public class UserIdentifierUtilTest {
 				.getNonReversibleCitizenIdentifier(userId1, orgId, appId
 						+ "foobar", secret)));
 	}
+
+	@Test
+	public void testNRCIDHmacSHA256() throws Exception {
+		// setup
+		String userId = "1234";
+		String orgId = "fedict";
+		String appId = "eid-applet-unit-test";
+		String secret = "123456789ABCDEF0123456789ABCDEF0123456789ABCDEF0123456789ABCDEF0";
+
+		// operate
+		String result = UserIdentifierUtil.getNonReversibleCitizenIdentifier(
+				userId, orgId, appId, secret,
+				UserIdentifierUtil.HMAC_SHA256_ALGO);
+		String resultb = UserIdentifierUtil.getNonReversibleCitizenIdentifier(
+				userId, orgId, appId, secret,
+				UserIdentifierUtil.HMAC_SHA256_ALGO);
+		String sha1Result = UserIdentifierUtil
+				.getNonReversibleCitizenIdentifier(userId, orgId, appId, secret);
+
+		// verify
+		assertEquals(256 / 4, result.length());
+		assertEquals(result, resultb);
+		assertFalse(result.equals(sha1Result));
+	}
 }
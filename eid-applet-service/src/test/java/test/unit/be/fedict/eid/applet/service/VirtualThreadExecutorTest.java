@@ -0,0 +1,63 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.service;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+import be.fedict.eid.applet.service.impl.VirtualThreadExecutor;
+
+public class VirtualThreadExecutorTest {
+
+	private static final Log LOG = LogFactory
+			.getLog(VirtualThreadExecutorTest.class);
+
+	@Test
+	public void testExecute() throws Exception {
+		// setup
+		VirtualThreadExecutor executor;
+		try {
+			executor = new VirtualThreadExecutor();
+		} catch (IllegalStateException e) {
+			LOG.debug("no virtual threads on this Java runtime");
+			return;
+		}
+		final CountDownLatch countDownLatch = new CountDownLatch(1);
+		final String[] threadName = new String[1];
+
+		// operate
+		executor.execute(new Runnable() {
+
+			public void run() {
+				threadName[0] = Thread.currentThread().getName();
+				countDownLatch.countDown();
+			}
+		});
+
+		// verify
+		assertTrue(countDownLatch.await(10, TimeUnit.SECONDS));
+		assertTrue(threadName[0].startsWith("eid-applet-service-virtual-"));
+	}
+}
@@ -18,10 +18,12 @@
 
 package be.fedict.eid.applet.shared;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.Signature;
+import java.security.SignatureException;
 
 /**
  * Authentication Contract class.
@@ -72,6 +74,13 @@ public class AuthenticationContract {
 	public static final String LEGAL_NOTICE = "Declaration of authentication intension.\n"
 			+ "The following data should be interpreted as an authentication challenge.\n";
 
+	private static final byte[] ENCODED_LEGAL_NOTICE = LEGAL_NOTICE.getBytes();
+
+	/**
+	 * Size of the tag and of the length field of a TLV entry.
+	 */
+	private static final int TAG_LENGTH_SIZE = 4 + 4;
+
 	private final byte[] sessionId;
 
 	private final byte[] encodedServerCertificate;
@@ -104,12 +113,69 @@ public class AuthenticationContract {
 	}
 
 	public byte[] calculateToBeSigned() throws IOException {
-		ByteArrayOutputStream toBeSignedOutputStream = new ByteArrayOutputStream();
+		byte[] toBeSigned = new byte[getToBeSignedLength()];
+		writeToBeSigned(ByteBuffer.wrap(toBeSigned));
+		return toBeSigned;
+	}
+
+	/**
+	 * Gives back the exact size of the data to be signed.
+	 * 
+	 * @return
+	 */
+	public int getToBeSignedLength() {
+		LengthTagWriter lengthTagWriter = new LengthTagWriter();
+		writeTags(lengthTagWriter);
+		return lengthTagWriter.length;
+	}
+
+	/**
+	 * Writes the data to be signed into the given buffer. The TLV entries are
+	 * always written in big-endian byte order. The byte order of the buffer is
+	 * left unchanged.
+	 * 
+	 * @param buffer
+	 *            should have at least {@link #getToBeSignedLength()} bytes
+	 *            remaining.
+	 */
+	public void writeToBeSigned(ByteBuffer buffer) {
+		ByteOrder byteOrder = buffer.order();
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		try {
+			writeTags(new ByteBufferTagWriter(buffer));
+		} finally {
+			buffer.order(byteOrder);
+		}
+	}
+
+	/**
+	 * Feeds the data to be signed directly into the given signature engine,
+	 * without materializing the data to be signed.
+	 * 
+	 * @param signature
+	 *            the initialized signature engine.
+	 * @throws SignatureException
+	 */
+	public void update(Signature signature) throws SignatureException {
+		SignatureTagWriter signatureTagWriter = new SignatureTagWriter(
+				signature);
+		writeTags(signatureTagWriter);
+		if (null != signatureTagWriter.signatureException) {
+			throw signatureTagWriter.signatureException;
+		}
+	}
+
+	/**
+	 * The TLV layout of the data to be signed.
+	 * 
+	 * @param tagWriter
+	 */
+	private void writeTags(TagWriter tagWriter) {
 		/*
 		 * Salting prevents that we sign a document digest directly instead of
 		 * some meaningless challenge.
 		 */
-		writeTag(SALT_TAG, this.salt, toBeSignedOutputStream);
+		tagWriter.writeTag(SALT_TAG, this.salt);
 
 		if (null != this.hostname) {
 			/*
@@ -118,56 +184,101 @@ public class AuthenticationContract {
 			 * trusted but that have been compromised. If at the same time the
 			 * DNS is also attacked, well then everything is lost anyway.
 			 */
-			writeTag(HOSTNAME_TAG, this.hostname.getBytes(),
-					toBeSignedOutputStream);
+			tagWriter.writeTag(HOSTNAME_TAG, this.hostname.getBytes());
 		}
 		if (null != this.inetAddress) {
 			byte[] address = this.inetAddress.getAddress();
-			writeTag(INET_ADDRESS_TAG, address, toBeSignedOutputStream);
+			tagWriter.writeTag(INET_ADDRESS_TAG, address);
 		}
 		/*
 		 * Next is to prevent abuse of the challenge in the context of a digital
 		 * signature claim on this cryptographic authentication signature.
 		 */
-		writeTag(LEGAL_NOTICE_TAG, LEGAL_NOTICE.getBytes(),
-				toBeSignedOutputStream);
+		tagWriter.writeTag(LEGAL_NOTICE_TAG, ENCODED_LEGAL_NOTICE);
 		if (null != this.sessionId) {
-			writeTag(SESSION_ID_TAG, this.sessionId, toBeSignedOutputStream);
+			tagWriter.writeTag(SESSION_ID_TAG, this.sessionId);
 		}
 		if (null != this.encodedServerCertificate) {
-			writeTag(ENCODED_SERVER_CERTIFICATE_TAG,
-					this.encodedServerCertificate, toBeSignedOutputStream);
+			tagWriter.writeTag(ENCODED_SERVER_CERTIFICATE_TAG,
+					this.encodedServerCertificate);
 		}
 		/*
 		 * Of course we also digest the challenge as the server needs some mean
 		 * to authenticate us.
 		 */
-		writeTag(CHALLENGE_TAG, this.challenge, toBeSignedOutputStream);
-		byte[] toBeSigned = toBeSignedOutputStream.toByteArray();
-		return toBeSigned;
+		tagWriter.writeTag(CHALLENGE_TAG, this.challenge);
 	}
 
 	/**
-	 * Write a 32-bit TLV entry to the given output stream.
-	 * 
-	 * @param tag
-	 * @param value
-	 * @param outputStream
-	 * @throws IOException
+	 * Receives the 32-bit TLV entries of the data to be signed.
 	 */
-	private void writeTag(int tag, byte[] value, OutputStream outputStream)
-			throws IOException {
-		outputStream.write(intToByteArray(tag));
-		if (null == value) {
-			outputStream.write(intToByteArray(0));
-		} else {
-			outputStream.write(intToByteArray(value.length));
-			outputStream.write(value);
+	private interface TagWriter {
+
+		void writeTag(int tag, byte[] value);
+	}
+
+	private static final class LengthTagWriter implements TagWriter {
+
+		private int length;
+
+		public void writeTag(int tag, byte[] value) {
+			this.length += TAG_LENGTH_SIZE;
+			if (null != value) {
+				this.length += value.length;
+			}
 		}
 	}
 
-	private byte[] intToByteArray(int value) {
-		return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16),
-				(byte) (value >>> 8), (byte) value };
+	private static final class ByteBufferTagWriter implements TagWriter {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferTagWriter(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public void writeTag(int tag, byte[] value) {
+			this.buffer.putInt(tag);
+			if (null == value) {
+				this.buffer.putInt(0);
+			} else {
+				this.buffer.putInt(value.length);
+				this.buffer.put(value);
+			}
+		}
+	}
+
+	private static final class SignatureTagWriter implements TagWriter {
+
+		private final Signature signature;
+
+		/*
+		 * Scratch buffer for the tag and the length field of every entry.
+		 */
+		private final ByteBuffer tagLength = ByteBuffer
+				.allocate(TAG_LENGTH_SIZE);
+
+		private SignatureException signatureException;
+
+		SignatureTagWriter(Signature signature) {
+			this.signature = signature;
+		}
+
+		public void writeTag(int tag, byte[] value) {
+			if (null != this.signatureException) {
+				return;
+			}
+			try {
+				this.tagLength.clear();
+				this.tagLength.putInt(tag);
+				this.tagLength.putInt(null == value ? 0 : value.length);
+				this.signature.update(this.tagLength.array());
+				if (null != value) {
+					this.signature.update(value);
+				}
+			} catch (SignatureException e) {
+				this.signatureException = e;
+			}
+		}
 	}
 }
@@ -19,15 +19,13 @@
 
 package be.fedict.eid.applet.shared;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.security.cert.CertificateEncodingException;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.List;
 
+import be.fedict.eid.applet.shared.annotation.CompressibleBody;
 import be.fedict.eid.applet.shared.annotation.HttpBody;
 import be.fedict.eid.applet.shared.annotation.HttpHeader;
 import be.fedict.eid.applet.shared.annotation.MessageDiscriminator;
@@ -45,6 +43,7 @@ import be.fedict.eid.applet.shared.protocol.ProtocolState;
  */
 @ResponsesAllowed({ FinishedMessage.class, AuthSignRequestMessage.class })
 @ProtocolStateAllowed(ProtocolState.AUTHENTICATE)
+@CompressibleBody
 public class AuthenticationDataMessage extends AbstractProtocolMessage {
 	@HttpHeader(TYPE_HTTP_HEADER)
 	@MessageDiscriminator
@@ -209,112 +208,63 @@ public class AuthenticationDataMessage extends AbstractProtocolMessage {
 				transactionMessageSignature);
 	}
 
-	private byte[] copy(byte[] source, int idx, int count) {
-		byte[] result = new byte[count];
-		System.arraycopy(source, idx, result, 0, count);
-		return result;
-	}
-
 	@PostConstruct
 	public void postConstruct() {
-		int idx = 0;
+		BodyReader bodyReader = new BodyReader(this.body);
 		if (0 == this.saltValueSize) {
 			throw new RuntimeException("salt bytes required");
 		}
-		this.saltValue = copy(this.body, idx, this.saltValueSize);
-		idx += this.saltValueSize;
+		this.saltValue = bodyReader.copy(this.saltValueSize);
 
 		if (null != this.sessionIdSize) {
-			this.sessionId = copy(this.body, idx, this.sessionIdSize);
-			idx += this.sessionIdSize;
+			this.sessionId = bodyReader.copy(this.sessionIdSize);
 		}
 
-		this.signatureValue = copy(this.body, idx, this.signatureValueSize);
-		idx += this.signatureValueSize;
-
-		byte[] authnCertFile = copy(this.body, idx, this.authnCertFileSize);
-		idx += this.authnCertFileSize;
-		this.authnCert = getCertificate(authnCertFile);
-
-		byte[] citizenCaCertFile = copy(this.body, idx, this.caCertFileSize);
-		idx += this.caCertFileSize;
-		this.citizenCaCert = getCertificate(citizenCaCertFile);
+		this.signatureValue = bodyReader.copy(this.signatureValueSize);
 
-		byte[] rootCaCertFile = copy(this.body, idx, this.rootCertFileSize);
-		idx += this.rootCertFileSize;
-		this.rootCaCert = getCertificate(rootCaCertFile);
+		this.authnCert = bodyReader.certificate(this.authnCertFileSize);
+		this.citizenCaCert = bodyReader.sharedCertificate(this.caCertFileSize);
+		this.rootCaCert = bodyReader.sharedCertificate(this.rootCertFileSize);
 
 		if (null != this.signCertFileSize) {
-			byte[] signCertFile = copy(this.body, idx, this.signCertFileSize);
-			idx += this.signCertFileSize;
-			this.signCert = getCertificate(signCertFile);
+			this.signCert = bodyReader.certificate(this.signCertFileSize);
 		}
 
 		if (null != this.identityFileSize) {
-			this.identityData = copy(this.body, idx, this.identityFileSize);
-			idx += this.identityFileSize;
+			this.identityData = bodyReader.copy(this.identityFileSize);
 		}
 
 		if (null != this.addressFileSize) {
-			this.addressData = copy(this.body, idx, this.addressFileSize);
-			idx += this.addressFileSize;
+			this.addressData = bodyReader.copy(this.addressFileSize);
 		}
 
 		if (null != this.photoFileSize) {
-			this.photoData = copy(this.body, idx, this.photoFileSize);
-			idx += this.photoFileSize;
+			this.photoData = bodyReader.copy(this.photoFileSize);
 		}
 
 		if (null != this.identitySignatureFileSize) {
-			this.identitySignatureData = copy(this.body, idx,
-					this.identitySignatureFileSize);
-			idx += this.identitySignatureFileSize;
+			this.identitySignatureData = bodyReader
+					.copy(this.identitySignatureFileSize);
 		}
 
 		if (null != this.addressSignatureFileSize) {
-			this.addressSignatureData = copy(this.body, idx,
-					this.addressSignatureFileSize);
-			idx += this.addressSignatureFileSize;
+			this.addressSignatureData = bodyReader
+					.copy(this.addressSignatureFileSize);
 		}
 
 		if (null != this.rrnCertFileSize) {
-			byte[] rrnCertData = copy(this.body, idx, this.rrnCertFileSize);
-			this.rrnCertificate = getCertificate(rrnCertData);
-			idx += this.rrnCertFileSize;
+			this.rrnCertificate = bodyReader
+					.sharedCertificate(this.rrnCertFileSize);
 		}
 
 		if (null != this.serverCertFileSize) {
-			byte[] serverCertData = copy(this.body, idx,
-					this.serverCertFileSize);
-			this.serverCertificate = getCertificate(serverCertData);
-			idx += this.serverCertFileSize;
+			this.serverCertificate = bodyReader
+					.certificate(this.serverCertFileSize);
 		}
 
 		if (null != this.transactionMessageSignatureSize) {
-			this.transactionMessageSignature = copy(this.body, idx,
-					this.transactionMessageSignatureSize);
-			idx += this.transactionMessageSignatureSize;
-		}
-	}
-
-	private X509Certificate getCertificate(byte[] certData) {
-		CertificateFactory certificateFactory;
-		try {
-			certificateFactory = CertificateFactory.getInstance("X.509");
-		} catch (CertificateException e) {
-			throw new RuntimeException("cert factory error: " + e.getMessage(),
-					e);
-		}
-		try {
-			X509Certificate certificate = (X509Certificate) certificateFactory
-					.generateCertificate(new ByteArrayInputStream(certData));
-			return certificate;
-		} catch (CertificateException e) {
-			/*
-			 * Can happen in case of missing certificates. Missing certificates
-			 * are represented by means of 1300 null bytes.
-			 */
-			return null;
+			this.transactionMessageSignature = bodyReader
+					.copy(this.transactionMessageSignatureSize);
 		}
 	}
 
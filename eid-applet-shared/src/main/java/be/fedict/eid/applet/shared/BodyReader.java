@@ -0,0 +1,116 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.shared;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Sequential reader over the concatenated HTTP body of a protocol message.
+ * Certificates are parsed directly from the body, so only the parts that are
+ * exposed as <code>byte[]</code> fields get copied.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+class BodyReader {
+
+	private final byte[] body;
+
+	private int idx;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param body
+	 */
+	BodyReader(byte[] body) {
+		this.body = body;
+	}
+
+	/**
+	 * Gives back a copy of the next <code>count</code> bytes.
+	 * 
+	 * @param count
+	 * @return
+	 */
+	byte[] copy(int count) {
+		checkCount(count);
+		byte[] result = new byte[count];
+		System.arraycopy(this.body, this.idx, result, 0, count);
+		this.idx += count;
+		return result;
+	}
+
+	/**
+	 * Parses the next <code>count</code> bytes as X509 certificate, straight
+	 * from the body.
+	 * 
+	 * @param count
+	 * @return the certificate, or <code>null</code> in case of a missing
+	 *         certificate.
+	 */
+	X509Certificate certificate(int count) {
+		return certificate(count, false);
+	}
+
+	/**
+	 * Parses the next <code>count</code> bytes as X509 certificate that is
+	 * shared across eID cards, like a CA certificate.
+	 * 
+	 * @param count
+	 * @return the certificate, or <code>null</code> in case of a missing
+	 *         certificate.
+	 * @see CertificateParser#parseSharedCertificate(byte[], int, int)
+	 */
+	X509Certificate sharedCertificate(int count) {
+		return certificate(count, true);
+	}
+
+	private X509Certificate certificate(int count, boolean shared) {
+		checkCount(count);
+		int offset = this.idx;
+		this.idx += count;
+		try {
+			if (shared) {
+				return CertificateParser.parseSharedCertificate(this.body,
+						offset, count);
+			}
+			return CertificateParser.parseCertificate(this.body, offset, count);
+		} catch (CertificateException e) {
+			/*
+			 * Can happen in case of missing certificates. Missing certificates
+			 * are represented by means of 1300 null bytes.
+			 */
+			return null;
+		}
+	}
+
+	/*
+	 * The sizes come from HTTP headers, so cannot be trusted.
+	 */
+	private void checkCount(int count) {
+		if (count < 0) {
+			throw new IndexOutOfBoundsException("negative size: " + count);
+		}
+		if (count > this.body.length - this.idx) {
+			throw new IndexOutOfBoundsException("size exceeds body: " + count);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.shared;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * X509 certificate parser for the eID certificates within the protocol
+ * messages.
+ * 
+ * <p>
+ * The citizen CA, root CA and national registration certificates are the same
+ * on a large number of eID cards. Such shared certificates are interned,
+ * keyed by their encoded bytes, so that they only get parsed once. The number
+ * of interned certificates is bounded.
+ * </p>
+ * 
+ * <p>
+ * The CA certificate bytes are supplied by the eID Applet, so an attacker can
+ * churn the bounded intern cache with arbitrary certificates. The interning
+ * is therefore advisory only: callers must not rely on a certificate being
+ * interned, nor on identity comparisons of parsed certificates.
+ * </p>
+ * 
+ * <p>
+ * Every thread keeps its own certificate factory. The factory is a JRE class,
+ * so this does not pin the web application class loader.
+ * </p>
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class CertificateParser {
+
+	private static final int MAX_SHARED_CERTIFICATES = 64;
+
+	private static final ThreadLocal<CertificateFactory> certificateFactories = new ThreadLocal<CertificateFactory>();
+
+	private static final Map<ByteBuffer, X509Certificate> sharedCertificates = new LinkedHashMap<ByteBuffer, X509Certificate>(
+			16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<ByteBuffer, X509Certificate> eldest) {
+			return size() > MAX_SHARED_CERTIFICATES;
+		}
+	};
+
+	private CertificateParser() {
+		super();
+	}
+
+	/**
+	 * Parses the given X509 certificate.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @return
+	 * @throws CertificateException
+	 */
+	public static X509Certificate parseCertificate(byte[] data, int offset,
+			int length) throws CertificateException {
+		CertificateFactory certificateFactory = certificateFactories.get();
+		if (null == certificateFactory) {
+			certificateFactory = CertificateFactory.getInstance("X.509");
+			certificateFactories.set(certificateFactory);
+		}
+		return (X509Certificate) certificateFactory
+				.generateCertificate(new ByteArrayInputStream(data, offset,
+						length));
+	}
+
+	/**
+	 * Parses the given X509 certificate.
+	 * 
+	 * @param data
+	 * @return
+	 * @throws CertificateException
+	 */
+	public static X509Certificate parseCertificate(byte[] data)
+			throws CertificateException {
+		return parseCertificate(data, 0, data.length);
+	}
+
+	/**
+	 * Parses the given X509 certificate that is shared across eID cards. Gives
+	 * back the interned instance in case the same certificate has been parsed
+	 * before.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @return
+	 * @throws CertificateException
+	 */
+	public static X509Certificate parseSharedCertificate(byte[] data,
+			int offset, int length) throws CertificateException {
+		ByteBuffer key = ByteBuffer.wrap(data, offset, length);
+		synchronized (sharedCertificates) {
+			X509Certificate certificate = sharedCertificates.get(key);
+			if (null != certificate) {
+				return certificate;
+			}
+		}
+		X509Certificate certificate = parseCertificate(data, offset, length);
+		byte[] encoded = new byte[length];
+		System.arraycopy(data, offset, encoded, 0, length);
+		synchronized (sharedCertificates) {
+			sharedCertificates.put(ByteBuffer.wrap(encoded), certificate);
+		}
+		return certificate;
+	}
+
+	/**
+	 * Parses the given X509 certificate that is shared across eID cards.
+	 * 
+	 * @param data
+	 * @return
+	 * @throws CertificateException
+	 * @see #parseSharedCertificate(byte[], int, int)
+	 */
+	public static X509Certificate parseSharedCertificate(byte[] data)
+			throws CertificateException {
+		return parseSharedCertificate(data, 0, data.length);
+	}
+}
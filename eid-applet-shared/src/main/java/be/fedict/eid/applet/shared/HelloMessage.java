@@ -42,9 +42,35 @@ public class HelloMessage extends AbstractProtocolMessage {
 	@MessageDiscriminator
 	public static final String TYPE = HelloMessage.class.getSimpleName();
 
+	public static final String FRAMING_HTTP_HEADER = HTTP_HEADER_PREFIX
+			+ "Framing";
+
+	public static final String COMPRESSION_HTTP_HEADER = HTTP_HEADER_PREFIX
+			+ "Compression";
+
 	@HttpHeader(HTTP_HEADER_PREFIX + "Language")
 	public String language;
 
+	/**
+	 * The highest binary framing version supported by the eID Applet. The eID
+	 * Applet Service accepts the binary framing by returning the selected
+	 * version via the {@link #FRAMING_HTTP_HEADER} HTTP response header.
+	 * 
+	 * @see be.fedict.eid.applet.shared.protocol.BinaryFraming
+	 */
+	@HttpHeader(FRAMING_HTTP_HEADER)
+	public Integer framing;
+
+	/**
+	 * The HTTP body encoding supported by the eID Applet. The eID Applet
+	 * Service accepts compression by returning the selected encoding via the
+	 * {@link #COMPRESSION_HTTP_HEADER} HTTP response header.
+	 * 
+	 * @see be.fedict.eid.applet.shared.protocol.BodyEncoding
+	 */
+	@HttpHeader(COMPRESSION_HTTP_HEADER)
+	public String compression;
+
 	public HelloMessage() {
 		super();
 	}
@@ -22,6 +22,7 @@ package be.fedict.eid.applet.shared;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
+import be.fedict.eid.applet.shared.annotation.CompressibleBody;
 import be.fedict.eid.applet.shared.annotation.HttpBody;
 import be.fedict.eid.applet.shared.annotation.HttpHeader;
 import be.fedict.eid.applet.shared.annotation.MessageDiscriminator;
@@ -41,6 +42,7 @@ import be.fedict.eid.applet.shared.protocol.ProtocolState;
 @ValidateSemanticalIntegrity(IdentityDataMessageSemanticValidator.class)
 @ResponsesAllowed(FinishedMessage.class)
 @ProtocolStateAllowed(ProtocolState.IDENTIFY)
+@CompressibleBody
 public class IdentityDataMessage extends AbstractProtocolMessage {
 
 	@HttpHeader(TYPE_HTTP_HEADER)
@@ -151,63 +153,47 @@ public class IdentityDataMessage extends AbstractProtocolMessage {
 		this.body = baos.toByteArray();
 	}
 
-	private byte[] copy(byte[] source, int idx, int count) {
-		byte[] result = new byte[count];
-		System.arraycopy(source, idx, result, 0, count);
-		return result;
-	}
-
 	@PostConstruct
 	public void postConstruct() {
-		int idx = 0;
-		this.idFile = copy(this.body, 0, this.identityFileSize);
-		idx += this.identityFileSize;
+		BodyReader bodyReader = new BodyReader(this.body);
+		this.idFile = bodyReader.copy(this.identityFileSize);
 
 		if (null != this.addressFileSize) {
-			this.addressFile = copy(this.body, idx, this.addressFileSize);
-			idx += this.addressFileSize;
+			this.addressFile = bodyReader.copy(this.addressFileSize);
 		}
 
 		if (null != this.photoFileSize) {
-			this.photoFile = copy(this.body, idx, this.photoFileSize);
-			idx += this.photoFileSize;
+			this.photoFile = bodyReader.copy(this.photoFileSize);
 		}
 
 		if (null != this.identitySignatureFileSize) {
-			this.identitySignatureFile = copy(this.body, idx,
-					this.identitySignatureFileSize);
-			idx += this.identitySignatureFileSize;
+			this.identitySignatureFile = bodyReader
+					.copy(this.identitySignatureFileSize);
 		}
 
 		if (null != this.addressSignatureFileSize) {
-			this.addressSignatureFile = copy(this.body, idx,
-					this.addressSignatureFileSize);
-			idx += this.addressSignatureFileSize;
+			this.addressSignatureFile = bodyReader
+					.copy(this.addressSignatureFileSize);
 		}
 
 		if (null != this.authnCertFileSize) {
-			this.authnCertFile = copy(this.body, idx, this.authnCertFileSize);
-			idx += this.authnCertFileSize;
+			this.authnCertFile = bodyReader.copy(this.authnCertFileSize);
 		}
 
 		if (null != this.signCertFileSize) {
-			this.signCertFile = copy(this.body, idx, this.signCertFileSize);
-			idx += this.signCertFileSize;
+			this.signCertFile = bodyReader.copy(this.signCertFileSize);
 		}
 
 		if (null != this.caCertFileSize) {
-			this.caCertFile = copy(this.body, idx, this.caCertFileSize);
-			idx += this.caCertFileSize;
+			this.caCertFile = bodyReader.copy(this.caCertFileSize);
 		}
 
 		if (null != this.rrnCertFileSize) {
-			this.rrnCertFile = copy(this.body, idx, this.rrnCertFileSize);
-			idx += this.rrnCertFileSize;
+			this.rrnCertFile = bodyReader.copy(this.rrnCertFileSize);
 		}
 
 		if (null != this.rootCertFileSize) {
-			this.rootCertFile = copy(this.body, idx, this.rootCertFileSize);
-			idx += this.rootCertFileSize;
+			this.rootCertFile = bodyReader.copy(this.rootCertFileSize);
 		}
 	}
 
@@ -19,16 +19,14 @@
 
 package be.fedict.eid.applet.shared;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.security.cert.CertificateEncodingException;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.LinkedList;
 import java.util.List;
 
+import be.fedict.eid.applet.shared.annotation.CompressibleBody;
 import be.fedict.eid.applet.shared.annotation.HttpBody;
 import be.fedict.eid.applet.shared.annotation.HttpHeader;
 import be.fedict.eid.applet.shared.annotation.MessageDiscriminator;
@@ -46,6 +44,7 @@ import be.fedict.eid.applet.shared.protocol.ProtocolState;
  */
 @ResponsesAllowed({ SignRequestMessage.class, FinishedMessage.class })
 @ProtocolStateAllowed(ProtocolState.SIGN_CERTS)
+@CompressibleBody
 public class SignCertificatesDataMessage extends AbstractProtocolMessage {
 
 	@HttpHeader(TYPE_HTTP_HEADER)
@@ -165,26 +164,15 @@ public class SignCertificatesDataMessage extends AbstractProtocolMessage {
 				null);
 	}
 
-	private byte[] copy(byte[] source, int idx, int count) {
-		byte[] result = new byte[count];
-		System.arraycopy(source, idx, result, 0, count);
-		return result;
-	}
-
 	@PostConstruct
 	public void postConstruct() {
-		int idx = 0;
-		byte[] signCertFile = copy(this.body, idx, this.signCertFileSize);
-		idx += this.signCertFileSize;
-		X509Certificate signCert = getCertificate(signCertFile);
-
-		byte[] citizenCaCertFile = copy(this.body, idx, this.caCertFileSize);
-		idx += this.caCertFileSize;
-		X509Certificate citizenCaCert = getCertificate(citizenCaCertFile);
-
-		byte[] rootCaCertFile = copy(this.body, idx, this.rootCertFileSize);
-		idx += this.rootCertFileSize;
-		this.rootCertificate = getCertificate(rootCaCertFile);
+		BodyReader bodyReader = new BodyReader(this.body);
+		X509Certificate signCert = bodyReader
+				.certificate(this.signCertFileSize);
+		X509Certificate citizenCaCert = bodyReader
+				.sharedCertificate(this.caCertFileSize);
+		this.rootCertificate = bodyReader
+				.sharedCertificate(this.rootCertFileSize);
 
 		this.certificateChain = new LinkedList<X509Certificate>();
 		this.certificateChain.add(signCert);
@@ -192,31 +180,25 @@ public class SignCertificatesDataMessage extends AbstractProtocolMessage {
 		this.certificateChain.add(this.rootCertificate);
 
 		if (null != this.identityFileSize) {
-			this.identityData = copy(this.body, idx, this.identityFileSize);
-			idx += this.identityFileSize;
+			this.identityData = bodyReader.copy(this.identityFileSize);
 		}
 		if (null != this.addressFileSize) {
-			this.addressData = copy(this.body, idx, this.addressFileSize);
-			idx += this.addressFileSize;
+			this.addressData = bodyReader.copy(this.addressFileSize);
 		}
 		if (null != this.photoFileSize) {
-			this.photoData = copy(this.body, idx, this.photoFileSize);
-			idx += this.photoFileSize;
+			this.photoData = bodyReader.copy(this.photoFileSize);
 		}
 		if (null != this.identitySignatureFileSize) {
-			this.identitySignatureData = copy(this.body, idx,
-					this.identitySignatureFileSize);
-			idx += this.identitySignatureFileSize;
+			this.identitySignatureData = bodyReader
+					.copy(this.identitySignatureFileSize);
 		}
 		if (null != this.addressSignatureFileSize) {
-			this.addressSignatureData = copy(this.body, idx,
-					this.addressSignatureFileSize);
-			idx += this.addressSignatureFileSize;
+			this.addressSignatureData = bodyReader
+					.copy(this.addressSignatureFileSize);
 		}
 		if (null != this.rrnCertFileSize) {
-			byte[] nrnCertData = copy(this.body, idx, this.rrnCertFileSize);
-			idx += this.rrnCertFileSize;
-			this.rrnCertificate = getCertificate(nrnCertData);
+			this.rrnCertificate = bodyReader
+					.sharedCertificate(this.rrnCertFileSize);
 		}
 	}
 
@@ -234,26 +216,5 @@ public class SignCertificatesDataMessage extends AbstractProtocolMessage {
 
 	public X509Certificate rootCertificate;
 
-	private X509Certificate getCertificate(byte[] certData) {
-		CertificateFactory certificateFactory;
-		try {
-			certificateFactory = CertificateFactory.getInstance("X.509");
-		} catch (CertificateException e) {
-			throw new RuntimeException("cert factory error: " + e.getMessage(),
-					e);
-		}
-		try {
-			X509Certificate certificate = (X509Certificate) certificateFactory
-					.generateCertificate(new ByteArrayInputStream(certData));
-			return certificate;
-		} catch (CertificateException e) {
-			/*
-			 * Can happen in case of missing certificates. Missing certificates
-			 * are represented by means of 1300 null bytes.
-			 */
-			return null;
-		}
-	}
-
 	public List<X509Certificate> certificateChain;
 }
@@ -19,12 +19,9 @@
 
 package be.fedict.eid.applet.shared;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.security.cert.CertificateEncodingException;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.LinkedList;
 import java.util.List;
@@ -99,29 +96,17 @@ public class SignatureDataMessage extends AbstractProtocolMessage {
 		this.rootCertFileSize = rootCaCertFile.length;
 	}
 
-	private byte[] copy(byte[] source, int idx, int count) {
-		byte[] result = new byte[count];
-		System.arraycopy(source, idx, result, 0, count);
-		return result;
-	}
-
 	@PostConstruct
 	public void postConstruct() {
-		int idx = 0;
-		this.signatureValue = copy(this.body, idx, this.signatureValueSize);
-		idx += this.signatureValueSize;
-
-		byte[] signCertFile = copy(this.body, idx, this.signCertFileSize);
-		idx += this.signCertFileSize;
-		X509Certificate signCert = getCertificate(signCertFile);
+		BodyReader bodyReader = new BodyReader(this.body);
+		this.signatureValue = bodyReader.copy(this.signatureValueSize);
 
-		byte[] citizenCaCertFile = copy(this.body, idx, this.caCertFileSize);
-		idx += this.caCertFileSize;
-		X509Certificate citizenCaCert = getCertificate(citizenCaCertFile);
-
-		byte[] rootCaCertFile = copy(this.body, idx, this.rootCertFileSize);
-		idx += this.rootCertFileSize;
-		X509Certificate rootCaCert = getCertificate(rootCaCertFile);
+		X509Certificate signCert = bodyReader
+				.certificate(this.signCertFileSize);
+		X509Certificate citizenCaCert = bodyReader
+				.sharedCertificate(this.caCertFileSize);
+		X509Certificate rootCaCert = bodyReader
+				.sharedCertificate(this.rootCertFileSize);
 
 		this.certificateChain = new LinkedList<X509Certificate>();
 		this.certificateChain.add(signCert);
@@ -129,27 +114,6 @@ public class SignatureDataMessage extends AbstractProtocolMessage {
 		this.certificateChain.add(rootCaCert);
 	}
 
-	private X509Certificate getCertificate(byte[] certData) {
-		CertificateFactory certificateFactory;
-		try {
-			certificateFactory = CertificateFactory.getInstance("X.509");
-		} catch (CertificateException e) {
-			throw new RuntimeException("cert factory error: " + e.getMessage(),
-					e);
-		}
-		try {
-			X509Certificate certificate = (X509Certificate) certificateFactory
-					.generateCertificate(new ByteArrayInputStream(certData));
-			return certificate;
-		} catch (CertificateException e) {
-			/*
-			 * Can happen in case of missing certificates. Missing certificates
-			 * are represented by means of 1300 null bytes.
-			 */
-			return null;
-		}
-	}
-
 	public byte[] signatureValue;
 
 	public List<X509Certificate> certificateChain;
@@ -0,0 +1,280 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+package be.fedict.eid.applet.shared.protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import be.fedict.eid.applet.shared.protocol.MessageBinding.HeaderBinding;
+
+/**
+ * Compact binary framing of protocol messages. Instead of transferring every
+ * message field as a separate HTTP header, a single frame is sent as HTTP body.
+ * 
+ * <p>
+ * Frame layout (version 3):
+ * </p>
+ * 
+ * <pre>
+ * frame    = version:u8 type:UTF count:u8 count*field [body]
+ * field    = name:UTF value
+ * value    = UTF | s32 | u8 (String, int, boolean, enum constant name)
+ * body     = encoding:u8 length:u32 octets (only for messages with a body)
+ * encoding = 0 (identity) | 1 (deflate)
+ * </pre>
+ * 
+ * <p>
+ * The type is the value of the <code>@MessageDiscriminator</code> field. A
+ * field is identified by its HTTP header name, and enum values by their
+ * constant name, so applets and services of different releases never inject
+ * values into the wrong fields. A field unknown to the receiver makes the
+ * frame invalid. Numeric values are not transferred as text. Fields that are
+ * not set are left out.
+ * </p>
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public final class BinaryFraming {
+
+	/**
+	 * The version of the binary framing implemented by this class.
+	 */
+	public static final int VERSION = 3;
+
+	/**
+	 * The HTTP Content-Type of a binary frame.
+	 */
+	public static final String CONTENT_TYPE = "application/x-eid-applet-frame";
+
+	private static final int ENCODING_IDENTITY = 0;
+
+	private static final int ENCODING_DEFLATE = 1;
+
+	private static final int MAX_FIELDS = 0xff;
+
+	private BinaryFraming() {
+		super();
+	}
+
+	/**
+	 * Checks whether the given HTTP content type denotes a binary frame.
+	 * 
+	 * @param contentType
+	 *            the HTTP Content-Type, can be <code>null</code>.
+	 * @return
+	 */
+	public static boolean isFrame(String contentType) {
+		if (null == contentType) {
+			return false;
+		}
+		return contentType.startsWith(CONTENT_TYPE);
+	}
+
+	/**
+	 * Creates the binary frame for the given data object.
+	 * 
+	 * @param dataObject
+	 * @param messageBinding
+	 *            the binding plan of the data object.
+	 * @param body
+	 *            the (encoded) HTTP body, <code>null</code> if the message has
+	 *            no body.
+	 * @param deflated
+	 *            whether the body has been deflated.
+	 * @return
+	 */
+	static byte[] writeFrame(Object dataObject, MessageBinding messageBinding,
+			byte[] body, boolean deflated) {
+		HeaderBinding[] frameBindings = messageBinding.getFrameBindings();
+		if (frameBindings.length > MAX_FIELDS) {
+			throw new RuntimeException("too many fields for binary frame");
+		}
+		String type = null;
+		int count = 0;
+		ByteArrayOutputStream fields = new ByteArrayOutputStream();
+		DataOutputStream fieldsOutputStream = new DataOutputStream(fields);
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		DataOutputStream frameOutputStream = new DataOutputStream(frame);
+		try {
+			for (HeaderBinding frameBinding : frameBindings) {
+				Object fieldValue = frameBinding.getValue(dataObject);
+				if (frameBinding.isDiscriminator()) {
+					type = (String) fieldValue;
+					continue;
+				}
+				if (null == fieldValue) {
+					continue;
+				}
+				fieldsOutputStream.writeUTF(frameBinding.getHeaderName());
+				frameBinding.write(fieldsOutputStream, fieldValue);
+				count++;
+			}
+			if (null == type) {
+				throw new RuntimeException("no message discriminator found on "
+						+ messageBinding.getMessageClass().getName());
+			}
+
+			frameOutputStream.writeByte(VERSION);
+			frameOutputStream.writeUTF(type);
+			frameOutputStream.writeByte(count);
+			fields.writeTo(frameOutputStream);
+			if (null != body) {
+				frameOutputStream.writeByte(deflated ? ENCODING_DEFLATE
+						: ENCODING_IDENTITY);
+				frameOutputStream.writeInt(body.length);
+				frameOutputStream.write(body);
+			}
+			frameOutputStream.flush();
+		} catch (IOException e) {
+			throw new RuntimeException("IO error: " + e.getMessage(), e);
+		}
+		return frame.toByteArray();
+	}
+
+	/**
+	 * Parser of a received binary frame.
+	 * 
+	 * @author Frank Cornelis
+	 * 
+	 */
+	static final class FrameReader {
+
+		private final DataInputStream frameInputStream;
+
+		private final String messageType;
+
+		private byte[] body;
+
+		private boolean deflated;
+
+		/**
+		 * Main constructor. Parses the frame up to the message type.
+		 * 
+		 * @param frame
+		 */
+		FrameReader(byte[] frame) {
+			this.frameInputStream = new DataInputStream(
+					new ByteArrayInputStream(frame));
+			try {
+				int version = this.frameInputStream.readUnsignedByte();
+				if (VERSION != version) {
+					throw new RuntimeException("unsupported frame version: "
+							+ version);
+				}
+				this.messageType = this.frameInputStream.readUTF();
+			} catch (IOException e) {
+				throw new RuntimeException("frame error: " + e.getMessage(), e);
+			}
+		}
+
+		/**
+		 * Gives back the value of the <code>@MessageDiscriminator</code> field
+		 * of the framed message.
+		 * 
+		 * @return
+		 */
+		String getMessageType() {
+			return this.messageType;
+		}
+
+		/**
+		 * Injects the framed fields into the transfer object and reads the
+		 * body, if any.
+		 * 
+		 * @param messageBinding
+		 *            the binding plan of the framed message type.
+		 * @param transferObject
+		 */
+		void read(MessageBinding messageBinding, Object transferObject) {
+			HeaderBinding[] frameBindings = messageBinding.getFrameBindings();
+			Set<HeaderBinding> present = new HashSet<HeaderBinding>();
+			try {
+				int count = this.frameInputStream.readUnsignedByte();
+				for (int idx = 0; idx < count; idx++) {
+					String name = this.frameInputStream.readUTF();
+					HeaderBinding frameBinding = messageBinding
+							.getHeaderBinding(name);
+					if (null == frameBinding || frameBinding.isDiscriminator()
+							|| false == present.add(frameBinding)) {
+						throw new RuntimeException("invalid field: " + name);
+					}
+					frameBinding.read(transferObject, this.frameInputStream);
+				}
+				for (HeaderBinding frameBinding : frameBindings) {
+					if (frameBinding.isConstant()
+							&& false == frameBinding.isDiscriminator()
+							&& false == present.contains(frameBinding)) {
+						/*
+						 * E.g. the protocol version has to be checked.
+						 */
+						throw new RuntimeException("missing field: "
+								+ frameBinding.getField().getName());
+					}
+				}
+				if (null != messageBinding.getBodyField()) {
+					int encoding = this.frameInputStream.readUnsignedByte();
+					if (ENCODING_IDENTITY != encoding
+							&& ENCODING_DEFLATE != encoding) {
+						throw new RuntimeException("unsupported body encoding: "
+								+ encoding);
+					}
+					this.deflated = ENCODING_DEFLATE == encoding;
+					int length = this.frameInputStream.readInt();
+					if (length < 0
+							|| length > this.frameInputStream.available()) {
+						throw new RuntimeException("invalid frame length");
+					}
+					this.body = new byte[length];
+					this.frameInputStream.readFully(this.body);
+				}
+				if (0 != this.frameInputStream.available()) {
+					throw new RuntimeException("trailing frame data");
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("frame error: " + e.getMessage(), e);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException("error: " + e.getMessage(), e);
+			}
+		}
+
+		/**
+		 * Gives back the (encoded) body, or <code>null</code> if the message
+		 * has no body.
+		 * 
+		 * @return
+		 */
+		byte[] getBody() {
+			return this.body;
+		}
+
+		/**
+		 * Checks whether the body has been deflated by the sender.
+		 * 
+		 * @return
+		 */
+		boolean isDeflated() {
+			return this.deflated;
+		}
+	}
+}
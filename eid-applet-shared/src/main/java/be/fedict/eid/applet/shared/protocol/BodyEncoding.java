@@ -0,0 +1,146 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.shared.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression of the HTTP body of protocol messages.
+ * 
+ * <p>
+ * A compressed body consists of the decoded body length as 4 byte integer,
+ * followed by the deflate compressed body. The announced length is only
+ * trusted after it has been checked against the maximum decoded body size.
+ * </p>
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public final class BodyEncoding {
+
+	/**
+	 * HTTP header that indicates the encoding of the HTTP body.
+	 */
+	public static final String HTTP_HEADER = "X-AppletProtocol-BodyEncoding";
+
+	/**
+	 * The deflate body encoding.
+	 */
+	public static final String DEFLATE = "deflate";
+
+	/**
+	 * The maximum decoded body size when no explicit maximum has been
+	 * configured.
+	 */
+	public static final int DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+
+	private static final int BUFFER_SIZE = 4096;
+
+	private BodyEncoding() {
+		super();
+	}
+
+	/**
+	 * Compresses the given body.
+	 * 
+	 * @param body
+	 * @return the encoded body, or <code>null</code> if compression does not
+	 *         make the body any smaller.
+	 */
+	static byte[] deflate(byte[] body) {
+		ByteArrayOutputStream encodedBody = new ByteArrayOutputStream(
+				body.length / 2);
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			new DataOutputStream(encodedBody).writeInt(body.length);
+			DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(
+					encodedBody, deflater);
+			deflaterOutputStream.write(body);
+			deflaterOutputStream.finish();
+		} catch (IOException e) {
+			throw new RuntimeException("IO error: " + e.getMessage(), e);
+		} finally {
+			deflater.end();
+		}
+		if (encodedBody.size() >= body.length) {
+			return null;
+		}
+		return encodedBody.toByteArray();
+	}
+
+	/**
+	 * Decompresses the body read from the given input stream.
+	 * 
+	 * @param inputStream
+	 * @param maxBodySize
+	 *            the maximum accepted decoded body size. Use <code>0</code> for
+	 *            {@link #DEFAULT_MAX_BODY_SIZE}.
+	 * @return
+	 */
+	static byte[] inflate(InputStream inputStream, int maxBodySize) {
+		if (maxBodySize <= 0) {
+			maxBodySize = DEFAULT_MAX_BODY_SIZE;
+		}
+		Inflater inflater = new Inflater();
+		try {
+			DataInputStream dataInputStream = new DataInputStream(inputStream);
+			int length = dataInputStream.readInt();
+			if (length < 0) {
+				throw new RuntimeException("invalid body length: " + length);
+			}
+			if (length > maxBodySize) {
+				throw new SecurityException("HTTP body too large: " + length);
+			}
+			/*
+			 * Grow the body buffer while inflating, so a lying length header
+			 * cannot make us allocate more than the actual decoded body.
+			 */
+			InflaterInputStream inflaterInputStream = new InflaterInputStream(
+					dataInputStream, inflater);
+			ByteArrayOutputStream body = new ByteArrayOutputStream(Math.min(
+					length, BUFFER_SIZE));
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int bodySize = 0;
+			int count;
+			while (-1 != (count = inflaterInputStream.read(buffer))) {
+				bodySize += count;
+				if (bodySize > length) {
+					throw new RuntimeException("body length mismatch");
+				}
+				body.write(buffer, 0, count);
+			}
+			if (bodySize != length) {
+				throw new RuntimeException("body length mismatch");
+			}
+			return body.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException("IO error: " + e.getMessage(), e);
+		} finally {
+			inflater.end();
+		}
+	}
+}
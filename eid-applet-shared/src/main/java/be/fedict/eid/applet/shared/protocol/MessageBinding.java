@@ -0,0 +1,760 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2008-2009 FedICT.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.shared.protocol;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import be.fedict.eid.applet.shared.annotation.CompressibleBody;
+import be.fedict.eid.applet.shared.annotation.HttpBody;
+import be.fedict.eid.applet.shared.annotation.HttpHeader;
+import be.fedict.eid.applet.shared.annotation.MessageDiscriminator;
+import be.fedict.eid.applet.shared.annotation.NotNull;
+import be.fedict.eid.applet.shared.annotation.PostConstruct;
+import be.fedict.eid.applet.shared.annotation.ProtocolStateAllowed;
+import be.fedict.eid.applet.shared.annotation.ResponsesAllowed;
+import be.fedict.eid.applet.shared.annotation.StartRequestMessage;
+import be.fedict.eid.applet.shared.annotation.StateTransition;
+import be.fedict.eid.applet.shared.annotation.StopResponseMessage;
+import be.fedict.eid.applet.shared.annotation.ValidateSemanticalIntegrity;
+
+/**
+ * Immutable binding plan of a protocol message class. Holds all reflective
+ * meta-data that the {@link Unmarshaller}, the {@link Transport} and the
+ * {@link ProtocolStateMachine} need to construct, marshall or check a protocol
+ * message, so the annotations only have to be processed once per message
+ * class.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+final class MessageBinding {
+
+	private static final Map<Class<?>, MessageBinding> messageBindings = new ConcurrentHashMap<Class<?>, MessageBinding>();
+
+	private final Class<?> messageClass;
+
+	private final HeaderBinding[] headerBindingList;
+
+	private final HeaderBinding[] frameBindings;
+
+	private final Map<String, HeaderBinding> headerBindings;
+
+	private final Field bodyField;
+
+	private final boolean listBody;
+
+	private final Field[] notNullFields;
+
+	private final Method[] postConstructMethods;
+
+	private final SemanticValidator<Object> semanticValidator;
+
+	private final int compressionThreshold;
+
+	private final ProtocolState startState;
+
+	private final ProtocolState allowedState;
+
+	private final ProtocolState nextState;
+
+	private final boolean stopResponse;
+
+	private final List<Class<?>> responsesAllowed;
+
+	/**
+	 * Gives back the binding plan of the given protocol message class. Binding
+	 * plans are created on first use and shared afterwards.
+	 * 
+	 * @param messageClass
+	 * @return
+	 */
+	static MessageBinding getMessageBinding(Class<?> messageClass) {
+		MessageBinding messageBinding = messageBindings.get(messageClass);
+		if (null == messageBinding) {
+			/*
+			 * Concurrent creation is harmless as binding plans are immutable.
+			 */
+			messageBinding = new MessageBinding(messageClass);
+			messageBindings.put(messageClass, messageBinding);
+		}
+		return messageBinding;
+	}
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param messageClass
+	 */
+	@SuppressWarnings("unchecked")
+	private MessageBinding(Class<?> messageClass) {
+		this.messageClass = messageClass;
+
+		/*
+		 * Ignore cases since the HttpServletRequest class likes to do so.
+		 */
+		Map<String, HeaderBinding> headerBindings = new TreeMap<String, HeaderBinding>(
+				String.CASE_INSENSITIVE_ORDER);
+		List<HeaderBinding> headerBindingList = new LinkedList<HeaderBinding>();
+		Field bodyField = null;
+		List<Field> notNullFields = new LinkedList<Field>();
+		Field[] fields = messageClass.getFields();
+		for (Field field : fields) {
+			HttpHeader httpHeaderAnnotation = field
+					.getAnnotation(HttpHeader.class);
+			if (null != httpHeaderAnnotation) {
+				String httpHeaderName = httpHeaderAnnotation.value();
+				HeaderBinding headerBinding = new HeaderBinding(
+						httpHeaderName, field);
+				headerBindingList.add(headerBinding);
+				if (false == headerBindings.containsKey(httpHeaderName)) {
+					/*
+					 * The first field bound to a HTTP header takes precedence.
+					 */
+					headerBindings.put(httpHeaderName, headerBinding);
+				}
+			}
+			HttpBody httpBodyAnnotation = field.getAnnotation(HttpBody.class);
+			if (null != httpBodyAnnotation) {
+				if (null != bodyField) {
+					throw new RuntimeException("multiple body fields detected");
+				}
+				bodyField = field;
+			}
+			NotNull notNullAnnotation = field.getAnnotation(NotNull.class);
+			if (null != notNullAnnotation) {
+				// XXX: doesn't make sense for primitive fields
+				notNullFields.add(field);
+			}
+		}
+		this.headerBindings = Collections.unmodifiableMap(headerBindings);
+		this.headerBindingList = headerBindingList
+				.toArray(new HeaderBinding[headerBindingList.size()]);
+		/*
+		 * Like for the HTTP headers, only the first field bound to a HTTP
+		 * header is framed.
+		 */
+		this.frameBindings = headerBindings.values().toArray(
+				new HeaderBinding[headerBindings.size()]);
+		this.bodyField = bodyField;
+		this.listBody = null != bodyField
+				&& List.class.equals(bodyField.getType());
+		this.notNullFields = notNullFields.toArray(new Field[notNullFields
+				.size()]);
+
+		List<Method> postConstructMethods = new LinkedList<Method>();
+		Method[] methods = messageClass.getMethods();
+		for (Method method : methods) {
+			PostConstruct postConstructAnnotation = method
+					.getAnnotation(PostConstruct.class);
+			if (null != postConstructAnnotation) {
+				postConstructMethods.add(method);
+			}
+		}
+		this.postConstructMethods = postConstructMethods
+				.toArray(new Method[postConstructMethods.size()]);
+
+		ValidateSemanticalIntegrity validateSemanticalIntegrity = messageClass
+				.getAnnotation(ValidateSemanticalIntegrity.class);
+		if (null != validateSemanticalIntegrity) {
+			Class<? extends SemanticValidator<?>> validatorClass = validateSemanticalIntegrity
+					.value();
+			try {
+				this.semanticValidator = (SemanticValidator<Object>) validatorClass
+						.newInstance();
+			} catch (Exception e) {
+				throw new RuntimeException("error: " + e.getMessage(), e);
+			}
+		} else {
+			this.semanticValidator = null;
+		}
+
+		CompressibleBody compressibleBody = messageClass
+				.getAnnotation(CompressibleBody.class);
+		if (null != compressibleBody && null != bodyField
+				&& false == this.listBody) {
+			this.compressionThreshold = compressibleBody.threshold();
+		} else {
+			this.compressionThreshold = -1;
+		}
+
+		StartRequestMessage startRequestMessage = messageClass
+				.getAnnotation(StartRequestMessage.class);
+		this.startState = null != startRequestMessage ? startRequestMessage
+				.value() : null;
+		ProtocolStateAllowed protocolStateAllowed = messageClass
+				.getAnnotation(ProtocolStateAllowed.class);
+		this.allowedState = null != protocolStateAllowed ? protocolStateAllowed
+				.value() : null;
+		StateTransition stateTransition = messageClass
+				.getAnnotation(StateTransition.class);
+		this.nextState = null != stateTransition ? stateTransition.value()
+				: null;
+		this.stopResponse = null != messageClass
+				.getAnnotation(StopResponseMessage.class);
+		ResponsesAllowed responsesAllowed = messageClass
+				.getAnnotation(ResponsesAllowed.class);
+		if (null != responsesAllowed) {
+			this.responsesAllowed = Collections.unmodifiableList(Arrays
+					.asList(responsesAllowed.value()));
+		} else {
+			this.responsesAllowed = null;
+		}
+	}
+
+	/**
+	 * Gives back the protocol message class.
+	 * 
+	 * @return
+	 */
+	Class<?> getMessageClass() {
+		return this.messageClass;
+	}
+
+	/**
+	 * Creates a new empty instance of the protocol message.
+	 * 
+	 * @return
+	 */
+	Object newInstance() {
+		try {
+			return this.messageClass.newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException("error: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Gives back the minimal body size for compression of the HTTP body.
+	 * Returns <code>-1</code> if the HTTP body of the message class may not be
+	 * compressed.
+	 * 
+	 * @return
+	 */
+	int getCompressionThreshold() {
+		return this.compressionThreshold;
+	}
+
+	/**
+	 * Gives back the initial protocol state in case the message class is a
+	 * <code>@StartRequestMessage</code>, else <code>null</code>.
+	 * 
+	 * @return
+	 */
+	ProtocolState getStartState() {
+		return this.startState;
+	}
+
+	/**
+	 * Gives back the <code>@ProtocolStateAllowed</code> protocol state, or
+	 * <code>null</code> if not set.
+	 * 
+	 * @return
+	 */
+	ProtocolState getAllowedState() {
+		return this.allowedState;
+	}
+
+	/**
+	 * Gives back the <code>@StateTransition</code> protocol state, or
+	 * <code>null</code> if not set.
+	 * 
+	 * @return
+	 */
+	ProtocolState getNextState() {
+		return this.nextState;
+	}
+
+	boolean isStopResponse() {
+		return this.stopResponse;
+	}
+
+	/**
+	 * Gives back the <code>@ResponsesAllowed</code> message classes, or
+	 * <code>null</code> if not set.
+	 * 
+	 * @return
+	 */
+	List<Class<?>> getResponsesAllowed() {
+		return this.responsesAllowed;
+	}
+
+	/**
+	 * Gives back the header binding for the given HTTP header name. The lookup
+	 * is case insensitive. Returns <code>null</code> if the message class has
+	 * no field for the given HTTP header.
+	 * 
+	 * @param headerName
+	 * @return
+	 */
+	HeaderBinding getHeaderBinding(String headerName) {
+		return this.headerBindings.get(headerName);
+	}
+
+	/**
+	 * Gives back all HTTP header bindings, in field declaration order.
+	 * 
+	 * @return
+	 */
+	HeaderBinding[] getHeaderBindings() {
+		return this.headerBindingList;
+	}
+
+	/**
+	 * Gives back the HTTP header bindings that are transferred within a binary
+	 * frame, one per HTTP header name. Within a frame a field is identified by
+	 * its HTTP header name, so frames do not depend on the field order.
+	 * 
+	 * @return
+	 * @see BinaryFraming
+	 * @see #getHeaderBinding(String)
+	 */
+	HeaderBinding[] getFrameBindings() {
+		return this.frameBindings;
+	}
+
+	/**
+	 * Gives back the <code>@HttpBody</code> field, or <code>null</code> if
+	 * the message class has no body.
+	 * 
+	 * @return
+	 */
+	Field getBodyField() {
+		return this.bodyField;
+	}
+
+	/**
+	 * Checks whether the body is transported as a list of text lines.
+	 * 
+	 * @return
+	 */
+	boolean isListBody() {
+		return this.listBody;
+	}
+
+	Field[] getNotNullFields() {
+		return this.notNullFields;
+	}
+
+	Method[] getPostConstructMethods() {
+		return this.postConstructMethods;
+	}
+
+	/**
+	 * Gives back the cached semantic validator, or <code>null</code> if the
+	 * message class has no <code>@ValidateSemanticalIntegrity</code>
+	 * constraint. Semantic validators are expected to be stateless.
+	 * 
+	 * @return
+	 */
+	SemanticValidator<Object> getSemanticValidator() {
+		return this.semanticValidator;
+	}
+
+	/**
+	 * Supported HTTP header field types.
+	 */
+	enum HeaderType {
+		STRING {
+			@Override
+			Object toValue(String headerValue, Class<?> fieldType) {
+				return headerValue;
+			}
+
+			@Override
+			String toHeaderValue(Object fieldValue) {
+				return (String) fieldValue;
+			}
+
+			@Override
+			void write(DataOutput dataOutput, Object fieldValue)
+					throws IOException {
+				dataOutput.writeUTF((String) fieldValue);
+			}
+
+			@Override
+			Object read(DataInput dataInput, Class<?> fieldType)
+					throws IOException {
+				return dataInput.readUTF();
+			}
+		},
+		INTEGER {
+			@Override
+			Object toValue(String headerValue, Class<?> fieldType) {
+				return Integer.parseInt(headerValue);
+			}
+
+			@Override
+			String toHeaderValue(Object fieldValue) {
+				return ((Integer) fieldValue).toString();
+			}
+
+			@Override
+			void write(DataOutput dataOutput, Object fieldValue)
+					throws IOException {
+				dataOutput.writeInt((Integer) fieldValue);
+			}
+
+			@Override
+			Object read(DataInput dataInput, Class<?> fieldType)
+					throws IOException {
+				return dataInput.readInt();
+			}
+		},
+		BOOLEAN {
+			@Override
+			Object toValue(String headerValue, Class<?> fieldType) {
+				return Boolean.parseBoolean(headerValue);
+			}
+
+			@Override
+			String toHeaderValue(Object fieldValue) {
+				return ((Boolean) fieldValue).toString();
+			}
+
+			@Override
+			void write(DataOutput dataOutput, Object fieldValue)
+					throws IOException {
+				dataOutput.writeBoolean((Boolean) fieldValue);
+			}
+
+			@Override
+			Object read(DataInput dataInput, Class<?> fieldType)
+					throws IOException {
+				return dataInput.readBoolean();
+			}
+		},
+		ENUM {
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			@Override
+			Object toValue(String headerValue, Class<?> fieldType) {
+				return Enum.valueOf((Class<Enum>) fieldType, headerValue);
+			}
+
+			@Override
+			String toHeaderValue(Object fieldValue) {
+				return ((Enum<?>) fieldValue).name();
+			}
+
+			/*
+			 * Enum constants go by name, as ordinals change when constants get
+			 * added or reordered.
+			 */
+			@Override
+			void write(DataOutput dataOutput, Object fieldValue)
+					throws IOException {
+				dataOutput.writeUTF(((Enum<?>) fieldValue).name());
+			}
+
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			@Override
+			Object read(DataInput dataInput, Class<?> fieldType)
+					throws IOException {
+				String name = dataInput.readUTF();
+				try {
+					return Enum.valueOf((Class<Enum>) fieldType, name);
+				} catch (IllegalArgumentException e) {
+					throw new RuntimeException("invalid enum constant: "
+							+ name);
+				}
+			}
+		};
+
+		/**
+		 * Converts the given HTTP header value to a field value.
+		 * 
+		 * @param headerValue
+		 * @param fieldType
+		 * @return
+		 */
+		abstract Object toValue(String headerValue, Class<?> fieldType);
+
+		/**
+		 * Converts the given non-<code>null</code> field value to a HTTP
+		 * header value.
+		 * 
+		 * @param fieldValue
+		 * @return
+		 */
+		abstract String toHeaderValue(Object fieldValue);
+
+		/**
+		 * Writes the given non-<code>null</code> field value in binary form.
+		 * 
+		 * @param dataOutput
+		 * @param fieldValue
+		 * @throws IOException
+		 */
+		abstract void write(DataOutput dataOutput, Object fieldValue)
+				throws IOException;
+
+		/**
+		 * Reads a field value in binary form.
+		 * 
+		 * @param dataInput
+		 * @param fieldType
+		 * @return
+		 * @throws IOException
+		 */
+		abstract Object read(DataInput dataInput, Class<?> fieldType)
+				throws IOException;
+
+		static HeaderType valueOf(Class<?> fieldType) {
+			if (String.class.equals(fieldType)) {
+				return STRING;
+			}
+			if (Integer.TYPE.equals(fieldType)
+					|| Integer.class.equals(fieldType)) {
+				return INTEGER;
+			}
+			if (Boolean.TYPE.equals(fieldType)
+					|| Boolean.class.equals(fieldType)) {
+				return BOOLEAN;
+			}
+			if (fieldType.isEnum()) {
+				return ENUM;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Binding of a single HTTP header onto a protocol message field.
+	 */
+	static final class HeaderBinding {
+
+		private final String headerName;
+
+		private final Field field;
+
+		private final HeaderType type;
+
+		private final boolean constant;
+
+		private final boolean discriminator;
+
+		private final String constantValue;
+
+		private final boolean primitiveInt;
+
+		private final boolean primitiveBoolean;
+
+		HeaderBinding(String headerName, Field field) {
+			this.headerName = headerName;
+			this.field = field;
+			this.type = HeaderType.valueOf(field.getType());
+			this.primitiveInt = Integer.TYPE.equals(field.getType());
+			this.primitiveBoolean = Boolean.TYPE.equals(field.getType());
+			this.constant = 0 != (field.getModifiers() & Modifier.FINAL);
+			this.discriminator = null != field
+					.getAnnotation(MessageDiscriminator.class);
+			if (this.constant
+					&& 0 != (field.getModifiers() & Modifier.STATIC)) {
+				this.constantValue = readConstantValue(null);
+			} else {
+				this.constantValue = null;
+			}
+		}
+
+		String getHeaderName() {
+			return this.headerName;
+		}
+
+		Field getField() {
+			return this.field;
+		}
+
+		/**
+		 * Checks whether the field is final. The HTTP header value then has to
+		 * match the field value.
+		 * 
+		 * @return
+		 */
+		boolean isConstant() {
+			return this.constant;
+		}
+
+		/**
+		 * Checks whether the field is the <code>@MessageDiscriminator</code>
+		 * of the message class.
+		 * 
+		 * @return
+		 */
+		boolean isDiscriminator() {
+			return this.discriminator;
+		}
+
+		/**
+		 * Gives back the value to which the HTTP header of a final field
+		 * should correspond.
+		 * 
+		 * @param transferObject
+		 * @return
+		 */
+		String getConstantValue(Object transferObject) {
+			if (null != this.constantValue) {
+				return this.constantValue;
+			}
+			return readConstantValue(transferObject);
+		}
+
+		/**
+		 * Gives back the HTTP header value for the field of the given data
+		 * object. Returns <code>null</code> if the field is not set.
+		 * 
+		 * @param dataObject
+		 * @return
+		 */
+		String extract(Object dataObject) {
+			if (null != this.constantValue) {
+				return this.constantValue;
+			}
+			try {
+				/*
+				 * Primitive fields are read without boxing.
+				 */
+				if (this.primitiveInt) {
+					return Integer.toString(this.field.getInt(dataObject));
+				}
+				if (this.primitiveBoolean) {
+					return Boolean.toString(this.field.getBoolean(dataObject));
+				}
+				Object fieldValue = this.field.get(dataObject);
+				if (null == fieldValue) {
+					return null;
+				}
+				if (null == this.type) {
+					throw new RuntimeException("unsupported field type: "
+							+ this.field.getType().getName());
+				}
+				return this.type.toHeaderValue(fieldValue);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException("error reading field: "
+						+ this.field.getName());
+			}
+		}
+
+		private String readConstantValue(Object transferObject) {
+			Object value;
+			try {
+				value = this.field.get(transferObject);
+			} catch (Exception e) {
+				throw new RuntimeException("error reading field: "
+						+ this.field.getName());
+			}
+			if (String.class.equals(this.field.getType())) {
+				return (String) value;
+			} else if (Integer.TYPE.equals(this.field.getType())) {
+				return ((Integer) value).toString();
+			}
+			throw new RuntimeException("unsupported type: "
+					+ this.field.getType().getName());
+		}
+
+		/**
+		 * Injects the given HTTP header value into the field of the transfer
+		 * object.
+		 * 
+		 * @param transferObject
+		 * @param headerValue
+		 * @throws IllegalAccessException
+		 */
+		void inject(Object transferObject, String headerValue)
+				throws IllegalAccessException {
+			if (null == this.type) {
+				throw new RuntimeException(
+						"unsupported http header field type: "
+								+ this.field.getType());
+			}
+			Object value = this.type.toValue(headerValue, this.field.getType());
+			this.field.set(transferObject, value);
+		}
+
+		/**
+		 * Gives back the value of the field of the given data object.
+		 * 
+		 * @param dataObject
+		 * @return
+		 */
+		Object getValue(Object dataObject) {
+			try {
+				return this.field.get(dataObject);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException("error reading field: "
+						+ this.field.getName());
+			}
+		}
+
+		/**
+		 * Writes the given non-<code>null</code> field value in binary form.
+		 * 
+		 * @param dataOutput
+		 * @param fieldValue
+		 * @throws IOException
+		 */
+		void write(DataOutput dataOutput, Object fieldValue)
+				throws IOException {
+			if (null == this.type) {
+				throw new RuntimeException("unsupported field type: "
+						+ this.field.getType().getName());
+			}
+			this.type.write(dataOutput, fieldValue);
+		}
+
+		/**
+		 * Reads a field value in binary form and injects it into the field of
+		 * the transfer object. For final fields the value is checked instead.
+		 * 
+		 * @param transferObject
+		 * @param dataInput
+		 * @throws IOException
+		 * @throws IllegalAccessException
+		 */
+		void read(Object transferObject, DataInput dataInput)
+				throws IOException, IllegalAccessException {
+			if (null == this.type) {
+				throw new RuntimeException(
+						"unsupported http header field type: "
+								+ this.field.getType());
+			}
+			Object value = this.type.read(dataInput, this.field.getType());
+			if (this.constant) {
+				Object constantValue = this.field.get(transferObject);
+				if (false == value.equals(constantValue)) {
+					throw new RuntimeException("constant value mismatch: "
+							+ this.field.getName() + "; expected value: "
+							+ constantValue + "; actual value: " + value);
+				}
+			} else {
+				this.field.set(transferObject, value);
+			}
+		}
+	}
+}
@@ -28,6 +28,13 @@ package be.fedict.eid.applet.shared.protocol;
  */
 public interface ProtocolContext {
 
+	/**
+	 * HTTP header that carries an opaque protocol context token. When the eID
+	 * Applet Service keeps the protocol context off-session, the eID Applet
+	 * returns the last received token value as-is with its next request.
+	 */
+	String HTTP_HEADER = "X-AppletProtocol-Context";
+
 	/**
 	 * Gives back the current protocol state.
 	 * 
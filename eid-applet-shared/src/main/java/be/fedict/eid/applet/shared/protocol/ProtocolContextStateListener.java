@@ -0,0 +1,53 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.shared.protocol;
+
+/**
+ * Interface for protocol state listeners that receive the protocol context of
+ * the protocol run. Such listeners can be stateless, and shared across
+ * protocol runs.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public interface ProtocolContextStateListener {
+
+	/**
+	 * Fired when there is a protocol state transition.
+	 * 
+	 * @param protocolContext
+	 * @param newProtocolState
+	 */
+	void protocolStateTransition(ProtocolContext protocolContext,
+			ProtocolState newProtocolState);
+
+	/**
+	 * Called when a protocol run starts.
+	 * 
+	 * @param protocolContext
+	 */
+	void startProtocolRun(ProtocolContext protocolContext);
+
+	/**
+	 * Called when a protocol run ends.
+	 * 
+	 * @param protocolContext
+	 */
+	void stopProtocolRun(ProtocolContext protocolContext);
+}
@@ -18,16 +18,20 @@
 
 package be.fedict.eid.applet.shared.protocol;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
-import be.fedict.eid.applet.shared.annotation.ProtocolStateAllowed;
-import be.fedict.eid.applet.shared.annotation.StartRequestMessage;
-import be.fedict.eid.applet.shared.annotation.StateTransition;
-import be.fedict.eid.applet.shared.annotation.StopResponseMessage;
-
 /**
- * Protocol State Machine.
+ * Protocol State Machine. The protocol state rules are taken from the binding
+ * plans of the protocol message classes, so no annotations are processed per
+ * message.
+ * 
+ * <p>
+ * A protocol state machine can either be bound to a single protocol context,
+ * or be shared across protocol contexts. In the latter case the protocol
+ * context is passed with every check. Register all protocol state listeners
+ * before sharing the protocol state machine.
+ * </p>
  * 
  * @author Frank Cornelis
  * 
@@ -36,7 +40,7 @@ public class ProtocolStateMachine {
 
 	private final ProtocolContext protocolContext;
 
-	private final List<ProtocolStateListener> protocolStateListeners;
+	private final List<ProtocolContextStateListener> protocolStateListeners;
 
 	/**
 	 * Main constructor.
@@ -45,7 +49,15 @@ public class ProtocolStateMachine {
 	 */
 	public ProtocolStateMachine(ProtocolContext protocolContext) {
 		this.protocolContext = protocolContext;
-		this.protocolStateListeners = new LinkedList<ProtocolStateListener>();
+		this.protocolStateListeners = new ArrayList<ProtocolContextStateListener>();
+	}
+
+	/**
+	 * Constructor for a protocol state machine that is shared across protocol
+	 * contexts.
+	 */
+	public ProtocolStateMachine() {
+		this(null);
 	}
 
 	/**
@@ -55,6 +67,17 @@ public class ProtocolStateMachine {
 	 */
 	public void addProtocolStateListener(
 			ProtocolStateListener protocolStateListener) {
+		this.protocolStateListeners.add(new ProtocolStateListenerAdapter(
+				protocolStateListener));
+	}
+
+	/**
+	 * Adds a protocol state listener that receives the protocol context.
+	 * 
+	 * @param protocolStateListener
+	 */
+	public void addProtocolStateListener(
+			ProtocolContextStateListener protocolStateListener) {
 		this.protocolStateListeners.add(protocolStateListener);
 	}
 
@@ -65,42 +88,69 @@ public class ProtocolStateMachine {
 	 * @throws ServletException
 	 */
 	public void checkResponseMessage(Object responseMessage) {
-		ProtocolState protocolState = this.protocolContext.getProtocolState();
+		checkResponseMessage(responseMessage, this.protocolContext);
+	}
+
+	/**
+	 * Checks the given response message against the protocol state rules of
+	 * the given protocol context.
+	 * 
+	 * @param responseMessage
+	 * @param protocolContext
+	 */
+	public void checkResponseMessage(Object responseMessage,
+			ProtocolContext protocolContext) {
+		ProtocolState protocolState = protocolContext.getProtocolState();
 		if (null == protocolState) {
 			throw new RuntimeException("responding without a protocol state");
 		}
-		Class<?> responseMessageClass = responseMessage.getClass();
-		StopResponseMessage stopResponseMessageAnnotation = responseMessageClass
-				.getAnnotation(StopResponseMessage.class);
-		if (null != stopResponseMessageAnnotation) {
-			notifyProtocolListenersStopProtocolRun();
-			this.protocolContext.removeProtocolState();
+		MessageBinding messageBinding = MessageBinding
+				.getMessageBinding(responseMessage.getClass());
+		if (messageBinding.isStopResponse()) {
+			notifyProtocolListenersStopProtocolRun(protocolContext);
+			protocolContext.removeProtocolState();
 		}
-		StateTransition stateTransitionAnnotation = responseMessageClass
-				.getAnnotation(StateTransition.class);
-		if (null != stateTransitionAnnotation) {
-			ProtocolState newProtocolState = stateTransitionAnnotation.value();
-			this.protocolContext.setProtocolState(newProtocolState);
-			notifyProtocolListenersProtocolStateTransition(newProtocolState);
+		ProtocolState newProtocolState = messageBinding.getNextState();
+		if (null != newProtocolState) {
+			protocolContext.setProtocolState(newProtocolState);
+			notifyProtocolListenersProtocolStateTransition(protocolContext,
+					newProtocolState);
 		}
 	}
 
+	/**
+	 * Gives back the response message classes allowed for the given request
+	 * message class, as defined via <code>@ResponsesAllowed</code>.
+	 * 
+	 * @param requestMessageClass
+	 * @return the allowed response message classes, or <code>null</code> if
+	 *         the request message class does not constrain its responses.
+	 */
+	public static List<Class<?>> getResponsesAllowed(
+			Class<?> requestMessageClass) {
+		return MessageBinding.getMessageBinding(requestMessageClass)
+				.getResponsesAllowed();
+	}
+
 	private void notifyProtocolListenersProtocolStateTransition(
-			ProtocolState newProtocolState) {
-		for (ProtocolStateListener protocolStateListener : this.protocolStateListeners) {
-			protocolStateListener.protocolStateTransition(newProtocolState);
+			ProtocolContext protocolContext, ProtocolState newProtocolState) {
+		for (ProtocolContextStateListener protocolStateListener : this.protocolStateListeners) {
+			protocolStateListener.protocolStateTransition(protocolContext,
+					newProtocolState);
 		}
 	}
 
-	private void notifyProtocolListenersStartProtocolRun() {
-		for (ProtocolStateListener protocolStateListener : this.protocolStateListeners) {
-			protocolStateListener.startProtocolRun();
+	private void notifyProtocolListenersStartProtocolRun(
+			ProtocolContext protocolContext) {
+		for (ProtocolContextStateListener protocolStateListener : this.protocolStateListeners) {
+			protocolStateListener.startProtocolRun(protocolContext);
 		}
 	}
 
-	private void notifyProtocolListenersStopProtocolRun() {
-		for (ProtocolStateListener protocolStateListener : this.protocolStateListeners) {
-			protocolStateListener.stopProtocolRun();
+	private void notifyProtocolListenersStopProtocolRun(
+			ProtocolContext protocolContext) {
+		for (ProtocolContextStateListener protocolStateListener : this.protocolStateListeners) {
+			protocolStateListener.stopProtocolRun(protocolContext);
 		}
 	}
 
@@ -111,24 +161,35 @@ public class ProtocolStateMachine {
 	 * @throws ServletException
 	 */
 	public void checkRequestMessage(Object requestMessage) {
+		checkRequestMessage(requestMessage, this.protocolContext);
+	}
+
+	/**
+	 * Checks the given request message against the protocol state rules of the
+	 * given protocol context.
+	 * 
+	 * @param requestMessage
+	 * @param protocolContext
+	 */
+	public void checkRequestMessage(Object requestMessage,
+			ProtocolContext protocolContext) {
 		// TODO return some non-runtime exception
-		ProtocolState protocolState = this.protocolContext.getProtocolState();
+		ProtocolState protocolState = protocolContext.getProtocolState();
 		Class<?> requestMessageClass = requestMessage.getClass();
-		StartRequestMessage startRequestMessageAnnotation = requestMessageClass
-				.getAnnotation(StartRequestMessage.class);
-		if (null == startRequestMessageAnnotation) {
+		MessageBinding messageBinding = MessageBinding
+				.getMessageBinding(requestMessageClass);
+		ProtocolState initialState = messageBinding.getStartState();
+		if (null == initialState) {
 			if (null == protocolState) {
 				throw new RuntimeException("expected a protocol start message");
 			}
-			ProtocolStateAllowed protocolStateAllowedAnnotation = requestMessageClass
-					.getAnnotation(ProtocolStateAllowed.class);
-			if (null == protocolStateAllowedAnnotation) {
+			ProtocolState allowedProtocolState = messageBinding
+					.getAllowedState();
+			if (null == allowedProtocolState) {
 				throw new RuntimeException(
 						"cannot check protocol state for message: "
 								+ requestMessageClass.getSimpleName());
 			}
-			ProtocolState allowedProtocolState = protocolStateAllowedAnnotation
-					.value();
 			if (protocolState != allowedProtocolState) {
 				throw new RuntimeException(
 						"protocol state incorrect. expected: "
@@ -143,10 +204,34 @@ public class ProtocolStateMachine {
 				 * need to restart the web browser.
 				 */
 			}
-			ProtocolState initialState = startRequestMessageAnnotation.value();
-			this.protocolContext.setProtocolState(initialState);
-			notifyProtocolListenersStartProtocolRun();
-			notifyProtocolListenersProtocolStateTransition(initialState);
+			protocolContext.setProtocolState(initialState);
+			notifyProtocolListenersStartProtocolRun(protocolContext);
+			notifyProtocolListenersProtocolStateTransition(protocolContext,
+					initialState);
+		}
+	}
+
+	private static class ProtocolStateListenerAdapter implements
+			ProtocolContextStateListener {
+
+		private final ProtocolStateListener protocolStateListener;
+
+		public ProtocolStateListenerAdapter(
+				ProtocolStateListener protocolStateListener) {
+			this.protocolStateListener = protocolStateListener;
+		}
+
+		public void protocolStateTransition(ProtocolContext protocolContext,
+				ProtocolState newProtocolState) {
+			this.protocolStateListener.protocolStateTransition(newProtocolState);
+		}
+
+		public void startProtocolRun(ProtocolContext protocolContext) {
+			this.protocolStateListener.startProtocolRun();
+		}
+
+		public void stopProtocolRun(ProtocolContext protocolContext) {
+			this.protocolStateListener.stopProtocolRun();
 		}
 	}
 }
@@ -0,0 +1,40 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.applet.shared.protocol;
+
+import java.io.InputStream;
+
+/**
+ * Interface for HTTP receiver components that can also offer the HTTP body as
+ * a stream. The {@link Unmarshaller} will use the stream where it does not
+ * need the entire body as <code>byte[]</code>.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public interface StreamingHttpReceiver extends HttpReceiver {
+
+	/**
+	 * Gives back the HTTP body as stream. Either this method or
+	 * {@link #getBody()} can be invoked, but not both.
+	 * 
+	 * @return
+	 */
+	InputStream getBodyInputStream();
+}
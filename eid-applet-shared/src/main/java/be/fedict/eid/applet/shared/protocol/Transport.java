@@ -23,9 +23,7 @@ import java.io.PrintStream;
 import java.lang.reflect.Field;
 import java.util.List;
 
-import be.fedict.eid.applet.shared.annotation.HttpBody;
-import be.fedict.eid.applet.shared.annotation.HttpHeader;
-import be.fedict.eid.applet.shared.annotation.NotNull;
+import be.fedict.eid.applet.shared.protocol.MessageBinding.HeaderBinding;
 
 /**
  * Transport component is responsible for governing the process of converting
@@ -50,6 +48,23 @@ public class Transport {
 	 */
 	public static void transfer(Object dataObject,
 			HttpTransmitter httpTransmitter) {
+		transfer(dataObject, httpTransmitter, false);
+	}
+
+	/**
+	 * Transfers the given data objects over the HTTP transport component.
+	 * 
+	 * @param dataObject
+	 *            the data objects to transfer.
+	 * @param httpTransmitter
+	 *            the transport component.
+	 * @param compression
+	 *            set to <code>true</code> if the other side accepts compressed
+	 *            HTTP bodies.
+	 * @see be.fedict.eid.applet.shared.annotation.CompressibleBody
+	 */
+	public static void transfer(Object dataObject,
+			HttpTransmitter httpTransmitter, boolean compression) {
 		/*
 		 * Secure channel validation.
 		 */
@@ -59,13 +74,16 @@ public class Transport {
 
 		// TODO: semantic integrity validation
 
-		Class<?> dataClass = dataObject.getClass();
-		Field[] fields = dataClass.getFields();
+		/*
+		 * The binding plan of the data class is only computed once.
+		 */
+		MessageBinding messageBinding = MessageBinding
+				.getMessageBinding(dataObject.getClass());
 		/*
 		 * Input validation.
 		 */
 		try {
-			inputValidation(dataObject, fields);
+			inputValidation(dataObject, messageBinding.getNotNullFields());
 		} catch (Exception e) {
 			throw new IllegalArgumentException("error: " + e.getMessage(), e);
 		}
@@ -73,36 +91,128 @@ public class Transport {
 		/*
 		 * Add HTTP headers.
 		 */
-		Field bodyField = addHeaders(dataObject, httpTransmitter, fields);
+		addHeaders(dataObject, httpTransmitter,
+				messageBinding.getHeaderBindings());
 
 		/*
 		 * Add HTTP body.
 		 */
-		addBody(dataObject, httpTransmitter, bodyField);
+		int compressionThreshold = compression ? messageBinding
+				.getCompressionThreshold() : -1;
+		addBody(dataObject, httpTransmitter, messageBinding.getBodyField(),
+				compressionThreshold);
 	}
 
-	@SuppressWarnings("unchecked")
-	private static void addBody(Object dataObject,
-			HttpTransmitter httpTransmitter, Field bodyField) {
+	/**
+	 * Transfers the given data object as a single binary frame over the HTTP
+	 * transport component.
+	 * 
+	 * @param dataObject
+	 *            the data object to transfer.
+	 * @param httpTransmitter
+	 *            the transport component.
+	 * @see BinaryFraming
+	 */
+	public static void transferFrame(Object dataObject,
+			HttpTransmitter httpTransmitter) {
+		transferFrame(dataObject, httpTransmitter, false);
+	}
+
+	/**
+	 * Transfers the given data object as a single binary frame over the HTTP
+	 * transport component.
+	 * 
+	 * @param dataObject
+	 *            the data object to transfer.
+	 * @param httpTransmitter
+	 *            the transport component.
+	 * @param compression
+	 *            set to <code>true</code> if the other side accepts compressed
+	 *            HTTP bodies.
+	 * @see BinaryFraming
+	 */
+	public static void transferFrame(Object dataObject,
+			HttpTransmitter httpTransmitter, boolean compression) {
+		if (false == httpTransmitter.isSecure()) {
+			throw new SecurityException("applet service connection not trusted");
+		}
+
+		MessageBinding messageBinding = MessageBinding
+				.getMessageBinding(dataObject.getClass());
+		try {
+			inputValidation(dataObject, messageBinding.getNotNullFields());
+		} catch (Exception e) {
+			throw new IllegalArgumentException("error: " + e.getMessage(), e);
+		}
+
+		byte[] body = null;
+		boolean deflated = false;
+		Field bodyField = messageBinding.getBodyField();
 		if (null != bodyField) {
-			Object bodyValue;
-			try {
-				bodyValue = bodyField.get(dataObject);
-			} catch (Exception e) {
-				throw new RuntimeException("error reading field: "
-						+ bodyField.getName());
+			body = getBody(dataObject, bodyField);
+			if (null == body) {
+				body = new byte[0];
 			}
-			byte[] body;
-			if (bodyValue instanceof List<?>) {
-				List<String> bodyList = (List<String>) bodyValue;
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				PrintStream printStream = new PrintStream(baos);
-				for (String bodyStr : bodyList) {
-					printStream.println(bodyStr);
+			if (compression) {
+				byte[] encodedBody = encodeBody(body,
+						messageBinding.getCompressionThreshold());
+				if (null != encodedBody) {
+					body = encodedBody;
+					deflated = true;
 				}
-				body = baos.toByteArray();
-			} else {
-				body = (byte[]) bodyValue;
+			}
+		}
+		byte[] frame = BinaryFraming.writeFrame(dataObject, messageBinding,
+				body, deflated);
+
+		httpTransmitter.addHeader("Content-Type", BinaryFraming.CONTENT_TYPE);
+		httpTransmitter.addHeader("Content-Length",
+				Integer.toString(frame.length));
+		httpTransmitter.setBody(frame);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static byte[] getBody(Object dataObject, Field bodyField) {
+		Object bodyValue;
+		try {
+			bodyValue = bodyField.get(dataObject);
+		} catch (Exception e) {
+			throw new RuntimeException("error reading field: "
+					+ bodyField.getName());
+		}
+		if (bodyValue instanceof List<?>) {
+			List<String> bodyList = (List<String>) bodyValue;
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			PrintStream printStream = new PrintStream(baos);
+			for (String bodyStr : bodyList) {
+				printStream.println(bodyStr);
+			}
+			return baos.toByteArray();
+		}
+		return (byte[]) bodyValue;
+	}
+
+	/**
+	 * Gives back the deflated body, or <code>null</code> if the body should
+	 * not be compressed.
+	 */
+	private static byte[] encodeBody(byte[] body, int compressionThreshold) {
+		if (-1 == compressionThreshold || body.length < compressionThreshold) {
+			return null;
+		}
+		return BodyEncoding.deflate(body);
+	}
+
+	private static void addBody(Object dataObject,
+			HttpTransmitter httpTransmitter, Field bodyField,
+			int compressionThreshold) {
+		if (null != bodyField) {
+			byte[] body = getBody(dataObject, bodyField);
+			byte[] encodedBody = encodeBody(body, compressionThreshold);
+			if (null != encodedBody) {
+				httpTransmitter.addHeader(BodyEncoding.HTTP_HEADER,
+						BodyEncoding.DEFLATE);
+				body = encodedBody;
 			}
 			/*
 			 * The Content-Length header is required for IIS 6 and 7.
@@ -115,62 +225,20 @@ public class Transport {
 		}
 	}
 
-	private static Field addHeaders(Object dataObject,
-			HttpTransmitter httpTransmitter, Field[] fields) {
-		Field bodyField = null;
-		for (Field field : fields) {
-			HttpBody httpBodyAnnotation = field.getAnnotation(HttpBody.class);
-			if (null != httpBodyAnnotation) {
-				if (null == bodyField) {
-					bodyField = field;
-				} else {
-					throw new RuntimeException(
-							"multiple @HttpBody fields detected");
-				}
-			}
-			HttpHeader httpHeaderAnnotation = field
-					.getAnnotation(HttpHeader.class);
-			if (null == httpHeaderAnnotation) {
-				continue;
-			}
-			Object fieldValue;
-			try {
-				fieldValue = field.get(dataObject);
-			} catch (Exception e) {
-				throw new RuntimeException("error reading field: "
-						+ field.getName());
-			}
-			if (null != fieldValue) {
-				String httpHeaderName = httpHeaderAnnotation.value();
-				String httpHeaderValue;
-				if (String.class.equals(field.getType())) {
-					httpHeaderValue = (String) fieldValue;
-				} else if (Integer.TYPE.equals(field.getType())
-						|| Integer.class.equals(field.getType())) {
-					httpHeaderValue = ((Integer) fieldValue).toString();
-					// TODO: make this more generic
-				} else if (Boolean.TYPE.equals(field.getType())
-						|| Boolean.class.equals(field.getType())) {
-					httpHeaderValue = ((Boolean) fieldValue).toString();
-				} else if (field.getType().isEnum()) {
-					httpHeaderValue = ((Enum<?>) fieldValue).name();
-				} else {
-					throw new RuntimeException("unsupported field type: "
-							+ field.getType().getName());
-				}
-				httpTransmitter.addHeader(httpHeaderName, httpHeaderValue);
+	private static void addHeaders(Object dataObject,
+			HttpTransmitter httpTransmitter, HeaderBinding[] headerBindings) {
+		for (HeaderBinding headerBinding : headerBindings) {
+			String httpHeaderValue = headerBinding.extract(dataObject);
+			if (null != httpHeaderValue) {
+				httpTransmitter.addHeader(headerBinding.getHeaderName(),
+						httpHeaderValue);
 			}
 		}
-		return bodyField;
 	}
 
 	private static void inputValidation(Object dataObject, Field[] fields)
 			throws IllegalArgumentException, IllegalAccessException {
 		for (Field field : fields) {
-			NotNull notEmptyAnnotation = field.getAnnotation(NotNull.class);
-			if (null == notEmptyAnnotation) {
-				continue;
-			}
 			Object fieldValue = field.get(dataObject);
 			if (null == fieldValue) {
 				throw new IllegalArgumentException(
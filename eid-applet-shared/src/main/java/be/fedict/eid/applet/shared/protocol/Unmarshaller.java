@@ -21,6 +21,7 @@ package be.fedict.eid.applet.shared.protocol;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
@@ -31,21 +32,19 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-import be.fedict.eid.applet.shared.annotation.HttpBody;
 import be.fedict.eid.applet.shared.annotation.HttpHeader;
 import be.fedict.eid.applet.shared.annotation.MessageDiscriminator;
-import be.fedict.eid.applet.shared.annotation.NotNull;
-import be.fedict.eid.applet.shared.annotation.PostConstruct;
 import be.fedict.eid.applet.shared.annotation.ProtocolVersion;
-import be.fedict.eid.applet.shared.annotation.ValidateSemanticalIntegrity;
+import be.fedict.eid.applet.shared.protocol.MessageBinding.HeaderBinding;
 
 /**
  * Unmarshaller component is responsible for governing the process of converting
  * HTTP transported data streams to Java objects.
  * 
  * <p>
- * Keep this class stateless as it can be shared across different HTTP requests
- * inside AppletServiceServlet.
+ * An unmarshaller gets configured once, via its constructor and
+ * {@link #setMaxBodySize(int)}, and is then shared across different HTTP
+ * requests inside AppletServiceServlet. Keep it free of any per-request state.
  * </p>
  * 
  * @author Frank Cornelis
@@ -55,12 +54,14 @@ public class Unmarshaller {
 
 	private String protocolMessageDiscriminatorHeaderName;
 
-	private Map<String, Class<?>> protocolMessageClasses;
+	private Map<String, MessageBinding> messageBindings;
 
 	private String protocolVersionHeaderName;
 
 	private Integer protocolVersion;
 
+	private int maxBodySize;
+
 	/**
 	 * Main constructor.
 	 * 
@@ -70,8 +71,21 @@ public class Unmarshaller {
 		processMessageCatalog(catalog);
 	}
 
+	/**
+	 * Sets the maximum size of a decompressed HTTP body. Default is
+	 * <code>0</code>, meaning {@link BodyEncoding#DEFAULT_MAX_BODY_SIZE}.
+	 * Should only be called before the unmarshaller gets shared across
+	 * requests.
+	 * 
+	 * @param maxBodySize
+	 * @see BodyEncoding
+	 */
+	public void setMaxBodySize(int maxBodySize) {
+		this.maxBodySize = maxBodySize;
+	}
+
 	private void processMessageCatalog(ProtocolMessageCatalog catalog) {
-		this.protocolMessageClasses = new HashMap<String, Class<?>>();
+		this.messageBindings = new HashMap<String, MessageBinding>();
 		List<Class<?>> messageClasses = catalog.getCatalogClasses();
 		for (Class<?> messageClass : messageClasses) {
 			Field discriminatorField = findDiscriminatorField(messageClass);
@@ -96,12 +110,17 @@ public class Unmarshaller {
 				throw new RuntimeException("error reading field: "
 						+ e.getMessage());
 			}
-			if (this.protocolMessageClasses.containsValue(discriminatorValue)) {
+			if (this.messageBindings.containsKey(discriminatorValue)) {
 				throw new RuntimeException(
 						"discriminator field not unique for: "
 								+ messageClass.getName());
 			}
-			this.protocolMessageClasses.put(discriminatorValue, messageClass);
+			/*
+			 * All reflection on the message class happens here, once, instead
+			 * of on every received message.
+			 */
+			this.messageBindings.put(discriminatorValue,
+					MessageBinding.getMessageBinding(messageClass));
 
 			Field protocolVersionField = findProtocolVersionField(messageClass);
 			httpHeaderAnnotation = protocolVersionField
@@ -201,11 +220,27 @@ public class Unmarshaller {
 
 	/**
 	 * Receive a certain transfer object from the given HTTP receiver component.
+	 * Compressed HTTP bodies are rejected.
 	 * 
 	 * @param httpReceiver
 	 * @return
 	 */
 	public Object receive(HttpReceiver httpReceiver) {
+		return receive(httpReceiver, false);
+	}
+
+	/**
+	 * Receive a certain transfer object from the given HTTP receiver component.
+	 * 
+	 * @param httpReceiver
+	 * @param acceptCompressedBody
+	 *            whether compression has been negotiated with the sender.
+	 *            Even then, only HTTP bodies of <code>@CompressibleBody</code>
+	 *            messages are accepted in compressed form.
+	 * @return
+	 */
+	public Object receive(HttpReceiver httpReceiver,
+			boolean acceptCompressedBody) {
 		/*
 		 * Secure channel check
 		 */
@@ -231,9 +266,9 @@ public class Unmarshaller {
 		 */
 		String discriminatorValue = httpReceiver
 				.getHeaderValue(this.protocolMessageDiscriminatorHeaderName);
-		Class<?> protocolMessageClass = this.protocolMessageClasses
+		MessageBinding messageBinding = this.messageBindings
 				.get(discriminatorValue);
-		if (null == protocolMessageClass) {
+		if (null == messageBinding) {
 			throw new RuntimeException("unsupported message: "
 					+ discriminatorValue);
 		}
@@ -241,20 +276,16 @@ public class Unmarshaller {
 		/*
 		 * Create the message object
 		 */
-		Object transferObject;
-		try {
-			transferObject = protocolMessageClass.newInstance();
-		} catch (Exception e) {
-			throw new RuntimeException("error: " + e.getMessage(), e);
-		}
+		Object transferObject = messageBinding.newInstance();
 
 		/*
 		 * First inject all HTTP headers. Is also performing some syntactical
 		 * input validation.
 		 */
+		String bodyEncoding;
 		try {
-			injectHttpHeaderFields(httpReceiver, protocolMessageClass,
-					transferObject);
+			bodyEncoding = injectHttpHeaderFields(httpReceiver,
+					messageBinding, transferObject);
 		} catch (Exception e) {
 			throw new RuntimeException("error: " + e.getMessage(), e);
 		}
@@ -262,112 +293,213 @@ public class Unmarshaller {
 		/*
 		 * Inject HTTP body.
 		 */
-		Field[] fields = protocolMessageClass.getFields();
-		injectHttpBody(httpReceiver, transferObject, fields);
+		injectHttpBody(httpReceiver, messageBinding, transferObject,
+				bodyEncoding, acceptCompressedBody);
 
 		/*
 		 * Input validation.
 		 */
-		inputValidation(transferObject, fields);
+		inputValidation(messageBinding, transferObject);
 
 		/*
 		 * Semantical integrity validation.
 		 */
-		semanticValidation(protocolMessageClass, transferObject);
+		semanticValidation(messageBinding, transferObject);
 
 		/*
 		 * PostConstruct semantics
 		 */
-		postConstructSemantics(protocolMessageClass, transferObject);
+		postConstructSemantics(messageBinding, transferObject);
 
 		return transferObject;
 	}
 
-	private void injectHttpBody(HttpReceiver httpReceiver,
-			Object transferObject, Field[] fields) {
-		Field bodyField = null;
-		for (Field field : fields) {
-			HttpBody httpBodyAnnotation = field.getAnnotation(HttpBody.class);
-			if (null != httpBodyAnnotation) {
-				if (null == bodyField) {
-					bodyField = field;
-				} else {
-					throw new RuntimeException("multiple body fields detected");
-				}
+	/**
+	 * Receive a certain transfer object, sent as binary frame, from the given
+	 * HTTP receiver component. Compressed HTTP bodies are rejected.
+	 * 
+	 * @param httpReceiver
+	 * @return
+	 * @see BinaryFraming
+	 */
+	public Object receiveFrame(HttpReceiver httpReceiver) {
+		return receiveFrame(httpReceiver, false);
+	}
+
+	/**
+	 * Receive a certain transfer object, sent as binary frame, from the given
+	 * HTTP receiver component.
+	 * 
+	 * @param httpReceiver
+	 * @param acceptCompressedBody
+	 *            whether compression has been negotiated with the sender.
+	 * @return
+	 * @see BinaryFraming
+	 * @see #receive(HttpReceiver, boolean)
+	 */
+	public Object receiveFrame(HttpReceiver httpReceiver,
+			boolean acceptCompressedBody) {
+		if (false == httpReceiver.isSecure()) {
+			throw new SecurityException("HTTP receiver over unsecure channel");
+		}
+		BinaryFraming.FrameReader frameReader = new BinaryFraming.FrameReader(
+				httpReceiver.getBody());
+
+		/*
+		 * Message discriminator
+		 */
+		String discriminatorValue = frameReader.getMessageType();
+		MessageBinding messageBinding = this.messageBindings
+				.get(discriminatorValue);
+		if (null == messageBinding) {
+			throw new RuntimeException("unsupported message: "
+					+ discriminatorValue);
+		}
+
+		/*
+		 * The framed fields are typed, so no HTTP header parsing here. The
+		 * protocol version is checked as constant field.
+		 */
+		Object transferObject = messageBinding.newInstance();
+		frameReader.read(messageBinding, transferObject);
+
+		Field bodyField = messageBinding.getBodyField();
+		if (null != bodyField) {
+			byte[] body = frameReader.getBody();
+			if (frameReader.isDeflated()) {
+				checkBodyEncoding(messageBinding, BodyEncoding.DEFLATE,
+						acceptCompressedBody);
+				body = BodyEncoding.inflate(new ByteArrayInputStream(body),
+						this.maxBodySize);
 			}
+			Object bodyValue;
+			if (messageBinding.isListBody()) {
+				bodyValue = readBodyList(new ByteArrayInputStream(body));
+			} else {
+				bodyValue = body;
+			}
+			injectBody(bodyField, transferObject, bodyValue);
 		}
+
+		inputValidation(messageBinding, transferObject);
+		semanticValidation(messageBinding, transferObject);
+		postConstructSemantics(messageBinding, transferObject);
+
+		return transferObject;
+	}
+
+	private void injectHttpBody(HttpReceiver httpReceiver,
+			MessageBinding messageBinding, Object transferObject,
+			String bodyEncoding, boolean acceptCompressedBody) {
+		Field bodyField = messageBinding.getBodyField();
 		if (null != bodyField) {
-			byte[] body = httpReceiver.getBody();
+			byte[] body = null;
+			if (null != bodyEncoding) {
+				checkBodyEncoding(messageBinding, bodyEncoding,
+						acceptCompressedBody);
+				/*
+				 * Inflate straight from the HTTP body into the final buffer.
+				 */
+				body = BodyEncoding.inflate(getBodyInputStream(httpReceiver),
+						this.maxBodySize);
+			}
 			Object bodyValue;
-			if (List.class.equals(bodyField.getType())) {
-				List<String> bodyList = new LinkedList<String>();
-				BufferedReader reader = new BufferedReader(
-						new InputStreamReader(new ByteArrayInputStream(body)));
-				String line;
-				try {
-					while (null != (line = reader.readLine())) {
-						bodyList.add(line);
-					}
-				} catch (IOException e) {
-					throw new RuntimeException("IO error: " + e.getMessage());
+			if (messageBinding.isListBody()) {
+				InputStream bodyInputStream;
+				if (null != body) {
+					bodyInputStream = new ByteArrayInputStream(body);
+				} else {
+					bodyInputStream = getBodyInputStream(httpReceiver);
 				}
-				bodyValue = bodyList;
-			} else {
+				bodyValue = readBodyList(bodyInputStream);
+			} else if (null != body) {
 				bodyValue = body;
+			} else {
+				bodyValue = httpReceiver.getBody();
 			}
-			try {
-				bodyField.set(transferObject, bodyValue);
-			} catch (Exception e) {
-				throw new RuntimeException("error: " + e.getMessage(), e);
+			injectBody(bodyField, transferObject, bodyValue);
+		}
+	}
+
+	private void checkBodyEncoding(MessageBinding messageBinding,
+			String bodyEncoding, boolean acceptCompressedBody) {
+		if (false == BodyEncoding.DEFLATE.equals(bodyEncoding)) {
+			throw new RuntimeException("unsupported body encoding: "
+					+ bodyEncoding);
+		}
+		if (false == acceptCompressedBody) {
+			throw new SecurityException("body encoding not negotiated");
+		}
+		if (-1 == messageBinding.getCompressionThreshold()) {
+			throw new SecurityException("body encoding not allowed for message");
+		}
+	}
+
+	private List<String> readBodyList(InputStream bodyInputStream) {
+		List<String> bodyList = new LinkedList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				bodyInputStream));
+		String line;
+		try {
+			while (null != (line = reader.readLine())) {
+				bodyList.add(line);
 			}
+		} catch (IOException e) {
+			throw new RuntimeException("IO error: " + e.getMessage());
+		}
+		return bodyList;
+	}
+
+	private void injectBody(Field bodyField, Object transferObject,
+			Object bodyValue) {
+		try {
+			bodyField.set(transferObject, bodyValue);
+		} catch (Exception e) {
+			throw new RuntimeException("error: " + e.getMessage(), e);
 		}
 	}
 
-	private void postConstructSemantics(Class<?> protocolMessageClass,
+	private InputStream getBodyInputStream(HttpReceiver httpReceiver) {
+		if (httpReceiver instanceof StreamingHttpReceiver) {
+			/*
+			 * No need to buffer the entire body first.
+			 */
+			return ((StreamingHttpReceiver) httpReceiver).getBodyInputStream();
+		}
+		return new ByteArrayInputStream(httpReceiver.getBody());
+	}
+
+	private void postConstructSemantics(MessageBinding messageBinding,
 			Object transferObject) {
-		Method[] methods = protocolMessageClass.getMethods();
+		Method[] methods = messageBinding.getPostConstructMethods();
 		for (Method method : methods) {
-			PostConstruct postConstructAnnotation = method
-					.getAnnotation(PostConstruct.class);
-			if (null != postConstructAnnotation) {
-				try {
-					method.invoke(transferObject, new Object[] {});
-				} catch (InvocationTargetException e) {
-					Throwable methodException = e.getTargetException();
-					if (methodException instanceof RuntimeException) {
-						RuntimeException runtimeException = (RuntimeException) methodException;
-						/*
-						 * We directly rethrow the runtime exception to have a
-						 * cleaner stack trace.
-						 */
-						throw runtimeException;
-					}
-					throw new RuntimeException(
-							"@PostConstruct method invocation error: "
-									+ methodException.getMessage(),
-							methodException);
-				} catch (Exception e) {
-					throw new RuntimeException("@PostConstruct error: "
-							+ e.getMessage(), e);
+			try {
+				method.invoke(transferObject, new Object[] {});
+			} catch (InvocationTargetException e) {
+				Throwable methodException = e.getTargetException();
+				if (methodException instanceof RuntimeException) {
+					RuntimeException runtimeException = (RuntimeException) methodException;
+					/*
+					 * We directly rethrow the runtime exception to have a
+					 * cleaner stack trace.
+					 */
+					throw runtimeException;
 				}
+				throw new RuntimeException(
+						"@PostConstruct method invocation error: "
+								+ methodException.getMessage(), methodException);
+			} catch (Exception e) {
+				throw new RuntimeException("@PostConstruct error: "
+						+ e.getMessage(), e);
 			}
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	private void semanticValidation(Class<?> protocolMessageClass,
+	private void semanticValidation(MessageBinding messageBinding,
 			Object transferObject) {
-		ValidateSemanticalIntegrity validateSemanticalIntegrity = protocolMessageClass
-				.getAnnotation(ValidateSemanticalIntegrity.class);
-		if (null != validateSemanticalIntegrity) {
-			Class<? extends SemanticValidator<?>> validatorClass = validateSemanticalIntegrity
-					.value();
-			SemanticValidator validator;
-			try {
-				validator = validatorClass.newInstance();
-			} catch (Exception e) {
-				throw new RuntimeException("error: " + e.getMessage(), e);
-			}
+		SemanticValidator<Object> validator = messageBinding
+				.getSemanticValidator();
+		if (null != validator) {
 			try {
 				validator.validate(transferObject);
 			} catch (SemanticValidatorException e) {
@@ -377,13 +509,10 @@ public class Unmarshaller {
 		}
 	}
 
-	private void inputValidation(Object transferObject, Field[] fields) {
+	private void inputValidation(MessageBinding messageBinding,
+			Object transferObject) {
+		Field[] fields = messageBinding.getNotNullFields();
 		for (Field field : fields) {
-			NotNull notNullAnnotation = field.getAnnotation(NotNull.class);
-			if (null == notNullAnnotation) {
-				continue;
-			}
-			// XXX: doesn't make sense for primitive fields
 			Object fieldValue;
 			try {
 				fieldValue = field.get(transferObject);
@@ -397,83 +526,46 @@ public class Unmarshaller {
 		}
 	}
 
-	private void injectHttpHeaderFields(HttpReceiver httpReceiver,
-			Class<?> protocolMessageClass, Object transferObject)
+	/**
+	 * Injects the HTTP headers into the fields of the transfer object.
+	 * 
+	 * @return the body encoding, or <code>null</code> if the HTTP body has not
+	 *         been encoded.
+	 */
+	private String injectHttpHeaderFields(HttpReceiver httpReceiver,
+			MessageBinding messageBinding, Object transferObject)
 			throws IllegalArgumentException, IllegalAccessException {
+		String bodyEncoding = null;
 		List<String> headerNames = httpReceiver.getHeaderNames();
 		for (String headerName : headerNames) {
-			Field httpHeaderField = findHttpHeaderField(protocolMessageClass,
-					headerName);
-			if (null != httpHeaderField) {
-				String headerValue = httpReceiver.getHeaderValue(headerName);
-				if (0 != (httpHeaderField.getModifiers() & Modifier.FINAL)) {
-					/*
-					 * In this case we must check that the value corresponds.
-					 */
-					String constantValue;
-					if (String.class.equals(httpHeaderField.getType())) {
-						constantValue = (String) httpHeaderField
-								.get(transferObject);
-					} else if (Integer.TYPE.equals(httpHeaderField.getType())) {
-						constantValue = ((Integer) httpHeaderField
-								.get(transferObject)).toString();
-					} else {
-						throw new RuntimeException("unsupported type: "
-								+ httpHeaderField.getType().getName());
-					}
-					if (false == constantValue.equals(headerValue)) {
-						throw new RuntimeException("constant value mismatch: "
-								+ httpHeaderField.getName()
-								+ "; expected value: " + constantValue
-								+ "; actual value: " + headerValue);
-					}
-				} else {
-					if (String.class.equals(httpHeaderField.getType())) {
-						httpHeaderField.set(transferObject, headerValue);
-					} else if (Integer.TYPE.equals(httpHeaderField.getType())
-							|| Integer.class.equals(httpHeaderField.getType())) {
-						Integer intValue = Integer.parseInt(headerValue);
-						httpHeaderField.set(transferObject, intValue);
-						// TODO make this type handling more generic
-					} else if (Boolean.TYPE.equals(httpHeaderField.getType())
-							|| Boolean.class.equals(httpHeaderField.getType())) {
-						Boolean boolValue = Boolean.parseBoolean(headerValue);
-						httpHeaderField.set(transferObject, boolValue);
-					} else if (httpHeaderField.getType().isEnum()) {
-						Enum<?> e = (Enum<?>) httpHeaderField.getType()
-								.getEnumConstants()[0];
-						Object value = e.valueOf(e.getClass(), headerValue);
-						httpHeaderField.set(transferObject, value);
-					} else {
-						throw new RuntimeException(
-								"unsupported http header field type: "
-										+ httpHeaderField.getType());
-					}
-				}
+			if (null == headerName) {
+				throw new RuntimeException("header name should not be null");
 			}
-		}
-	}
-
-	private Field findHttpHeaderField(Class<?> protocolMessageClass,
-			String headerName) {
-		if (null == headerName) {
-			throw new RuntimeException("header name should not be null");
-		}
-		Field[] fields = protocolMessageClass.getFields();
-		for (Field field : fields) {
-			HttpHeader httpHeaderAnnotation = field
-					.getAnnotation(HttpHeader.class);
-			if (null == httpHeaderAnnotation) {
+			HeaderBinding headerBinding = messageBinding
+					.getHeaderBinding(headerName);
+			if (null == headerBinding) {
+				if (BodyEncoding.HTTP_HEADER.equalsIgnoreCase(headerName)) {
+					bodyEncoding = httpReceiver.getHeaderValue(headerName);
+				}
 				continue;
 			}
-			String fieldHttpHeaderName = httpHeaderAnnotation.value();
-			/*
-			 * Ignore cases since the HttpServletRequest class likes to do so.
-			 */
-			if (headerName.equalsIgnoreCase(fieldHttpHeaderName)) {
-				return field;
+			String headerValue = httpReceiver.getHeaderValue(headerName);
+			if (headerBinding.isConstant()) {
+				/*
+				 * In this case we must check that the value corresponds.
+				 */
+				String constantValue = headerBinding
+						.getConstantValue(transferObject);
+				if (false == constantValue.equals(headerValue)) {
+					throw new RuntimeException("constant value mismatch: "
+							+ headerBinding.getField().getName()
+							+ "; expected value: " + constantValue
+							+ "; actual value: " + headerValue);
+				}
+			} else {
+				headerBinding.inject(transferObject, headerValue);
 			}
 		}
-		return null;
+		return bodyEncoding;
 	}
 }
@@ -0,0 +1,149 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2008-2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.shared;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+
+import org.junit.Test;
+
+import be.fedict.eid.applet.shared.AuthenticationContract;
+
+public class AuthenticationContractTest {
+
+	@Test
+	public void testCalculateToBeSigned() throws Exception {
+		// setup
+		AuthenticationContract authenticationContract = createAuthenticationContract();
+		byte[] expectedToBeSigned = calculateLegacyToBeSigned();
+
+		// operate
+		byte[] result = authenticationContract.calculateToBeSigned();
+
+		// verify
+		assertArrayEquals(expectedToBeSigned, result);
+		assertEquals(expectedToBeSigned.length,
+				authenticationContract.getToBeSignedLength());
+	}
+
+	@Test
+	public void testWriteToBeSignedLittleEndianBuffer() throws Exception {
+		// setup
+		AuthenticationContract authenticationContract = createAuthenticationContract();
+		byte[] expectedToBeSigned = calculateLegacyToBeSigned();
+		ByteBuffer buffer = ByteBuffer.allocate(authenticationContract
+				.getToBeSignedLength());
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		// operate
+		authenticationContract.writeToBeSigned(buffer);
+
+		// verify
+		assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+		assertEquals(0, buffer.remaining());
+		assertArrayEquals(expectedToBeSigned, buffer.array());
+	}
+
+	@Test
+	public void testUpdateSignature() throws Exception {
+		// setup
+		AuthenticationContract authenticationContract = createAuthenticationContract();
+		KeyPairGenerator keyPairGenerator = KeyPairGenerator
+				.getInstance("RSA");
+		keyPairGenerator.initialize(1024);
+		KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+		Signature signature = Signature.getInstance("SHA1withRSA");
+		signature.initSign(keyPair.getPrivate());
+		signature.update(calculateLegacyToBeSigned());
+		byte[] expectedSignatureValue = signature.sign();
+
+		signature.initSign(keyPair.getPrivate());
+
+		// operate
+		authenticationContract.update(signature);
+
+		// verify
+		assertArrayEquals(expectedSignatureValue, signature.sign());
+	}
+
+	private AuthenticationContract createAuthenticationContract()
+			throws Exception {
+		return new AuthenticationContract(SALT, HOSTNAME,
+				InetAddress.getByAddress(INET_ADDRESS), SESSION_ID,
+				ENCODED_SERVER_CERTIFICATE, CHALLENGE);
+	}
+
+	private static final byte[] SALT = "salt".getBytes();
+
+	private static final String HOSTNAME = "www.e-contract.be";
+
+	private static final byte[] INET_ADDRESS = new byte[] { 127, 0, 0, 1 };
+
+	private static final byte[] SESSION_ID = "session-id".getBytes();
+
+	private static final byte[] ENCODED_SERVER_CERTIFICATE = "certificate"
+			.getBytes();
+
+	private static final byte[] CHALLENGE = "challenge".getBytes();
+
+	/**
+	 * The original stream based encoding of the authentication contract.
+	 */
+	private byte[] calculateLegacyToBeSigned() throws IOException {
+		ByteArrayOutputStream toBeSignedOutputStream = new ByteArrayOutputStream();
+		writeTag(AuthenticationContract.SALT_TAG, SALT, toBeSignedOutputStream);
+		writeTag(AuthenticationContract.HOSTNAME_TAG, HOSTNAME.getBytes(),
+				toBeSignedOutputStream);
+		writeTag(AuthenticationContract.INET_ADDRESS_TAG, INET_ADDRESS,
+				toBeSignedOutputStream);
+		writeTag(AuthenticationContract.LEGAL_NOTICE_TAG,
+				AuthenticationContract.LEGAL_NOTICE.getBytes(),
+				toBeSignedOutputStream);
+		writeTag(AuthenticationContract.SESSION_ID_TAG, SESSION_ID,
+				toBeSignedOutputStream);
+		writeTag(AuthenticationContract.ENCODED_SERVER_CERTIFICATE_TAG,
+				ENCODED_SERVER_CERTIFICATE, toBeSignedOutputStream);
+		writeTag(AuthenticationContract.CHALLENGE_TAG, CHALLENGE,
+				toBeSignedOutputStream);
+		return toBeSignedOutputStream.toByteArray();
+	}
+
+	private void writeTag(int tag, byte[] value, OutputStream outputStream)
+			throws IOException {
+		outputStream.write(intToByteArray(tag));
+		outputStream.write(intToByteArray(value.length));
+		outputStream.write(value);
+	}
+
+	private byte[] intToByteArray(int value) {
+		return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16),
+				(byte) (value >>> 8), (byte) value };
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.shared;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.InputStream;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+
+import org.junit.Test;
+
+import be.fedict.eid.applet.shared.CertificateParser;
+
+public class CertificateParserTest {
+
+	@Test
+	public void testParseSharedCertificate() throws Exception {
+		// setup
+		X509Certificate certificate = loadCertificate("/test-ca.pem");
+		byte[] encodedCertificate = certificate.getEncoded();
+
+		// operate
+		X509Certificate result1 = CertificateParser
+				.parseSharedCertificate(encodedCertificate);
+		X509Certificate result2 = CertificateParser
+				.parseSharedCertificate(encodedCertificate.clone());
+		X509Certificate result3 = CertificateParser
+				.parseCertificate(encodedCertificate);
+
+		// verify
+		assertEquals(certificate, result1);
+		assertSame(result1, result2);
+		assertEquals(certificate, result3);
+	}
+
+	private static X509Certificate loadCertificate(String resourceName)
+			throws Exception {
+		InputStream inputStream = CertificateParserTest.class
+				.getResourceAsStream(resourceName);
+		try {
+			CertificateFactory certificateFactory = CertificateFactory
+					.getInstance("X.509");
+			return (X509Certificate) certificateFactory
+					.generateCertificate(inputStream);
+		} finally {
+			inputStream.close();
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2014 e-Contract.be BVBA.
+ * 
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ * 
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.shared;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import be.fedict.eid.applet.shared.FinishedMessage;
+import be.fedict.eid.applet.shared.HelloMessage;
+import be.fedict.eid.applet.shared.IdentificationRequestMessage;
+import be.fedict.eid.applet.shared.IdentityDataMessage;
+import be.fedict.eid.applet.shared.SignatureDataMessage;
+import be.fedict.eid.applet.shared.protocol.ProtocolContext;
+import be.fedict.eid.applet.shared.protocol.ProtocolContextStateListener;
+import be.fedict.eid.applet.shared.protocol.ProtocolState;
+import be.fedict.eid.applet.shared.protocol.ProtocolStateMachine;
+
+public class ProtocolStateMachineTest {
+
+	@Test
+	public void testIdentificationRun() throws Exception {
+		// setup
+		TestProtocolContext protocolContext = new TestProtocolContext();
+		ProtocolStateMachine protocolStateMachine = new ProtocolStateMachine(
+				protocolContext);
+
+		// operate & verify
+		protocolStateMachine.checkRequestMessage(new HelloMessage());
+		assertEquals(ProtocolState.INIT, protocolContext.getProtocolState());
+		protocolStateMachine
+				.checkResponseMessage(new IdentificationRequestMessage());
+		assertEquals(ProtocolState.IDENTIFY, protocolContext
+				.getProtocolState());
+		protocolStateMachine.checkRequestMessage(new IdentityDataMessage());
+		protocolStateMachine.checkResponseMessage(new FinishedMessage());
+		assertNull(protocolContext.getProtocolState());
+	}
+
+	@Test
+	public void testWrongProtocolState() throws Exception {
+		// setup
+		TestProtocolContext protocolContext = new TestProtocolContext();
+		ProtocolStateMachine protocolStateMachine = new ProtocolStateMachine(
+				protocolContext);
+		protocolStateMachine.checkRequestMessage(new HelloMessage());
+		protocolStateMachine
+				.checkResponseMessage(new IdentificationRequestMessage());
+
+		// operate & verify
+		try {
+			protocolStateMachine
+					.checkRequestMessage(new SignatureDataMessage());
+			fail();
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSharedStateMachine() throws Exception {
+		// setup
+		ProtocolStateMachine protocolStateMachine = new ProtocolStateMachine();
+		TestProtocolContextStateListener protocolStateListener = new TestProtocolContextStateListener();
+		protocolStateMachine.addProtocolStateListener(protocolStateListener);
+		TestProtocolContext protocolContext1 = new TestProtocolContext();
+		TestProtocolContext protocolContext2 = new TestProtocolContext();
+
+		// operate
+		protocolStateMachine.checkRequestMessage(new HelloMessage(),
+				protocolContext1);
+		protocolStateMachine.checkResponseMessage(
+				new IdentificationRequestMessage(), protocolContext1);
+		protocolStateMachine.checkRequestMessage(new HelloMessage(),
+				protocolContext2);
+
+		// verify
+		assertEquals(ProtocolState.IDENTIFY, protocolContext1
+				.getProtocolState());
+		assertEquals(ProtocolState.INIT, protocolContext2.getProtocolState());
+		assertSame(protocolContext2, protocolStateListener.startedProtocolContext);
+	}
+
+	@Test
+	public void testResponsesAllowed() throws Exception {
+		// operate
+		List<Class<?>> result = ProtocolStateMachine
+				.getResponsesAllowed(IdentityDataMessage.class);
+
+		// verify
+		assertTrue(result.contains(FinishedMessage.class));
+		assertNull(ProtocolStateMachine
+				.getResponsesAllowed(FinishedMessage.class));
+	}
+
+	private static class TestProtocolContext implements ProtocolContext {
+
+		private ProtocolState protocolState;
+
+		public ProtocolState getProtocolState() {
+			return this.protocolState;
+		}
+
+		public void setProtocolState(ProtocolState protocolState) {
+			this.protocolState = protocolState;
+		}
+
+		public void removeProtocolState() {
+			this.protocolState = null;
+		}
+	}
+
+	private static class TestProtocolContextStateListener implements
+			ProtocolContextStateListener {
+
+		private ProtocolContext startedProtocolContext;
+
+		public void protocolStateTransition(ProtocolContext protocolContext,
+				ProtocolState newProtocolState) {
+		}
+
+		public void startProtocolRun(ProtocolContext protocolContext) {
+			this.startedProtocolContext = protocolContext;
+		}
+
+		public void stopProtocolRun(ProtocolContext protocolContext) {
+		}
+	}
+}
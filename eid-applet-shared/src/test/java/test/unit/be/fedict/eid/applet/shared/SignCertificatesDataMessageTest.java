@@ -0,0 +1,95 @@
+/*
+ * eID Applet Project.
+ * Copyright (C) 2008-2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.applet.shared;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import be.fedict.eid.applet.shared.SignCertificatesDataMessage;
+
+public class SignCertificatesDataMessageTest {
+
+	@Test
+	public void testMissingCertificates() throws Exception {
+		// setup
+		SignCertificatesDataMessage message = new SignCertificatesDataMessage(
+				new byte[1300], new byte[1300], new byte[1300], null, null,
+				null, null, null, null);
+
+		// operate
+		message.postConstruct();
+
+		// verify
+		assertNull(message.certificateChain.get(0));
+		assertNull(message.rootCertificate);
+	}
+
+	@Test
+	public void testNegativeSize() throws Exception {
+		// setup
+		SignCertificatesDataMessage message = new SignCertificatesDataMessage(
+				new byte[1300], new byte[1300], new byte[1300], new byte[10],
+				null, null, null, null, null);
+		message.caCertFileSize = -1300;
+
+		// operate & verify
+		try {
+			message.postConstruct();
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testNegativeDataSize() throws Exception {
+		// setup
+		SignCertificatesDataMessage message = new SignCertificatesDataMessage(
+				new byte[1300], new byte[1300], new byte[1300], new byte[10],
+				null, null, null, null, null);
+		message.identityFileSize = -1;
+
+		// operate & verify
+		try {
+			message.postConstruct();
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testOversizedSize() throws Exception {
+		// setup
+		SignCertificatesDataMessage message = new SignCertificatesDataMessage(
+				new byte[1300], new byte[1300], new byte[1300], null, null,
+				null, null, null, null);
+		message.caCertFileSize = Integer.MAX_VALUE;
+
+		// operate & verify
+		try {
+			message.postConstruct();
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+}
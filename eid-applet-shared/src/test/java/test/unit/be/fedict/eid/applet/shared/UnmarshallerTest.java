@@ -26,11 +26,16 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.zip.DeflaterOutputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.easymock.Capture;
 import org.easymock.EasyMock;
 import org.junit.Test;
 
@@ -41,11 +46,17 @@ import be.fedict.eid.applet.shared.ErrorCode;
 import be.fedict.eid.applet.shared.FinishedMessage;
 import be.fedict.eid.applet.shared.IdentificationRequestMessage;
 import be.fedict.eid.applet.shared.IdentityDataMessage;
+import be.fedict.eid.applet.shared.annotation.CompressibleBody;
+import be.fedict.eid.applet.shared.annotation.HttpBody;
 import be.fedict.eid.applet.shared.annotation.HttpHeader;
 import be.fedict.eid.applet.shared.annotation.MessageDiscriminator;
 import be.fedict.eid.applet.shared.annotation.PostConstruct;
+import be.fedict.eid.applet.shared.protocol.BinaryFraming;
+import be.fedict.eid.applet.shared.protocol.BodyEncoding;
 import be.fedict.eid.applet.shared.protocol.HttpReceiver;
+import be.fedict.eid.applet.shared.protocol.HttpTransmitter;
 import be.fedict.eid.applet.shared.protocol.ProtocolMessageCatalog;
+import be.fedict.eid.applet.shared.protocol.Transport;
 import be.fedict.eid.applet.shared.protocol.Unmarshaller;
 
 public class UnmarshallerTest {
@@ -581,6 +592,457 @@ public class UnmarshallerTest {
 		}
 	}
 
+	@Test
+	public void receiveFrame() throws Exception {
+		// setup
+		ClientEnvironmentMessage message = new ClientEnvironmentMessage();
+		message.javaVersion = "1.6";
+		message.javaVendor = "Sun";
+		message.osName = "Linux";
+		message.osArch = "i386";
+		message.osVersion = "2.6";
+		message.readerList = new LinkedList<String>();
+		message.readerList.add("reader 1");
+		message.readerList.add("reader 2");
+
+		HttpTransmitter mockHttpTransmitter = EasyMock
+				.createMock(HttpTransmitter.class);
+		Capture<byte[]> frameCapture = new Capture<byte[]>();
+
+		// expectations
+		EasyMock.expect(mockHttpTransmitter.isSecure()).andReturn(true);
+		mockHttpTransmitter.addHeader("Content-Type",
+				BinaryFraming.CONTENT_TYPE);
+		mockHttpTransmitter.addHeader(EasyMock.eq("Content-Length"),
+				(String) EasyMock.anyObject());
+		mockHttpTransmitter.setBody(EasyMock.capture(frameCapture));
+
+		// prepare
+		EasyMock.replay(mockHttpTransmitter);
+
+		// operate
+		Transport.transferFrame(message, mockHttpTransmitter);
+
+		// verify
+		EasyMock.verify(mockHttpTransmitter);
+		String frame = new String(frameCapture.getValue(), "ISO-8859-1");
+		assertFalse(frame.contains("X-AppletProtocol-"));
+
+		// setup
+		Unmarshaller unmarshaller = new Unmarshaller(
+				new AppletProtocolMessageCatalog());
+		HttpReceiver mockHttpReceiver = EasyMock.createMock(HttpReceiver.class);
+
+		// stubs
+		EasyMock.expect(mockHttpReceiver.isSecure()).andStubReturn(true);
+		EasyMock.expect(mockHttpReceiver.getBody()).andStubReturn(
+				frameCapture.getValue());
+
+		// prepare
+		EasyMock.replay(mockHttpReceiver);
+
+		// operate
+		Object result = unmarshaller.receiveFrame(mockHttpReceiver);
+
+		// verify
+		EasyMock.verify(mockHttpReceiver);
+		assertTrue(result instanceof ClientEnvironmentMessage);
+		ClientEnvironmentMessage resultMessage = (ClientEnvironmentMessage) result;
+		assertEquals("1.6", resultMessage.javaVersion);
+		assertEquals("Linux", resultMessage.osName);
+		assertNull(resultMessage.navigatorAppName);
+		assertEquals(2, resultMessage.readerList.size());
+		assertEquals("reader 2", resultMessage.readerList.get(1));
+	}
+
+	@Test
+	public void receiveFrameWithUnsupportedVersion() throws Exception {
+		// setup
+		Unmarshaller unmarshaller = new Unmarshaller(
+				new AppletProtocolMessageCatalog());
+		HttpReceiver mockHttpReceiver = EasyMock.createMock(HttpReceiver.class);
+
+		// stubs
+		EasyMock.expect(mockHttpReceiver.isSecure()).andStubReturn(true);
+		EasyMock.expect(mockHttpReceiver.getBody()).andStubReturn(
+				new byte[] { (byte) (BinaryFraming.VERSION + 1) });
+
+		// prepare
+		EasyMock.replay(mockHttpReceiver);
+
+		// operate
+		try {
+			unmarshaller.receiveFrame(mockHttpReceiver);
+			fail();
+		} catch (RuntimeException e) {
+			// expected
+			LOG.debug("expected exception: " + e.getMessage());
+			EasyMock.verify(mockHttpReceiver);
+		}
+	}
+
+	@Test
+	public void receiveFrameWithUnknownField() throws Exception {
+		// setup
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		DataOutputStream frameOutputStream = new DataOutputStream(frame);
+		frameOutputStream.writeByte(BinaryFraming.VERSION);
+		frameOutputStream.writeUTF(FinishedMessage.TYPE);
+		frameOutputStream.writeByte(2);
+		frameOutputStream.writeUTF(AbstractProtocolMessage.HTTP_HEADER_PREFIX
+				+ "Version");
+		frameOutputStream.writeInt(AbstractProtocolMessage.PROTOCOL_VERSION);
+		frameOutputStream.writeUTF(AbstractProtocolMessage.HTTP_HEADER_PREFIX
+				+ "Foobar");
+		frameOutputStream.writeUTF("foobar");
+		frameOutputStream.flush();
+
+		Unmarshaller unmarshaller = new Unmarshaller(
+				new AppletProtocolMessageCatalog());
+		HttpReceiver mockHttpReceiver = EasyMock.createMock(HttpReceiver.class);
+
+		// stubs
+		EasyMock.expect(mockHttpReceiver.isSecure()).andStubReturn(true);
+		EasyMock.expect(mockHttpReceiver.getBody()).andStubReturn(
+				frame.toByteArray());
+
+		// prepare
+		EasyMock.replay(mockHttpReceiver);
+
+		// operate
+		try {
+			unmarshaller.receiveFrame(mockHttpReceiver);
+			fail();
+		} catch (RuntimeException e) {
+			// expected
+			LOG.debug("expected exception: " + e.getMessage());
+			EasyMock.verify(mockHttpReceiver);
+		}
+	}
+
+	@Test
+	public void receiveFrameWithUnknownEnumConstant() throws Exception {
+		// setup
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		DataOutputStream frameOutputStream = new DataOutputStream(frame);
+		frameOutputStream.writeByte(BinaryFraming.VERSION);
+		frameOutputStream.writeUTF(FinishedMessage.TYPE);
+		frameOutputStream.writeByte(2);
+		frameOutputStream.writeUTF(AbstractProtocolMessage.HTTP_HEADER_PREFIX
+				+ "Version");
+		frameOutputStream.writeInt(AbstractProtocolMessage.PROTOCOL_VERSION);
+		frameOutputStream.writeUTF(AbstractProtocolMessage.HTTP_HEADER_PREFIX
+				+ "ErrorCode");
+		frameOutputStream.writeUTF("FOOBAR");
+		frameOutputStream.flush();
+
+		Unmarshaller unmarshaller = new Unmarshaller(
+				new AppletProtocolMessageCatalog());
+		HttpReceiver mockHttpReceiver = EasyMock.createMock(HttpReceiver.class);
+
+		// stubs
+		EasyMock.expect(mockHttpReceiver.isSecure()).andStubReturn(true);
+		EasyMock.expect(mockHttpReceiver.getBody()).andStubReturn(
+				frame.toByteArray());
+
+		// prepare
+		EasyMock.replay(mockHttpReceiver);
+
+		// operate
+		try {
+			unmarshaller.receiveFrame(mockHttpReceiver);
+			fail();
+		} catch (RuntimeException e) {
+			// expected
+			LOG.debug("expected exception: " + e.getMessage());
+			EasyMock.verify(mockHttpReceiver);
+		}
+	}
+
+	@Test
+	public void receiveFrameWithoutProtocolVersion() throws Exception {
+		// setup
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		DataOutputStream frameOutputStream = new DataOutputStream(frame);
+		frameOutputStream.writeByte(BinaryFraming.VERSION);
+		frameOutputStream.writeUTF(FinishedMessage.TYPE);
+		frameOutputStream.writeByte(0);
+		frameOutputStream.flush();
+
+		Unmarshaller unmarshaller = new Unmarshaller(
+				new AppletProtocolMessageCatalog());
+		HttpReceiver mockHttpReceiver = EasyMock.createMock(HttpReceiver.class);
+
+		// stubs
+		EasyMock.expect(mockHttpReceiver.isSecure()).andStubReturn(true);
+		EasyMock.expect(mockHttpReceiver.getBody()).andStubReturn(
+				frame.toByteArray());
+
+		// prepare
+		EasyMock.replay(mockHttpReceiver);
+
+		// operate
+		try {
+			unmarshaller.receiveFrame(mockHttpReceiver);
+			fail();
+		} catch (RuntimeException e) {
+			// expected
+			LOG.debug("expected exception: " + e.getMessage());
+			EasyMock.verify(mockHttpReceiver);
+		}
+	}
+
+	@Test
+	public void receiveFinishedMessageFrame() throws Exception {
+		// setup
+		FinishedMessage message = new FinishedMessage(
+				ErrorCode.CERTIFICATE_EXPIRED);
+
+		HttpTransmitter mockHttpTransmitter = EasyMock
+				.createMock(HttpTransmitter.class);
+		Capture<byte[]> frameCapture = new Capture<byte[]>();
+
+		// expectations
+		EasyMock.expect(mockHttpTransmitter.isSecure()).andReturn(true);
+		mockHttpTransmitter.addHeader("Content-Type",
+				BinaryFraming.CONTENT_TYPE);
+		mockHttpTransmitter.addHeader(EasyMock.eq("Content-Length"),
+				(String) EasyMock.anyObject());
+		mockHttpTransmitter.setBody(EasyMock.capture(frameCapture));
+
+		// prepare
+		EasyMock.replay(mockHttpTransmitter);
+
+		// operate
+		Transport.transferFrame(message, mockHttpTransmitter);
+
+		// verify
+		EasyMock.verify(mockHttpTransmitter);
+
+		// setup
+		Unmarshaller unmarshaller = new Unmarshaller(
+				new AppletProtocolMessageCatalog());
+		HttpReceiver mockHttpReceiver = EasyMock.createMock(HttpReceiver.class);
+
+		// stubs
+		EasyMock.expect(mockHttpReceiver.isSecure()).andStubReturn(true);
+		EasyMock.expect(mockHttpReceiver.getBody()).andStubReturn(
+				frameCapture.getValue());
+
+		// prepare
+		EasyMock.replay(mockHttpReceiver);
+
+		// operate
+		Object result = unmarshaller.receiveFrame(mockHttpReceiver);
+
+		// verify
+		EasyMock.verify(mockHttpReceiver);
+		assertEquals(ErrorCode.CERTIFICATE_EXPIRED,
+				((FinishedMessage) result).errorCode);
+	}
+
+	@CompressibleBody(threshold = 16)
+	public static final class CompressibleTestMessage extends
+			AbstractProtocolMessage {
+
+		@HttpHeader(TYPE_HTTP_HEADER)
+		@MessageDiscriminator
+		public static final String TYPE = CompressibleTestMessage.class
+				.getSimpleName();
+
+		@HttpBody
+		public byte[] body;
+	}
+
+	@Test
+	public void receiveCompressedFrame() throws Exception {
+		// setup
+		CompressibleTestMessage message = new CompressibleTestMessage();
+		message.body = new byte[1024];
+		Arrays.fill(message.body, (byte) 'a');
+
+		HttpTransmitter mockHttpTransmitter = EasyMock
+				.createMock(HttpTransmitter.class);
+		Capture<byte[]> frameCapture = new Capture<byte[]>();
+
+		// expectations
+		EasyMock.expect(mockHttpTransmitter.isSecure()).andReturn(true);
+		mockHttpTransmitter.addHeader("Content-Type",
+				BinaryFraming.CONTENT_TYPE);
+		mockHttpTransmitter.addHeader(EasyMock.eq("Content-Length"),
+				(String) EasyMock.anyObject());
+		mockHttpTransmitter.setBody(EasyMock.capture(frameCapture));
+
+		// prepare
+		EasyMock.replay(mockHttpTransmitter);
+
+		// operate
+		Transport.transferFrame(message, mockHttpTransmitter, true);
+
+		// verify
+		EasyMock.verify(mockHttpTransmitter);
+		assertTrue(frameCapture.getValue().length < message.body.length);
+
+		// setup
+		ProtocolMessageCatalog catalog = new ProtocolMessageCatalog() {
+
+			public List<Class<?>> getCatalogClasses() {
+				List<Class<?>> catalogClasses = new LinkedList<Class<?>>();
+				catalogClasses.add(CompressibleTestMessage.class);
+				return catalogClasses;
+			}
+		};
+		Unmarshaller unmarshaller = new Unmarshaller(catalog);
+		HttpReceiver mockHttpReceiver = EasyMock.createMock(HttpReceiver.class);
+
+		// stubs
+		EasyMock.expect(mockHttpReceiver.isSecure()).andStubReturn(true);
+		EasyMock.expect(mockHttpReceiver.getBody()).andStubReturn(
+				frameCapture.getValue());
+
+		// prepare
+		EasyMock.replay(mockHttpReceiver);
+
+		// operate
+		Object result = unmarshaller.receiveFrame(mockHttpReceiver, true);
+
+		// verify
+		EasyMock.verify(mockHttpReceiver);
+		assertArrayEquals(message.body,
+				((CompressibleTestMessage) result).body);
+
+		// setup
+		unmarshaller.setMaxBodySize(512);
+
+		// operate & verify
+		try {
+			unmarshaller.receiveFrame(mockHttpReceiver, true);
+			fail();
+		} catch (SecurityException e) {
+			// expected
+			LOG.debug("expected exception: " + e.getMessage());
+		}
+	}
+
+	@Test
+	public void receiveCompressedBodyNotNegotiated() throws Exception {
+		// setup
+		byte[] body = new byte[1024];
+		Arrays.fill(body, (byte) 'a');
+		Unmarshaller unmarshaller = new Unmarshaller(
+				new CompressibleTestMessageCatalog());
+		HttpReceiver mockHttpReceiver = createCompressedBodyHttpReceiver(
+				body.length, deflate(body));
+
+		// prepare
+		EasyMock.replay(mockHttpReceiver);
+
+		// operate & verify
+		try {
+			unmarshaller.receive(mockHttpReceiver);
+			fail();
+		} catch (SecurityException e) {
+			// expected
+			LOG.debug("expected exception: " + e.getMessage());
+		}
+
+		// operate
+		Object result = unmarshaller.receive(mockHttpReceiver, true);
+
+		// verify
+		assertArrayEquals(body, ((CompressibleTestMessage) result).body);
+	}
+
+	@Test
+	public void receiveCompressedBodyWithOversizedLength() throws Exception {
+		// setup
+		Unmarshaller unmarshaller = new Unmarshaller(
+				new CompressibleTestMessageCatalog());
+		HttpReceiver mockHttpReceiver = createCompressedBodyHttpReceiver(
+				Integer.MAX_VALUE, deflate("hello world".getBytes()));
+
+		// prepare
+		EasyMock.replay(mockHttpReceiver);
+
+		// operate & verify: no max body size configured
+		try {
+			unmarshaller.receive(mockHttpReceiver, true);
+			fail();
+		} catch (SecurityException e) {
+			// expected
+			LOG.debug("expected exception: " + e.getMessage());
+		}
+	}
+
+	@Test
+	public void receiveCompressedBodyWithTooSmallLength() throws Exception {
+		// setup
+		byte[] body = new byte[1024];
+		Unmarshaller unmarshaller = new Unmarshaller(
+				new CompressibleTestMessageCatalog());
+		HttpReceiver mockHttpReceiver = createCompressedBodyHttpReceiver(16,
+				deflate(body));
+
+		// prepare
+		EasyMock.replay(mockHttpReceiver);
+
+		// operate & verify
+		try {
+			unmarshaller.receive(mockHttpReceiver, true);
+			fail();
+		} catch (RuntimeException e) {
+			// expected
+			LOG.debug("expected exception: " + e.getMessage());
+		}
+	}
+
+	private static class CompressibleTestMessageCatalog implements
+			ProtocolMessageCatalog {
+
+		public List<Class<?>> getCatalogClasses() {
+			List<Class<?>> catalogClasses = new LinkedList<Class<?>>();
+			catalogClasses.add(CompressibleTestMessage.class);
+			return catalogClasses;
+		}
+	}
+
+	private static byte[] deflate(byte[] data) throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(
+				outputStream);
+		deflaterOutputStream.write(data);
+		deflaterOutputStream.finish();
+		return outputStream.toByteArray();
+	}
+
+	private static HttpReceiver createCompressedBodyHttpReceiver(
+			int announcedLength, byte[] deflatedBody) throws Exception {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		new DataOutputStream(body).writeInt(announcedLength);
+		body.write(deflatedBody);
+
+		HttpReceiver mockHttpReceiver = EasyMock.createMock(HttpReceiver.class);
+		EasyMock.expect(mockHttpReceiver.isSecure()).andStubReturn(true);
+		EasyMock.expect(
+				mockHttpReceiver.getHeaderValue("X-AppletProtocol-Version"))
+				.andStubReturn("1");
+		EasyMock.expect(
+				mockHttpReceiver.getHeaderValue("X-AppletProtocol-Type"))
+				.andStubReturn(CompressibleTestMessage.TYPE);
+		EasyMock.expect(
+				mockHttpReceiver.getHeaderValue(BodyEncoding.HTTP_HEADER))
+				.andStubReturn(BodyEncoding.DEFLATE);
+		List<String> headerNames = new LinkedList<String>();
+		headerNames.add("X-AppletProtocol-Version");
+		headerNames.add("X-AppletProtocol-Type");
+		headerNames.add(BodyEncoding.HTTP_HEADER);
+		EasyMock.expect(mockHttpReceiver.getHeaderNames()).andStubReturn(
+				headerNames);
+		EasyMock.expect(mockHttpReceiver.getBody()).andStubReturn(
+				body.toByteArray());
+		return mockHttpReceiver;
+	}
+
 	// TODO: test semantical validator
 
 }
\ No newline at end of file